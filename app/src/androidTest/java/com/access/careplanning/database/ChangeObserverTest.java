@@ -0,0 +1,78 @@
+package com.access.careplanning.database;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Background observers get the current value, then only values that have changed
+ */
+@RunWith(AndroidJUnit4.class)
+public class ChangeObserverTest {
+
+    private CarePlanningRoomDatabase mDb;
+    private CarePlanningDao mDao;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mDb = Room.inMemoryDatabaseBuilder(context, CarePlanningRoomDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        mDao = mDb.taskDao();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdown();
+        mDb.close();
+    }
+
+    @Test
+    public void deliversDistinctChanges() throws InterruptedException {
+        final int userId = (int) mDao.insert(new User("a", "Ann"));
+        mDao.upsertBattery(userId, 10);
+
+        final BlockingQueue<Integer> thresholds = new LinkedBlockingQueue<>();
+        ChangeObserver<Battery> observer = new ChangeObserver<>(mDb, new String[]{"battery"},
+                () -> mDao.getBattery(userId), CarePlanningRepository::sameBattery, mExecutor,
+                (battery) -> thresholds.add(battery.getThreshold()));
+        assertEquals(Integer.valueOf(10), thresholds.poll(2, TimeUnit.SECONDS));
+
+        // Written but unchanged, not delivered
+        mDao.upsertBattery(userId, 10);
+        assertNull(thresholds.poll(500, TimeUnit.MILLISECONDS));
+
+        // A burst is conflated, the latest value is always delivered
+        for (int threshold = 11; threshold <= 30; threshold++) {
+            mDao.upsertBattery(userId, threshold);
+        }
+        Integer last = null;
+        Integer threshold;
+        while ((threshold = thresholds.poll(1, TimeUnit.SECONDS)) != null) {
+            last = threshold;
+        }
+        assertEquals(Integer.valueOf(30), last);
+
+        observer.cancel();
+        mDao.upsertBattery(userId, 40);
+        assertNull(thresholds.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.access.careplanning.database;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.access.careplanning.util.AndroidClock;
+import com.access.careplanning.util.Clock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Batched writes, paging and retention of the event history
+ */
+@RunWith(AndroidJUnit4.class)
+public class EventJournalTest {
+
+    private CarePlanningRoomDatabase mDb;
+    private EventDao mDao;
+    // Times are recent, as the first flush also removes expired events
+    private final long mNow = System.currentTimeMillis();
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mDb = Room.inMemoryDatabaseBuilder(context, CarePlanningRoomDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        mDao = mDb.eventDao();
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    @Test
+    public void flushWritesOneBatch() {
+        EventJournal journal = new EventJournal(mDb, AndroidClock.INSTANCE);
+        for (int i = 0; i < 10; i++) {
+            journal.record(new Event(mNow + i, 1, Event.TYPE_RINGER, i));
+        }
+        assertEquals(0, mDao.getEventCount());
+        journal.flush();
+        assertEquals(10, mDao.getEventCount());
+        assertEquals(1, journal.getFlushCount());
+        journal.flush();
+        assertEquals(1, journal.getFlushCount());
+    }
+
+    @Test
+    public void pagesNewestFirst() {
+        EventJournal journal = new EventJournal(mDb, AndroidClock.INSTANCE);
+        // Several events in the same ms, so the pages are keyed on the id too
+        for (int i = 0; i < 25; i++) {
+            journal.record(new Event(mNow + i / 3, 1, Event.TYPE_WIFI, i));
+        }
+        journal.flush();
+
+        int expected = 24;
+        Event last = null;
+        int pages = 0;
+        do {
+            List<Event> page = last == null ? mDao.getLatestEvents(10)
+                    : mDao.getEventsBefore(last.getTime(), last.getId(), 10);
+            for (Event event : page) {
+                assertEquals(expected--, event.getValue());
+            }
+            last = page.isEmpty() ? null : page.get(page.size() - 1);
+            pages++;
+        } while (last != null);
+        assertEquals(-1, expected);
+        assertEquals(4, pages);
+    }
+
+    @Test
+    public void compactRemovesExpired() {
+        EventJournal journal = new EventJournal(mDb, AndroidClock.INSTANCE);
+        journal.record(new Event(mNow - EventJournal.RETENTION_MS - 1, 1, Event.TYPE_BATTERY_SAVER, 1));
+        journal.record(new Event(mNow - 1, 1, Event.TYPE_BATTERY_SAVER, 1));
+        journal.flush();
+        mDb.runInTransaction(() -> journal.compact(mNow));
+        assertEquals(1, mDao.getEventCount());
+    }
+
+    @Test
+    public void compactUsesTheClock() {
+        final long later = mNow + EventJournal.RETENTION_MS;
+        EventJournal journal = new EventJournal(mDb, new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return later;
+            }
+
+            @Override
+            public long elapsedRealtime() {
+                return 0;
+            }
+
+            @Override
+            public TimeZone getTimeZone() {
+                return TimeZone.getDefault();
+            }
+        });
+        journal.record(new Event(mNow - 1, 1, Event.TYPE_BATTERY_SAVER, 1));
+        journal.record(new Event(later, 1, Event.TYPE_BATTERY_SAVER, 1));
+        // The first flush compacts, by the clock's time rather than the system's
+        journal.flush();
+        assertEquals(1, mDao.getEventCount());
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.access.careplanning.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.room.Room;
+import androidx.room.migration.Migration;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Creates databases with the old schemas, runs the migrations and validates the result against
+ * the exported schema of the current version, then opens them with Room to check the data.
+ * Versions 3 onwards are created from their exported schemas in app/schemas, versions 1 and 2
+ * were never exported so are created with SQL.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+
+    private static final String TEST_DB = "migration-test";
+
+    private static final int VERSION = 6;
+
+    private static final Migration[] MIGRATIONS = {
+            CarePlanningRoomDatabase.MIGRATION_1_2, CarePlanningRoomDatabase.MIGRATION_2_3,
+            CarePlanningRoomDatabase.MIGRATION_3_4, CarePlanningRoomDatabase.MIGRATION_4_5,
+            CarePlanningRoomDatabase.MIGRATION_5_6};
+
+    private static final String CREATE_USER_V1 = "CREATE TABLE IF NOT EXISTS `User` "
+            + "(`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `google_id` TEXT, `name` TEXT)";
+    private static final String CREATE_TIME_RANGE_V1 = "CREATE TABLE IF NOT EXISTS `time_range` "
+            + "(`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `user_id` INTEGER NOT NULL, "
+            + "`start_hour` INTEGER NOT NULL, `start_minute` INTEGER NOT NULL, "
+            + "`end_hour` INTEGER NOT NULL, `end_minute` INTEGER NOT NULL, "
+            + "FOREIGN KEY(`user_id`) REFERENCES `User`(`id`) ON UPDATE NO ACTION ON DELETE NO ACTION )";
+    private static final String CREATE_BATTERY_V1 = "CREATE TABLE IF NOT EXISTS `battery` "
+            + "(`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `user_id` INTEGER NOT NULL, "
+            + "`threshold` INTEGER NOT NULL, "
+            + "FOREIGN KEY(`user_id`) REFERENCES `User`(`id`) ON UPDATE NO ACTION ON DELETE NO ACTION )";
+
+    @Rule
+    public MigrationTestHelper mHelper = new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+            CarePlanningRoomDatabase.class.getCanonicalName(), new FrameworkSQLiteOpenHelperFactory());
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mContext.deleteDatabase(TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(TEST_DB);
+    }
+
+    /**
+     * Create a version 1 database with duplicates from the old get then insert sign-in:
+     * two records for google "a", and repeated default ranges and batteries
+     */
+    private SQLiteDatabase createVersion1() {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(mContext.getDatabasePath(TEST_DB), null);
+        db.execSQL(CREATE_USER_V1);
+        db.execSQL(CREATE_TIME_RANGE_V1);
+        db.execSQL(CREATE_BATTERY_V1);
+        db.execSQL("INSERT INTO User (id, google_id, name) VALUES (1, 'a', 'Ann'), (2, 'b', 'Bob'), "
+                + "(3, 'a', 'Ann'), (4, NULL, 'Guest'), (5, NULL, 'Guest')");
+        db.execSQL("INSERT INTO time_range (id, user_id, start_hour, start_minute, end_hour, end_minute) "
+                + "VALUES (1, 1, 22, 0, 6, 0), (2, 2, 10, 0, 15, 0), (3, 1, 10, 0, 15, 0), "
+                + "(4, 3, 10, 0, 15, 0), (5, 4, 10, 0, 15, 0), (6, 5, 10, 0, 15, 0)");
+        db.execSQL("INSERT INTO battery (id, user_id, threshold) VALUES (1, 1, 20), (2, 1, 20), (3, 3, 30)");
+        return db;
+    }
+
+    /**
+     * Migrate to the current version, validating against its exported schema, then open with Room
+     */
+    private CarePlanningRoomDatabase migrateAndOpen() throws IOException {
+        mHelper.runMigrationsAndValidate(TEST_DB, VERSION, true, MIGRATIONS).close();
+        CarePlanningRoomDatabase room = Room.databaseBuilder(mContext, CarePlanningRoomDatabase.class, TEST_DB)
+                .addMigrations(MIGRATIONS)
+                .allowMainThreadQueries()
+                .build();
+        mHelper.closeWhenFinished(room);
+        return room;
+    }
+
+    @Test
+    public void migrate1ToCurrent() throws IOException {
+        SQLiteDatabase db = createVersion1();
+        db.setVersion(1);
+        db.close();
+
+        CarePlanningRoomDatabase room = migrateAndOpen();
+        CarePlanningDao dao = room.taskDao();
+        assertEquals(Integer.valueOf(1), dao.getUserId("a"));
+        assertEquals(Integer.valueOf(2), dao.getUserId("b"));
+
+        // The first range of each user is kept, with every day set
+        List<TimeRange> ranges = dao.getTimeRanges(1);
+        assertEquals(1, ranges.size());
+        assertEquals(22, ranges.get(0).getStartHour());
+        assertEquals(TimeRange.ALL_DAYS, ranges.get(0).getDays());
+        assertTrue(dao.getTimeRanges(3).isEmpty());
+        // Users without a Google id aren't duplicates of each other
+        assertEquals(1, dao.getTimeRanges(4).size());
+        assertEquals(1, dao.getTimeRanges(5).size());
+
+        Battery battery = dao.getBattery(1);
+        assertEquals(1, battery.getId());
+        assertEquals(20, battery.getThreshold());
+        // Version 6 starts with the battery saver off
+        assertEquals(0, battery.getSaverLevel());
+        assertNull(dao.getBattery(3));
+    }
+
+    @Test
+    public void migrate2ToCurrent() throws IOException {
+        SQLiteDatabase db = createVersion1();
+        db.execSQL("DELETE FROM time_range WHERE id NOT IN (SELECT MIN(id) FROM time_range GROUP BY user_id)");
+        db.execSQL("ALTER TABLE time_range ADD COLUMN days INTEGER NOT NULL DEFAULT " + TimeRange.ALL_DAYS);
+        db.setVersion(2);
+        db.close();
+
+        CarePlanningRoomDatabase room = migrateAndOpen();
+        CarePlanningDao dao = room.taskDao();
+        assertEquals(Integer.valueOf(1), dao.getUserId("a"));
+        assertNull(dao.getUser("c"));
+        assertEquals(1, dao.getTimeRanges(1).size());
+        assertEquals(20, dao.getBattery(1).getThreshold());
+
+        // The unique index stops a second record for the same Google account
+        try {
+            dao.insert(new User("a", "Ann"));
+            fail("Duplicate google id inserted");
+        } catch (android.database.sqlite.SQLiteConstraintException expected) {
+            // expected
+        }
+
+        // Version 4 starts an empty event history, version 5 has no rules so the defaults apply
+        assertEquals(0, room.eventDao().getEventCount());
+        assertTrue(dao.getRules(1).isEmpty());
+    }
+
+    @Test
+    public void migrate3ToCurrent() throws IOException {
+        SupportSQLiteDatabase db = mHelper.createDatabase(TEST_DB, 3);
+        db.execSQL("INSERT INTO User (id, google_id, name) VALUES (1, 'a', 'Ann')");
+        db.execSQL("INSERT INTO time_range (id, user_id, start_hour, start_minute, end_hour, end_minute, days) "
+                + "VALUES (1, 1, 22, 0, 6, 0, 62)");
+        db.execSQL("INSERT INTO battery (id, user_id, threshold) VALUES (1, 1, 15)");
+        db.close();
+
+        CarePlanningRoomDatabase room = migrateAndOpen();
+        CarePlanningDao dao = room.taskDao();
+        assertEquals(62, dao.getTimeRange(1).getDays());
+        assertEquals(0, room.eventDao().getEventCount());
+        assertTrue(dao.getRules(1).isEmpty());
+        Battery battery = dao.getBattery(1);
+        assertEquals(15, battery.getThreshold());
+        assertEquals(0, battery.getSaverLevel());
+        assertEquals(0, battery.getSaverTime());
+    }
+
+    @Test
+    public void migrate4ToCurrent() throws IOException {
+        SupportSQLiteDatabase db = mHelper.createDatabase(TEST_DB, 4);
+        db.execSQL("INSERT INTO User (id, google_id, name) VALUES (1, 'a', 'Ann')");
+        db.execSQL("INSERT INTO event (time, user_id, type, value) VALUES (1000, 1, 'ringer', 1)");
+        db.close();
+
+        CarePlanningRoomDatabase room = migrateAndOpen();
+        assertEquals(1, room.eventDao().getEventCount());
+        assertTrue(room.taskDao().getRules(1).isEmpty());
+    }
+
+    @Test
+    public void migrate5ToCurrent() throws IOException {
+        SupportSQLiteDatabase db = mHelper.createDatabase(TEST_DB, 5);
+        db.execSQL("INSERT INTO User (id, google_id, name) VALUES (1, 'a', 'Ann')");
+        db.execSQL("INSERT INTO battery (id, user_id, threshold) VALUES (1, 1, 25)");
+        db.execSQL("INSERT INTO rule (user_id, priority, condition_mask, condition_value, ringer, wifi, notify) "
+                + "VALUES (1, 0, 1, 1, 2, 0, 1)");
+        db.close();
+
+        CarePlanningRoomDatabase room = migrateAndOpen();
+        CarePlanningDao dao = room.taskDao();
+        assertEquals(1, dao.getRules(1).size());
+        Battery battery = dao.getBattery(1);
+        assertEquals(25, battery.getThreshold());
+        assertEquals(0, battery.getSaverLevel());
+    }
+
+}
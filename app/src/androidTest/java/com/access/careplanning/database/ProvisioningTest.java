@@ -0,0 +1,128 @@
+package com.access.careplanning.database;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Provisions thousands of carers with their schedules, streamed in one transaction, and checks
+ * what was written. The time against writing them one at a time is in DaoPerformanceTest's report.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProvisioningTest {
+
+    private static final int STAFF = 5000;
+
+    private CarePlanningRoomDatabase mDb;
+    private CarePlanningDao mDao;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mDb = Room.inMemoryDatabaseBuilder(context, CarePlanningRoomDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        mDao = mDb.taskDao();
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    /**
+     * Generates the records as they are read, like a file being streamed
+     */
+    private static Iterator<StaffRecord> generate(final String prefix, final int count) {
+        return new Iterator<StaffRecord>() {
+            private int mNext;
+
+            @Override
+            public boolean hasNext() {
+                return mNext < count;
+            }
+
+            @Override
+            public StaffRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final int i = mNext++;
+                TimeRange night = new TimeRange(22, 0, 6, 0);
+                TimeRange lunch = new TimeRange(12, i % 60, 13, 0);
+                return new StaffRecord(String.format(Locale.US, "%s%010d", prefix, i),
+                        "Carer " + i, Arrays.asList(night, lunch), 10 + i % 20);
+            }
+        };
+    }
+
+    @Test
+    public void provisionBatched() {
+        ProvisionResult result = mDao.provision(generate("b", STAFF));
+
+        assertEquals(STAFF, result.getUsersInserted());
+        assertEquals(STAFF * 2, result.getTimeRanges());
+        assertEquals(STAFF, result.getBatteries());
+        Integer userId = mDao.getUserId(String.format(Locale.US, "b%010d", STAFF - 1));
+        assertNotNull(userId);
+        assertEquals(2, mDao.getTimeRanges(userId).size());
+        assertEquals(10 + (STAFF - 1) % 20, mDao.getBattery(userId).getThreshold());
+
+        // Reprovisioning replaces the schedules rather than adding to them
+        result = mDao.provision(generate("b", STAFF));
+        assertEquals(STAFF, result.getUsersExisting());
+        assertEquals(2, mDao.getTimeRanges(userId).size());
+    }
+
+    @Test
+    public void repeatedGoogleIdLastRecordWins() {
+        List<StaffRecord> records = Arrays.asList(
+                new StaffRecord("d", "First", Collections.singletonList(new TimeRange(22, 0, 6, 0)), 10),
+                new StaffRecord("e", "Other", Collections.singletonList(new TimeRange(12, 0, 13, 0)), 15),
+                new StaffRecord("d", "Second", Collections.singletonList(new TimeRange(9, 0, 17, 0)), 20));
+        ProvisionResult result = mDao.provision(records.iterator());
+
+        assertEquals(2, result.getUsersInserted());
+        assertEquals(0, result.getUsersExisting());
+        Integer userId = mDao.getUserId("d");
+        assertNotNull(userId);
+        assertEquals("Second", mDao.getUser("d").getName());
+        List<TimeRange> ranges = mDao.getTimeRanges(userId);
+        assertEquals(1, ranges.size());
+        assertEquals(9, ranges.get(0).getStartHour());
+        assertEquals(20, mDao.getBattery(userId).getThreshold());
+    }
+
+    @Test
+    public void reprovisionKeepsBatterySaverState() {
+        mDao.provision(generate("k", 3));
+        final int userId = mDao.getUserId(String.format(Locale.US, "k%010d", 1));
+        final Battery before = mDao.getBattery(userId);
+        mDao.updateSaverLevel(userId, 2, 1234L);
+
+        ProvisionResult result = mDao.provision(generate("k", 3));
+        assertEquals(3, result.getUsersExisting());
+        assertEquals(3, result.getBatteries());
+        Battery after = mDao.getBattery(userId);
+        assertEquals(before.getId(), after.getId());
+        assertEquals(2, after.getSaverLevel());
+        assertEquals(1234L, after.getSaverTime());
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.access.careplanning.database;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures sign-in and settings lookups on a database with tens of thousands of users,
+ * with the version 3 indexes and again with them dropped. Results are in the log, tag UserLookupTest.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserLookupTest {
+
+    private static final String TAG = "UserLookupTest";
+
+    private static final int USERS = 20000;
+    private static final int LOOKUPS = 500;
+
+    private CarePlanningRoomDatabase mDb;
+    private CarePlanningDao mDao;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mDb = Room.inMemoryDatabaseBuilder(context, CarePlanningRoomDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        mDao = mDb.taskDao();
+        mDb.runInTransaction(() -> {
+            for (int i = 0; i < USERS; i++) {
+                User user = new User(googleId(i), "User " + i);
+                final int userId = (int) mDao.insert(user);
+                TimeRange timeRange = new TimeRange(22, 0, 6, 0);
+                timeRange.setUserId(userId);
+                mDao.insert(timeRange);
+                mDao.upsertBattery(userId, 15);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    private static String googleId(int i) {
+        return String.format(Locale.US, "1%020d", i);
+    }
+
+    /**
+     * @return average time of a sign-in lookup plus the settings reads, in microseconds
+     */
+    private double measure() {
+        Random random = new Random(1);
+        // Warm up the statement cache
+        for (int i = 0; i < 50; i++) {
+            mDao.getUserId(googleId(random.nextInt(USERS)));
+        }
+        final long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < LOOKUPS; i++) {
+            Integer userId = mDao.getUserId(googleId(random.nextInt(USERS)));
+            assertNotNull(userId);
+            assertEquals(1, mDao.getTimeRanges(userId).size());
+            assertNotNull(mDao.getBattery(userId));
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / 1000.0 / LOOKUPS;
+    }
+
+    @Test
+    public void lookupLatency() {
+        final double indexed = measure();
+
+        SupportSQLiteDatabase db = mDb.getOpenHelper().getWritableDatabase();
+        db.execSQL("DROP INDEX index_User_google_id");
+        db.execSQL("DROP INDEX index_time_range_user_id");
+        db.execSQL("DROP INDEX index_battery_user_id");
+        final double scanned = measure();
+
+        Log.i(TAG, String.format(Locale.US, "%d users, lookup with indexes %.1fus, without %.1fus",
+                USERS, indexed, scanned));
+        assertTrue("Indexed lookups should be faster than full scans", indexed < scanned);
+    }
+
+}
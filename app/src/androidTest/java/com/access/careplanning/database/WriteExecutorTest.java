@@ -0,0 +1,158 @@
+package com.access.careplanning.database;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes for a user commit in the order queued, batched into fewer transactions,
+ * a failed write doesn't lose the rest of its batch, and a callback that throws doesn't stop
+ * the writes after it. Await returns once the writes queued before it are done.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WriteExecutorTest {
+
+    private static final int WRITES = 200;
+
+    private CarePlanningRoomDatabase mDb;
+    private CarePlanningDao mDao;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mDb = Room.inMemoryDatabaseBuilder(context, CarePlanningRoomDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        mDao = mDb.taskDao();
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    @Test
+    public void keepsOrderPerUser() throws InterruptedException {
+        final int userA = (int) mDao.insert(new User("a", "Ann"));
+        final int userB = (int) mDao.insert(new User("b", "Bob"));
+        mDao.upsertBattery(userA, 0);
+        mDao.upsertBattery(userB, 0);
+
+        WriteExecutor executor = new WriteExecutor(mDb);
+        final CountDownLatch done = new CountDownLatch(2);
+        for (int i = 1; i <= WRITES; i++) {
+            final int threshold = i % 100;
+            final boolean last = i == WRITES;
+            executor.execute(userA, () -> mDao.upsertBattery(userA, threshold), last ? done::countDown : null, null);
+            executor.execute(userB, () -> mDao.upsertBattery(userB, 99 - threshold), last ? done::countDown : null, null);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(WRITES % 100, mDao.getBattery(userA).getThreshold());
+        assertEquals(99 - WRITES % 100, mDao.getBattery(userB).getThreshold());
+        assertEquals(WRITES * 2, executor.getWriteCount());
+        assertTrue("Writes should be batched", executor.getTransactionCount() < WRITES * 2);
+        assertEquals(0, executor.getQueuedCount());
+    }
+
+    @Test
+    public void failedWriteKeepsRestOfBatch() throws InterruptedException {
+        final int userA = (int) mDao.insert(new User("a", "Ann"));
+        mDao.upsertBattery(userA, 0);
+
+        WriteExecutor executor = new WriteExecutor(mDb);
+        // Hold the write thread so the next writes are queued up into one batch
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(userA, () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        final AtomicInteger committed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(3);
+        final Runnable onCommit = () -> {
+            committed.incrementAndGet();
+            done.countDown();
+        };
+        final Runnable onFailed = () -> {
+            failed.incrementAndGet();
+            done.countDown();
+        };
+        executor.execute(userA, () -> mDao.upsertBattery(userA, 20), onCommit, onFailed);
+        // Duplicate Google id, fails in its own nested transaction
+        executor.execute(userA, () -> mDao.insert(new User("a", "Again")), onCommit, onFailed);
+        executor.execute(userA, () -> mDao.insert(new User("c", "Cat")), onCommit, onFailed);
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(2, committed.get());
+        assertEquals(1, failed.get());
+        assertEquals(20, mDao.getBattery(userA).getThreshold());
+        assertNotNull(mDao.getUserId("c"));
+        assertEquals(3, executor.getWriteCount());
+    }
+
+    @Test
+    public void throwingCallbackKeepsWriting() throws InterruptedException {
+        final int userA = (int) mDao.insert(new User("a", "Ann"));
+        mDao.upsertBattery(userA, 0);
+
+        WriteExecutor executor = new WriteExecutor(mDb);
+        final CountDownLatch done = new CountDownLatch(2);
+        executor.execute(userA, () -> mDao.upsertBattery(userA, 20), () -> {
+            done.countDown();
+            throw new IllegalStateException("after commit");
+        }, null);
+        // Duplicate Google id, so the failure action runs
+        executor.execute(userA, () -> mDao.insert(new User("a", "Again")), null, () -> {
+            done.countDown();
+            throw new IllegalStateException("on failed");
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // Same stripe, still running
+        final CountDownLatch written = new CountDownLatch(1);
+        executor.execute(userA, () -> mDao.upsertBattery(userA, 30), written::countDown, null);
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        assertEquals(30, mDao.getBattery(userA).getThreshold());
+    }
+
+    @Test
+    public void awaitWaitsForQueuedWrites() {
+        final int userA = (int) mDao.insert(new User("a", "Ann"));
+        mDao.upsertBattery(userA, 0);
+
+        WriteExecutor executor = new WriteExecutor(mDb);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(userA, () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(userA, () -> mDao.upsertBattery(userA, 20));
+        assertFalse("Held write should time out the wait", executor.await(userA, 50));
+
+        release.countDown();
+        assertTrue(executor.await(userA, 5000));
+        assertEquals(20, mDao.getBattery(userA).getThreshold());
+    }
+
+}
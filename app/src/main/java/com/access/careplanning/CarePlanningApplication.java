@@ -0,0 +1,46 @@
+package com.access.careplanning;
+
+import android.app.Application;
+
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.log.LogBuffer;
+import com.access.careplanning.startup.StartupPipeline;
+
+/**
+ * Holds the background startup work, started when the UI is launched so that a process started
+ * for a receiver doesn't do it, and keeps the log for the metrics screen in debug builds
+ */
+public class CarePlanningApplication extends Application {
+
+    // Latest log lines kept for the metrics screen
+    private static final int LOG_LINES = 500;
+
+    private StartupPipeline mStartupPipeline;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (AppLog.DEBUG) {
+            // The buffer lowers the level logged to INFO, so not in release builds
+            AppLog.setBuffer(new LogBuffer(LOG_LINES));
+        }
+    }
+
+    /**
+     * Start the startup work, once per process, in parallel with sign in. Call on the main thread.
+     */
+    public void startStartupPipeline() {
+        if (mStartupPipeline == null) {
+            mStartupPipeline = new StartupPipeline(this);
+            mStartupPipeline.start();
+        }
+    }
+
+    /**
+     * @return the startup work, or null if the UI hasn't been launched in this process
+     */
+    public StartupPipeline getStartupPipeline() {
+        return mStartupPipeline;
+    }
+
+}
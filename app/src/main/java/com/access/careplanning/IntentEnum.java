@@ -6,6 +6,8 @@ public enum IntentEnum {
     USER_ID(1),
     USER_NAME(2),
     SCAN(3),
+    SIGN_IN_TIME(4),
+    SESSION_USER_ID(5),
     ALARM(10),
     BATTERY_CHECK(11);
 
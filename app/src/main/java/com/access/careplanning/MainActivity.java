@@ -1,41 +1,35 @@
 package com.access.careplanning;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.app.NotificationCompat;
 import androidx.databinding.DataBindingUtil;
 import androidx.lifecycle.ViewModelProvider;
 
-import android.annotation.SuppressLint;
-import android.app.AlarmManager;
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.TimePickerDialog;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.media.AudioManager;
-import android.media.RingtoneManager;
-import android.net.Uri;
-import android.net.wifi.WifiManager;
-import android.os.BatteryManager;
-import android.os.Build;
 import android.os.Bundle;
-import android.os.PowerManager;
-import android.util.Log;
+import android.os.SystemClock;
 import android.widget.SeekBar;
 import android.widget.Toast;
 
 import com.access.careplanning.database.User;
 import com.access.careplanning.databinding.ActivityMainBinding;
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.metrics.Metrics;
 import com.access.careplanning.permission.Permission;
 import com.access.careplanning.permission.PermissionUtil;
+import com.access.careplanning.policy.PolicyEngine;
+import com.access.careplanning.policy.SystemStateMirror;
+import com.access.careplanning.session.SessionStore;
+import com.access.careplanning.util.TimeUtil;
 import com.access.careplanning.viewmodel.CarePlanningViewModel;
+import com.google.android.gms.auth.api.signin.GoogleSignIn;
+import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
+import com.google.android.gms.auth.api.signin.GoogleSignInClient;
+import com.google.android.gms.auth.api.signin.GoogleSignInOptions;
+import com.google.android.gms.common.api.ApiException;
+import com.google.android.gms.common.api.CommonStatusCodes;
 
 import java.security.InvalidParameterException;
-import java.util.Calendar;
 import java.util.Locale;
 
 /**
@@ -60,11 +54,25 @@ public class MainActivity extends AppCompatActivity {
 
     private enum TimePeriod {START, END}
 
-    private AlarmManager mAlarmManager;
-    private PendingIntent mAlarmStartIntent;
-    private PendingIntent mAlarmEndIntent;
-    private PendingIntent mBatteryIntent;
-    private int mBatteryThreshold = 0;
+    /**
+     * Enforces the ringer and battery policies, independent of this activity
+     */
+    private PolicyEngine mPolicyEngine;
+
+    /**
+     * Time the sign in finished, until the settings are first shown, or 0 once recorded
+     */
+    private long mSignInTime;
+
+    /**
+     * The signed-in carer, kept so the next start can skip the sign in
+     */
+    private SessionStore mSessionStore;
+
+    /**
+     * True if started from a saved session, so the account is still to be checked
+     */
+    private boolean mFromSession;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -78,6 +86,18 @@ public class MainActivity extends AppCompatActivity {
         final String name = getIntent().getStringExtra(IntentEnum.USER_NAME.name());
         User user = new User(googleId, name);
         binding.txtName.setText(user.getName());
+        mSignInTime = getIntent().getLongExtra(IntentEnum.SIGN_IN_TIME.name(), 0);
+        final int sessionUserId = getIntent().getIntExtra(IntentEnum.SESSION_USER_ID.name(), 0);
+        mSessionStore = new SessionStore(this);
+
+        // Debug screen, when metrics or the log are being recorded
+        binding.txtName.setOnLongClickListener((view) -> {
+            if (Metrics.isEnabled() || AppLog.getBuffer() != null) {
+                startActivity(new Intent(this, MetricsActivity.class));
+                return true;
+            }
+            return false;
+        });
 
         binding.btnStartTime.setOnClickListener((view) ->
                 requestTimeChoice(TimePeriod.START, R.string.select_start_time,
@@ -113,65 +133,114 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        mAlarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
-        registerReceiver(broadcastReceiver, new IntentFilter("com.access.careplanning") );
-
-        Intent intentAlarm = new Intent("com.access.careplanning");//new Intent(this, AlarmReceiver.class);
-        mAlarmStartIntent = PendingIntent.getBroadcast(getBaseContext(), IntentEnum.ALARM.getCode(), intentAlarm, 0);
-        mAlarmEndIntent = PendingIntent.getBroadcast(getBaseContext(), IntentEnum.ALARM.getCode(), intentAlarm, 0);
-
-        Intent intentBattery = new Intent("com.access.careplanning");
-        intentBattery.putExtra(IntentEnum.BATTERY_CHECK.name(), true);
-        mBatteryIntent = PendingIntent.getBroadcast(getBaseContext(), IntentEnum.BATTERY_CHECK.getCode(), intentBattery, 0);
-        setBatteryCheckAlarm();
+        mPolicyEngine = PolicyEngine.getInstance(this);
+        if (savedInstanceState == null) {
+            // Once per launch, not again when recreated eg on rotation
+            checkPolicyAccess();
+        }
 
-        mViewModel.initUser(user, CarePlanningViewModel.DEFAULT_TIME_RANGE,
-                () -> runOnUiThread(() ->
-                        observeAll()
-                ));
+        if (sessionUserId > 0) {
+            // Returning carer, show their settings now and check the account in the background
+            mFromSession = true;
+            mViewModel.initSession(sessionUserId);
+            mPolicyEngine.setUserId(sessionUserId);
+            observeAll();
+            validateSession(googleId);
+        } else {
+            mViewModel.initUser(user, CarePlanningViewModel.DEFAULT_TIME_RANGE,
+                    () -> runOnUiThread(() -> {
+                        mSessionStore.save(googleId, mViewModel.getUserId(), name);
+                        mPolicyEngine.setUserId(mViewModel.getUserId());
+                        observeAll();
+                    }));
+        }
     }
 
-    BroadcastReceiver broadcastReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (intent.getBooleanExtra(IntentEnum.BATTERY_CHECK.name(), false)) {
-                Log.d(TAG, "onReceive battery");
-                checkBatteryThreshold();
+    /**
+     * Check the saved session's Google account is still signed in, without showing any UI.
+     * Only a definite sign in required, or a different account, ends the session,
+     * so the carer keeps working offline.
+     *
+     * @param googleId Google id from the session
+     */
+    private void validateSession(String googleId) {
+        getSignInClient().silentSignIn().addOnCompleteListener(this, (task) -> {
+            if (task.isSuccessful()) {
+                GoogleSignInAccount account = task.getResult();
+                if (account == null || !googleId.equals(account.getId())) {
+                    AppLog.w(TAG, "validateSession, different account");
+                    endSession();
+                }
+            } else if (task.getException() instanceof ApiException
+                    && ((ApiException) task.getException()).getStatusCode()
+                    == CommonStatusCodes.SIGN_IN_REQUIRED) {
+                AppLog.w(TAG, "validateSession, sign in required");
+                endSession();
             } else {
-                Log.d(TAG, "onReceive ringer");
-                setRinger();
+                AppLog.i(TAG, "validateSession, not checked, keeping session", task.getException());
             }
-        }
-    };
+        });
+    }
+
+    /**
+     * Forget the saved session, sign out of the Google account so sign in doesn't go straight
+     * back in with it, and go back to sign in
+     */
+    private void endSession() {
+        mSessionStore.clear();
+        getSignInClient().signOut().addOnCompleteListener(this, (task) -> {
+            startActivity(new Intent(this, SignInActivity.class));
+            finish();
+        });
+    }
+
+    private GoogleSignInClient getSignInClient() {
+        GoogleSignInOptions gso = new GoogleSignInOptions.Builder(GoogleSignInOptions.DEFAULT_SIGN_IN)
+                .build();
+        return GoogleSignIn.getClient(this, gso);
+    }
 
     /**
      * Observe LiveData, when values are changed or read for the first time, update the UI/actions
      */
     private void observeAll() {
-        mViewModel.getTimeRangeLiveData().observe(this, (timeRange) -> {
+        mViewModel.getSettings().observe(this, (settings) -> {
+            if (settings == null) {
+                // The session's user has gone, eg the data was cleared, so sign in again
+                if (mFromSession) {
+                    endSession();
+                }
+                return;
+            }
+            mViewModel.setSettings(settings);
+            if (mSignInTime > 0 && Metrics.isEnabled()) {
+                Metrics.histogram("ui.signInToMain").record(
+                        (SystemClock.elapsedRealtime() - mSignInTime) * 1000);
+            }
+            mSignInTime = 0;
             binding.btnStartTime.setText(formatTime(
-                    timeRange.getStartHour(), timeRange.getStartMinute()));
+                    mViewModel.getStartHour(), mViewModel.getStartMin()));
             binding.btnEndTime.setText(formatTime(
-                    timeRange.getEndHour(), timeRange.getEndMinute()));
-            mViewModel.setEndTime(timeRange.getEndHour(), timeRange.getEndMinute());
-            mViewModel.setStartTime(timeRange.getStartHour(), timeRange.getStartMinute());
-            setRinger();
-        });
-
-        mViewModel.getBattery().observe(this, (battery) -> {
-            final int threshold = battery != null
-                    ? battery.getThreshold() : CarePlanningViewModel.DEFAULT_BATTERY_THRESHOLD;
+                    mViewModel.getEndHour(), mViewModel.getEndMin()));
 
+            final int threshold = mViewModel.getBatteryThreshold();
             binding.txtBatteryThresholdValue.setText(
                     String.format(Locale.US, "%d%%", threshold));
             binding.seekBatteryThreshold.setProgress(threshold, true);
-            mBatteryThreshold = threshold;
-            checkBatteryThreshold();
         });
     }
 
+    /**
+     * Enforce the policies again on return, eg once policy access has been granted
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mPolicyEngine.refresh();
+    }
+
     public static String formatTime(int hour, int min) {
-        return String.format(Locale.US, "%d:%02d", hour, min);
+        return TimeUtil.formatTime(hour, min);
     }
 
     /**
@@ -205,37 +274,13 @@ public class MainActivity extends AppCompatActivity {
      */
     private void processQRCode(String code) {
         if (CarePlanningViewModel.isValidQR(code)) {
-            setWifiMode(true);
+            mPolicyEngine.setWifiMode(true);
         } else {
-            Log.w(TAG, "Invalid QR code");
+            AppLog.w(TAG, "Invalid QR code");
             Toast.makeText(this, R.string.invalid_qr_code, Toast.LENGTH_SHORT).show();
         }
     }
 
-    /**
-     * Wifi can't be enabled/disabled in Android Q onwards. It works in earlier versions.
-     * @param enable true to enable, or false to disable
-     * @return true if wifi was successfully changed (enabled or disabled), else false
-     */
-    @SuppressWarnings("deprecation")
-    private boolean setWifiMode(boolean enable) {
-        WifiManager wifiManager = (WifiManager) getSystemService(Context.WIFI_SERVICE);
-        if (wifiManager != null && Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
-            if (wifiManager.isWifiEnabled() != enable) {
-                boolean changed = wifiManager.setWifiEnabled(enable);
-                if (changed) {
-                    Log.i(TAG, "Changed wifi on/off");
-                    sendNotification(getString(
-                            enable ? R.string.notification_wifi_on : R.string.notification_wifi_off));
-                    return true;
-                }
-            }
-        } else {
-            Log.w(TAG, "Could not enable/disable wifi on this device");
-        }
-        return false;
-    }
-
     /**
      * Show time picker dialog.
      * @param timePeriod Period eg Start or End
@@ -254,7 +299,7 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * Set the new time from the user's choice.
-     * Validate times are valid and the end time is not earlier than the start time.
+     * An end time earlier than the start time makes the period run past midnight.
      * @param timePeriod Period eg Start or End
      * @param selectedHour chosen hour
      * @param selectedMinute chosen minute
@@ -264,11 +309,9 @@ public class MainActivity extends AppCompatActivity {
             switch (timePeriod) {
                 case START:
                     mViewModel.updateStartTime(selectedHour, selectedMinute);
-                    setAlarm(TimePeriod.START, selectedHour, selectedMinute);
                     break;
                 case END:
                     mViewModel.updateEndTime(selectedHour, selectedMinute);
-                    setAlarm(TimePeriod.END, selectedHour, selectedMinute);
             }
         } catch (InvalidParameterException ipe) {
             Toast.makeText(getApplicationContext(), ipe.getMessage(), Toast.LENGTH_SHORT).show();
@@ -277,31 +320,12 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Set the ringer mode, notify the user if the mode has changed.
-     * Requires and checks for system policy access.
-     */
-    private void setRinger() {
-        Calendar cal = Calendar.getInstance();
-        int hour = cal.get(Calendar.HOUR_OF_DAY);
-        int minute = cal.get(Calendar.MINUTE);
-
-        AudioManager am = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-        if (am != null && checkPolicyAccess()) {
-            final int ringerMode = mViewModel.getCurrentRingerMode(hour, minute);
-            if (am.getRingerMode() != ringerMode) {
-                am.setRingerMode(ringerMode);
-                sendNotification(getString(R.string.notification_ringer));
-            }
-        }
-    }
-
-    /**
-     * Checks and asks for system policy settings, so that the app can change the ringer
+     * Checks and asks for system policy settings, so that the app can change the ringer.
+     * Read from the SystemStateMirror, which the PolicyEngine has started.
      * @return true if policy access is already granted, else false
      */
     private boolean checkPolicyAccess() {
-        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        if (notificationManager != null && !notificationManager.isNotificationPolicyAccessGranted()) {
+        if (!SystemStateMirror.getInstance(this).isPolicyAccessGranted()) {
             Intent intent = new Intent(android.provider.Settings.ACTION_NOTIFICATION_POLICY_ACCESS_SETTINGS);
             startActivity(intent);
             return false;
@@ -309,52 +333,6 @@ public class MainActivity extends AppCompatActivity {
         return true;
     }
 
-    private void checkBatteryThreshold() {
-        if (getBatteryLevel() < mBatteryThreshold && !mViewModel.isBatterySaverOn()) {
-            mViewModel.setBatterySaverOn(true);
-            setBatterySavingMode(true);
-            sendNotification(getString(R.string.notification_power_saving));
-        }
-    }
-
-    /**
-     * Get battery percent
-     * https://developer.android.com/training/monitoring-device-state/battery-monitoring
-     * @return current percent of battery level
-     */
-    private int getBatteryLevel() {
-        IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent batteryStatus = registerReceiver(null, ifilter);
-        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-        float batteryPct = level * 100 / (float) scale;
-        return (int) batteryPct;
-    }
-
-    /**
-     * Power saving alternatives below but are less fine grained checks, so I used an alarm:
-     * https://stackoverflow.com/questions/25065635/checking-for-power-saver-mode-programmatically?rq=1
-     * https://developer.android.com/training/monitoring-device-state/battery-monitoring
-     *     Monitor significant changes in battery level
-     *     You can't easily continually monitor the battery state, but you don't need to.
-     *     Generally speaking, the impact of constantly monitoring the battery level has a greater impact on the battery than your app's normal behavior, so it's good practice to only monitor significant changes in battery level—specifically when the device enters or exits a low battery state.
-     *     The manifest snippet below is extracted from the intent filter element within a broadcast receiver. The receiver is triggered whenever the device battery becomes low or exits the low condition by listening for ACTION_BATTERY_LOW and ACTION_BATTERY_OKAY.
-     * <receiver android:name=".BatteryLevelReceiver">
-     *   <intent-filter>
-     *     <action android:name="android.intent.action.BATTERY_LOW"/>
-     *     <action android:name="android.intent.action.BATTERY_OKAY"/>
-     *   </intent-filter>
-     * </receiver>
-     * @param batterySavingMode
-     */
-    private void setBatterySavingMode(boolean batterySavingMode) {
-        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        if (powerManager != null && !powerManager.isDeviceIdleMode() && batterySavingMode) {
-            // Checks the power manager mode, start saving power on the device, turn off services, and bluetooth?
-            setWifiMode(false);
-        }
-    }
-
     /**
      * If the camera permission has now been granted, do the QR scanning
      *
@@ -369,57 +347,4 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    /**
-     * Set an alarm for the start/end eg (loud/vibrate) time period
-     * Todo For production app RECEIVE_BOOT_COMPLETED, BroadcastReceiver to restore alarm after restart,
-     * also repeat add a repeat for every 24hours
-     *
-     * @param timePeriod
-     * @param hour
-     * @param minute
-     */
-    private void setAlarm(TimePeriod timePeriod, int hour, int minute) {
-        mAlarmManager.cancel(timePeriod == TimePeriod.START ? mAlarmStartIntent : mAlarmEndIntent);
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(System.currentTimeMillis());
-        calendar.set(Calendar.HOUR_OF_DAY, hour);
-        calendar.set(Calendar.MINUTE, minute);
-        mAlarmManager.set(AlarmManager.RTC_WAKEUP, calendar.getTimeInMillis(),
-                timePeriod == TimePeriod.START ? mAlarmStartIntent : mAlarmEndIntent);
-    }
-
-    private void setBatteryCheckAlarm() {
-        mAlarmManager.setInexactRepeating(AlarmManager.RTC_WAKEUP, System.currentTimeMillis(), 1000 * 5, mBatteryIntent);
-    }
-
-    /**
-     * Show notification on screen
-     *
-     * @param message
-     */
-    @SuppressLint("NewApi")
-    private void sendNotification(final String message) {
-        Uri alarmSound = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
-
-        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        NotificationCompat.Builder builder;
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            int importance = NotificationManager.IMPORTANCE_DEFAULT;
-            NotificationChannel notificationChannel = new NotificationChannel("ID", "Name", importance);
-            notificationManager.createNotificationChannel(notificationChannel);
-            builder = new NotificationCompat.Builder(getApplicationContext(), notificationChannel.getId());
-        } else {
-            builder = new NotificationCompat.Builder(getApplicationContext());
-        }
-
-        builder.setContentTitle(getResources().getString(R.string.app_name))
-                .setContentText(message)
-                .setSmallIcon(R.mipmap.ic_launcher)
-                .setSound(alarmSound);
-        Notification notification = builder.build();
-        // Hide the notification after it's selected
-        notification.flags |= Notification.FLAG_AUTO_CANCEL;
-        notificationManager.notify(0, notification);
-    }
-
 }
@@ -0,0 +1,63 @@
+package com.access.careplanning;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.databinding.DataBindingUtil;
+
+import android.os.Bundle;
+import android.widget.Toast;
+
+import com.access.careplanning.databinding.ActivityMetricsBinding;
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Debug screen showing the recorded metrics and the latest log lines, opened by a long press on
+ * the user name. Both are saved to the app's external files directory, for adb pull or for
+ * support to copy off the device.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    private static final String TAG = "MetricsActivity";
+
+    private ActivityMetricsBinding binding;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        binding = DataBindingUtil.setContentView(this, R.layout.activity_metrics);
+
+        binding.btnRefresh.setOnClickListener((view) -> showMetrics());
+
+        binding.btnReset.setOnClickListener((view) -> {
+            Metrics.reset();
+            showMetrics();
+        });
+
+        binding.btnDump.setOnClickListener((view) -> {
+            File dir = getExternalFilesDir(null);
+            try {
+                File saveDir = dir != null ? dir : getFilesDir();
+                Metrics.dumpToFile(saveDir);
+                AppLog.dumpToFile(saveDir);
+                Toast.makeText(this, getString(R.string.metrics_dumped, saveDir.getPath()), Toast.LENGTH_LONG).show();
+            } catch (IOException ioe) {
+                AppLog.w(TAG, "Metrics dump failed", ioe);
+                Toast.makeText(this, R.string.metrics_dump_failed, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    private void showMetrics() {
+        binding.txtMetrics.setText(Metrics.dump() + "\n" + AppLog.dump());
+    }
+
+}
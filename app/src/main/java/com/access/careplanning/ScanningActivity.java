@@ -5,21 +5,22 @@ import androidx.appcompat.app.AppCompatActivity;
 import android.content.Intent;
 import android.os.Bundle;
 
+import com.access.careplanning.scan.QrScannerView;
 import com.google.zxing.Result;
 
 import me.dm7.barcodescanner.zxing.ZXingScannerView;
 
 /**
- * Qr code scanning activity, the full view is the scanner
+ * Qr code scanning activity, the full view is the scanner, which only reads QR codes
  */
 public class ScanningActivity extends AppCompatActivity implements ZXingScannerView.ResultHandler {
 
-    private ZXingScannerView mScannerView;
+    private QrScannerView mScannerView;
 
     @Override
     public void onCreate(Bundle state) {
         super.onCreate(state);
-        mScannerView = new ZXingScannerView(this);
+        mScannerView = new QrScannerView(this);
         setContentView(mScannerView);
     }
 
@@ -45,4 +46,4 @@ public class ScanningActivity extends AppCompatActivity implements ZXingScannerV
         finish();
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
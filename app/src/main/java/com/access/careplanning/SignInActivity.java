@@ -6,11 +6,13 @@ import androidx.databinding.DataBindingUtil;
 import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
-import android.util.Log;
+import android.os.SystemClock;
 import android.view.View;
 import android.widget.Toast;
 
 import com.access.careplanning.databinding.ActivitySignInBinding;
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.session.SessionStore;
 import com.google.android.gms.auth.api.signin.GoogleSignIn;
 import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
 import com.google.android.gms.auth.api.signin.GoogleSignInClient;
@@ -20,8 +22,9 @@ import com.google.android.gms.tasks.Task;
 
 /**
  * Simple sign in activity.
- * If user has already signed into their Google account in this app, move to the main activity,
- * else show a Google sign in button.
+ * If a carer's session is saved, move straight to the main activity, which checks the account
+ * in the background. Else if user has already signed into their Google account in this app,
+ * move to the main activity, else show a Google sign in button.
  */
 public class SignInActivity extends AppCompatActivity {
 
@@ -33,16 +36,26 @@ public class SignInActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        ((CarePlanningApplication) getApplication()).startStartupPipeline();
+
+        // Returning carer, skip the layout and the Google sign in call
+        SessionStore session = new SessionStore(this);
+        if (session.hasSession()) {
+            AppLog.i(TAG, "onCreate, saved session");
+            goToMain(session.getGoogleId(), session.getName(), session.getUserId());
+            return;
+        }
+
         binding = DataBindingUtil.setContentView(this, R.layout.activity_sign_in);
 
-        Log.i(TAG, "onCreate, create GoogleSignInClient");
+        AppLog.i(TAG, "onCreate, create GoogleSignInClient");
         GoogleSignInOptions gso = new GoogleSignInOptions.Builder(GoogleSignInOptions.DEFAULT_SIGN_IN)
                 .build();
         mGoogleSignInClient = GoogleSignIn.getClient(this, gso);
 
         binding.btnSignIn.setOnClickListener((view) -> {
             binding.progressBar.setVisibility(View.VISIBLE);
-            Log.i(TAG, "calling google sign in client intent, to do the SignIn");
+            AppLog.i(TAG, "calling google sign in client intent, to do the SignIn");
             Intent signInIntent = mGoogleSignInClient.getSignInIntent();
             startActivityForResult(signInIntent, IntentEnum.SIGN_IN.getCode());
         });
@@ -56,10 +69,10 @@ public class SignInActivity extends AppCompatActivity {
     public void onStart() {
         super.onStart();
 
-        Log.i(TAG, "onStart, Google getLastSignedInAccount");
+        AppLog.i(TAG, "onStart, Google getLastSignedInAccount");
         GoogleSignInAccount account = GoogleSignIn.getLastSignedInAccount(this);
         if (account != null) {
-            goToMain(account.getId(), account.getDisplayName());
+            goToMain(account.getId(), account.getDisplayName(), 0);
         } else {
             binding.progressBar.setVisibility(View.GONE);
             binding.btnSignIn.setVisibility(View.VISIBLE);
@@ -78,7 +91,7 @@ public class SignInActivity extends AppCompatActivity {
         super.onActivityResult(requestCode, resultCode, data);
         binding.progressBar.setVisibility(View.GONE);
 
-        Log.i(TAG, "onActivityResult process Google sign in");
+        AppLog.i(TAG, "onActivityResult process Google sign in");
         if (requestCode == IntentEnum.SIGN_IN.getCode() && resultCode == Activity.RESULT_OK) {
             Task<GoogleSignInAccount> task = GoogleSignIn.getSignedInAccountFromIntent(data);
             handleSignInResult(task);
@@ -87,17 +100,17 @@ public class SignInActivity extends AppCompatActivity {
 
     private void handleSignInResult(Task<GoogleSignInAccount> completedTask) {
         try {
-            Log.i(TAG, "handleSignInResult");
+            AppLog.i(TAG, "handleSignInResult");
             GoogleSignInAccount account = completedTask.getResult(ApiException.class);
             // Signed in successfully, go to the main section
-            goToMain(account.getId(), account.getDisplayName());
+            goToMain(account.getId(), account.getDisplayName(), 0);
 
         } catch (ApiException e) {
             // The ApiException status code indicates the detailed failure reason.
             // GoogleSignInStatusCodes class reference has more information.
             Toast.makeText(this, R.string.sign_in_problem, Toast.LENGTH_SHORT).show();
-            Log.w(TAG, "signInResult:fail code = " + e.getStatusCode());
-            Log.w(TAG, e.getMessage());
+            AppLog.w(TAG, "signInResult:fail code = %d", e.getStatusCode());
+            AppLog.w(TAG, e.getMessage());
         }
     }
 
@@ -105,14 +118,17 @@ public class SignInActivity extends AppCompatActivity {
      * Simply move to main with sign in info.
      * todo potentially use Google Navigation components for a more complex app
      *
-     * @param userId Google user id
-     * @param name   Google account name
+     * @param userId        Google user id
+     * @param name          Google account name
+     * @param sessionUserId user db id from the saved session, or 0 to look the user up
      */
-    private void goToMain(String userId, String name) {
-        Log.d(TAG, "Signed in, move to Main Activity");
+    private void goToMain(String userId, String name, int sessionUserId) {
+        AppLog.d(TAG, "Signed in, move to Main Activity");
         Intent intent = new Intent(this, MainActivity.class);
         intent.putExtra(IntentEnum.USER_ID.name(), userId);
         intent.putExtra(IntentEnum.USER_NAME.name(), name);
+        intent.putExtra(IntentEnum.SIGN_IN_TIME.name(), SystemClock.elapsedRealtime());
+        intent.putExtra(IntentEnum.SESSION_USER_ID.name(), sessionUserId);
         startActivity(intent);
         finish();
     }
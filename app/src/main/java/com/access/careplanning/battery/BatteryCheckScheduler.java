@@ -0,0 +1,137 @@
+package com.access.careplanning.battery;
+
+import com.access.careplanning.util.Clock;
+
+/**
+ * Plans the BatteryMonitor's single check alarm from the battery samples: at the time the
+ * discharge rate predicts the level will drop below the threshold, or none if it can't on battery.
+ * Plain Java with the alarm behind ICheckAlarm, so the policy simulator runs it on the JVM.
+ * Not thread safe, use from one thread.
+ */
+public class BatteryCheckScheduler {
+
+    /**
+     * Sets and cancels the check alarm
+     */
+    public interface ICheckAlarm {
+        /**
+         * @param checkTime elapsed realtime of the alarm, replacing any already set
+         */
+        void set(long checkTime);
+
+        void cancel();
+    }
+
+    private final Clock mClock;
+    private final ICheckAlarm mAlarm;
+    private final DischargeEstimator mEstimator = new DischargeEstimator();
+
+    private boolean mStarted;
+    private boolean mFewerChecks;
+    private int mThreshold = -1;
+    private long mCheckTime = -1;
+
+    public BatteryCheckScheduler(Clock clock, ICheckAlarm alarm) {
+        mClock = clock;
+        mAlarm = alarm;
+    }
+
+    /**
+     * Start setting the alarm, none is set before
+     */
+    public void start() {
+        mStarted = true;
+        schedule();
+    }
+
+    /**
+     * Stop setting the alarm, and cancel any set
+     */
+    public void stop() {
+        mStarted = false;
+        cancel();
+    }
+
+    /**
+     * Sample the battery status, and move the alarm for the new prediction
+     *
+     * @param level    battery percent
+     * @param charging true if plugged in
+     */
+    public void onStatus(int level, boolean charging) {
+        mEstimator.sample(mClock.elapsedRealtime(), level, charging);
+        schedule();
+    }
+
+    /**
+     * The alarm has fired, so none is set until the next status
+     */
+    public void onCheckAlarm() {
+        mCheckTime = -1;
+    }
+
+    /**
+     * @param threshold battery percent to check for crossing, or -1 for none
+     */
+    public void setThreshold(int threshold) {
+        mThreshold = threshold;
+        schedule();
+    }
+
+    /**
+     * @param fewerChecks true for a longer shortest time between checks
+     */
+    public void setFewerChecks(boolean fewerChecks) {
+        if (fewerChecks != mFewerChecks) {
+            mFewerChecks = fewerChecks;
+            mCheckTime = -1;
+            schedule();
+        }
+    }
+
+    /**
+     * Set one alarm for the predicted threshold crossing, unless one is already set within
+     * the shortest check time of it
+     */
+    private void schedule() {
+        if (!mStarted) {
+            return;
+        }
+        if (mThreshold < 0) {
+            cancel();
+            return;
+        }
+        final long delay = mEstimator.nextCheckDelay(mThreshold, mFewerChecks);
+        if (delay == DischargeEstimator.NO_CHECK) {
+            // Charging, or already below, the charger and battery okay broadcasts cover the next change
+            cancel();
+            return;
+        }
+
+        final long checkTime = mClock.elapsedRealtime() + delay;
+        if (mCheckTime > 0 && Math.abs(mCheckTime - checkTime) < DischargeEstimator.MIN_CHECK_MS) {
+            return;
+        }
+        mCheckTime = checkTime;
+        mAlarm.set(checkTime);
+    }
+
+    private void cancel() {
+        if (mCheckTime > 0) {
+            mAlarm.cancel();
+        }
+        mCheckTime = -1;
+    }
+
+    /**
+     * @return elapsed realtime of the alarm, or -1 if none is set
+     */
+    public long getCheckTime() {
+        return mCheckTime;
+    }
+
+    public DischargeEstimator getEstimator() {
+        return mEstimator;
+    }
+
+}
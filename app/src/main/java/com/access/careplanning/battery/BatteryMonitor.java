@@ -0,0 +1,259 @@
+package com.access.careplanning.battery;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.util.Log;
+
+import com.access.careplanning.IntentEnum;
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.metrics.Histogram;
+import com.access.careplanning.metrics.Metrics;
+import com.access.careplanning.policy.PolicyReceiver;
+import com.access.careplanning.util.AndroidClock;
+import com.access.careplanning.util.Clock;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Event driven battery monitor, replacing a fixed interval polling alarm.
+ * Level changes come from the battery changed, low/okay and charger broadcasts while the
+ * device is awake. While it sleeps, at most one wakeup alarm is set, at the time the
+ * discharge rate predicts the level will drop below the threshold, as the BatteryCheckScheduler
+ * plans it. The check alarm goes to the PolicyReceiver, so it is handled even if the process has died.
+ * Listeners are called on the main thread.
+ */
+public class BatteryMonitor {
+
+    private static final String TAG = "BatteryMonitor";
+
+    public static final String ACTION_BATTERY_CHECK = "com.access.careplanning.BATTERY_CHECK";
+
+    private static final Histogram sReceiveLatency = Metrics.histogram("battery.onReceive");
+
+    /**
+     * Interval of the polling alarm this replaces, to count the wakeups saved
+     */
+    private static final long POLLING_INTERVAL_MS = 1000 * 5;
+
+    /**
+     * Listener for battery level and charging changes
+     */
+    public interface IBatteryListener {
+        void onBatteryChanged(int level, boolean charging);
+    }
+
+    private static volatile BatteryMonitor INSTANCE;
+
+    private final Context mContext;
+    private final Clock mClock;
+    private final AlarmManager mAlarmManager;
+    private final PendingIntent mCheckIntent;
+    private final BatteryCheckScheduler mChecks;
+    private final List<IBatteryListener> mListeners = new CopyOnWriteArrayList<>();
+
+    private boolean mStarted;
+    private long mStartTime;
+    private int mWakeups;
+    private int mEvents;
+
+    public static BatteryMonitor getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (BatteryMonitor.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new BatteryMonitor(context.getApplicationContext(), AndroidClock.INSTANCE);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private BatteryMonitor(Context context, Clock clock) {
+        mContext = context;
+        mClock = clock;
+        mAlarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        Intent intent = new Intent(context, PolicyReceiver.class).setAction(ACTION_BATTERY_CHECK);
+        mCheckIntent = PendingIntent.getBroadcast(context, IntentEnum.BATTERY_CHECK.getCode(), intent, 0);
+        mChecks = new BatteryCheckScheduler(clock, new BatteryCheckScheduler.ICheckAlarm() {
+            @Override
+            public void set(long checkTime) {
+                if (mAlarmManager != null) {
+                    mAlarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, checkTime, mCheckIntent);
+                }
+                if (AppLog.isLoggable(Log.DEBUG)) {
+                    AppLog.d(TAG, "battery check in %ds, %.1f%%/h", (checkTime - mClock.elapsedRealtime()) / 1000,
+                            mChecks.getEstimator().getPercentPerHour());
+                }
+            }
+
+            @Override
+            public void cancel() {
+                if (mAlarmManager != null) {
+                    mAlarmManager.cancel(mCheckIntent);
+                }
+            }
+        });
+    }
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final String action = intent.getAction();
+            AppLog.d(TAG, "onReceive %s", action);
+            final long start = Metrics.start();
+            if (Intent.ACTION_BATTERY_CHANGED.equals(action)) {
+                onStatus(intent);
+            } else {
+                // The other broadcasts have no level
+                readStatus();
+            }
+            sReceiveLatency.stop(start);
+        }
+    };
+
+    /**
+     * The check alarm has fired, call from its receiver on the main thread
+     */
+    public void onCheckAlarm() {
+        mWakeups++;
+        mChecks.onCheckAlarm();
+        readStatus();
+    }
+
+    /**
+     * Read the latest sticky battery status
+     */
+    private void readStatus() {
+        Intent status = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (status != null) {
+            onStatus(status);
+        }
+    }
+
+    /**
+     * Start monitoring, the current status is delivered straight away
+     */
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        mStartTime = mClock.elapsedRealtime();
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        filter.addAction(Intent.ACTION_BATTERY_LOW);
+        filter.addAction(Intent.ACTION_BATTERY_OKAY);
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        mContext.registerReceiver(mReceiver, filter);
+        mChecks.start();
+    }
+
+    /**
+     * Stop monitoring and cancel any check alarm
+     */
+    public void stop() {
+        if (mStarted) {
+            mStarted = false;
+            mContext.unregisterReceiver(mReceiver);
+            mChecks.stop();
+        }
+    }
+
+    public void addListener(IBatteryListener listener) {
+        mListeners.add(listener);
+        if (getLevel() >= 0) {
+            listener.onBatteryChanged(getLevel(), isCharging());
+        }
+    }
+
+    public void removeListener(IBatteryListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Set the battery percent that listeners need to know about crossing
+     *
+     * @param threshold battery percent, or -1 for none
+     */
+    public void setThreshold(int threshold) {
+        mChecks.setThreshold(threshold);
+    }
+
+    /**
+     * Check the battery less often, to save power
+     *
+     * @param fewerChecks true for a longer shortest time between checks
+     */
+    public void setFewerChecks(boolean fewerChecks) {
+        mChecks.setFewerChecks(fewerChecks);
+    }
+
+    private void onStatus(Intent status) {
+        mEvents++;
+        final int level = toPercent(status);
+        final int plugged = status.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+        if (level < 0) {
+            return;
+        }
+        mChecks.onStatus(level, plugged != 0);
+        for (IBatteryListener listener : mListeners) {
+            listener.onBatteryChanged(level, plugged != 0);
+        }
+    }
+
+    /**
+     * Get battery percent from a battery changed intent
+     * https://developer.android.com/training/monitoring-device-state/battery-monitoring
+     *
+     * @return percent of battery level, or -1 if not known
+     */
+    public static int toPercent(Intent batteryStatus) {
+        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (level < 0 || scale <= 0) {
+            return -1;
+        }
+        return (int) (level * 100 / (float) scale);
+    }
+
+    /**
+     * @return last known battery percent, or -1 if not known yet
+     */
+    public int getLevel() {
+        return mChecks.getEstimator().getLevel();
+    }
+
+    public boolean isCharging() {
+        return mChecks.getEstimator().isCharging();
+    }
+
+    /**
+     * @return number of check alarms that have woken the device
+     */
+    public int getWakeupCount() {
+        return mWakeups;
+    }
+
+    /**
+     * @return number of battery broadcasts and checks handled
+     */
+    public int getEventCount() {
+        return mEvents;
+    }
+
+    /**
+     * @return wakeups saved compared with the old fixed interval polling alarm
+     */
+    public long getSavedWakeups() {
+        if (!mStarted) {
+            return 0;
+        }
+        return (mClock.elapsedRealtime() - mStartTime) / POLLING_INTERVAL_MS - mWakeups;
+    }
+
+}
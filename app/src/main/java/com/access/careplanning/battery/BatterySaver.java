@@ -0,0 +1,147 @@
+package com.access.careplanning.battery;
+
+import com.access.careplanning.rules.DecisionTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Battery saver state machine with graduated levels, each deeper level entered below a lower
+ * battery percent and with its own actions. A level is only left once the battery is back
+ * HYSTERESIS percent above where it was entered, so a battery sitting at a threshold doesn't
+ * flap between levels. Plugging in the charger recovers to OFF straight away.
+ * Not thread safe, use from one thread.
+ */
+public class BatterySaver {
+
+    public static final int OFF = 0;
+
+    /**
+     * Percent above a level's threshold that the battery must reach to leave the level
+     */
+    public static final int HYSTERESIS = 5;
+
+    /**
+     * One saver level: the percent it starts below, and its actions
+     */
+    public static class Profile {
+
+        private final int mBelow;
+        private final int mWifi;
+        private final int mRinger;
+        private final boolean mFewerChecks;
+
+        /**
+         * @param below       battery percent the level starts below
+         * @param wifi        wifi action eg DecisionTable.WIFI_OFF, or UNSET to leave it to the rules
+         * @param ringer      ringer action eg DecisionTable.RINGER_VIBRATE, or UNSET
+         * @param fewerChecks true to check the battery less often
+         */
+        public Profile(int below, int wifi, int ringer, boolean fewerChecks) {
+            mBelow = below;
+            mWifi = wifi;
+            mRinger = ringer;
+            mFewerChecks = fewerChecks;
+        }
+
+        public int getBelow() {
+            return mBelow;
+        }
+
+        public int getWifi() {
+            return mWifi;
+        }
+
+        public int getRinger() {
+            return mRinger;
+        }
+
+        public boolean isFewerChecks() {
+            return mFewerChecks;
+        }
+    }
+
+    private List<Profile> mProfiles;
+    private int mLevel;
+
+    /**
+     * @param profiles the levels after OFF, deepest last
+     * @param level    level to start in, eg the saved one
+     */
+    public BatterySaver(List<Profile> profiles, int level) {
+        setProfiles(profiles);
+        setLevel(level);
+    }
+
+    /**
+     * Levels for a user's battery threshold: wifi off below the threshold, then also vibrate
+     * and fewer battery checks below half of it
+     */
+    public static List<Profile> defaultProfiles(int threshold) {
+        return Arrays.asList(
+                new Profile(threshold, DecisionTable.WIFI_OFF, DecisionTable.UNSET, false),
+                new Profile(threshold / 2, DecisionTable.WIFI_OFF, DecisionTable.RINGER_VIBRATE, true));
+    }
+
+    /**
+     * Change the levels, eg for a new threshold, keeping the current level if it still exists.
+     * The next update moves to the right level for the new percents.
+     */
+    public void setProfiles(List<Profile> profiles) {
+        mProfiles = new ArrayList<>(profiles);
+        mLevel = Math.min(mLevel, mProfiles.size());
+    }
+
+    public void setLevel(int level) {
+        mLevel = Math.max(OFF, Math.min(level, mProfiles.size()));
+    }
+
+    /**
+     * Move to the level for the battery state
+     *
+     * @param percent  battery percent, or -1 if not known
+     * @param charging true if plugged in
+     * @return true if the level changed
+     */
+    public boolean update(int percent, boolean charging) {
+        int level = mLevel;
+        if (charging) {
+            level = OFF;
+        } else if (percent >= 0) {
+            while (level < mProfiles.size() && percent < mProfiles.get(level).getBelow()) {
+                level++;
+            }
+            while (level > OFF && percent >= mProfiles.get(level - 1).getBelow() + HYSTERESIS) {
+                level--;
+            }
+        }
+        if (level == mLevel) {
+            return false;
+        }
+        mLevel = level;
+        return true;
+    }
+
+    /**
+     * @return current level, OFF or 1 up to the number of profiles
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * @return the current level's profile, or null if OFF
+     */
+    public Profile getProfile() {
+        return mLevel > OFF ? mProfiles.get(mLevel - 1) : null;
+    }
+
+    /**
+     * @return battery percent the next deeper level starts below, or -1 if this is the deepest
+     */
+    public int getNextBelow() {
+        return mLevel < mProfiles.size() ? mProfiles.get(mLevel).getBelow() : -1;
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.access.careplanning.battery;
+
+/**
+ * Estimates the battery discharge rate from level samples, to predict when the level
+ * will cross a threshold. The rate is a moving average of the time taken per percent drop,
+ * and is forgotten while charging. Also plans the battery check alarm from the prediction.
+ */
+public class DischargeEstimator {
+
+    /**
+     * Returned when there is no estimate, eg while charging or before a drop has been seen
+     */
+    public static final long UNKNOWN = -1;
+
+    /**
+     * Returned when no check alarm is needed
+     */
+    public static final long NO_CHECK = -1;
+
+    /**
+     * Bounds on the check alarm, the upper bound covers a discharge rate that speeds up
+     */
+    public static final long MIN_CHECK_MS = 1000 * 60;
+    public static final long MAX_CHECK_MS = 1000 * 60 * 60;
+
+    /**
+     * Lower bound on the check alarm when checking less often, eg at a low battery saver level
+     */
+    public static final long FEWER_CHECKS_MIN_MS = 1000 * 60 * 15;
+
+    /**
+     * Check a little before the predicted crossing, as the rate is only an estimate
+     */
+    private static final double CHECK_MARGIN = 0.8;
+
+    /**
+     * Weight of the newest drop in the moving average
+     */
+    private static final double SMOOTHING = 0.3;
+
+    private long mAnchorTime = -1;
+    private int mAnchorLevel = -1;
+    private int mLevel = -1;
+    private boolean mCharging;
+
+    /**
+     * Smoothed discharge rate in percent per millisecond, 0 if unknown
+     */
+    private double mRate;
+
+    /**
+     * Add a battery sample
+     *
+     * @param timeMs   sample time eg SystemClock.elapsedRealtime()
+     * @param level    battery percent
+     * @param charging true if plugged in and charging
+     */
+    public void sample(long timeMs, int level, boolean charging) {
+        mLevel = level;
+        mCharging = charging;
+        if (charging) {
+            mAnchorTime = -1;
+            mRate = 0;
+            return;
+        }
+
+        if (mAnchorTime < 0 || level > mAnchorLevel) {
+            // First sample on battery, or the level went up, so restart from here
+            mAnchorTime = timeMs;
+            mAnchorLevel = level;
+        } else if (level < mAnchorLevel && timeMs > mAnchorTime) {
+            final double rate = (mAnchorLevel - level) / (double) (timeMs - mAnchorTime);
+            mRate = mRate > 0 ? SMOOTHING * rate + (1 - SMOOTHING) * mRate : rate;
+            mAnchorTime = timeMs;
+            mAnchorLevel = level;
+        }
+    }
+
+    /**
+     * Predict the time until the level drops below the threshold
+     *
+     * @param threshold battery percent
+     * @return milliseconds until below the threshold, 0 if already below, or UNKNOWN
+     */
+    public long millisUntilBelow(int threshold) {
+        if (mLevel < 0 || mCharging) {
+            return UNKNOWN;
+        }
+        if (mLevel < threshold) {
+            return 0;
+        }
+        if (mRate <= 0) {
+            return UNKNOWN;
+        }
+        // Below the threshold is one percent under it
+        return (long) ((mLevel - threshold + 1) / mRate);
+    }
+
+    /**
+     * Get the delay for the battery check alarm, a little before the predicted crossing
+     *
+     * @param threshold   battery percent to check for crossing
+     * @param fewerChecks true for a longer shortest delay
+     * @return milliseconds, or NO_CHECK if charging or already below, when the charger and battery
+     * okay broadcasts cover the next change
+     */
+    public long nextCheckDelay(int threshold, boolean fewerChecks) {
+        final long delay = millisUntilBelow(threshold);
+        if (mCharging || delay == 0) {
+            return NO_CHECK;
+        }
+        if (delay == UNKNOWN) {
+            return MAX_CHECK_MS;
+        }
+        final long minCheck = fewerChecks ? FEWER_CHECKS_MIN_MS : MIN_CHECK_MS;
+        return Math.max(minCheck, Math.min(MAX_CHECK_MS, (long) (delay * CHECK_MARGIN)));
+    }
+
+    /**
+     * @return discharge rate in percent per hour, or 0 if unknown
+     */
+    public double getPercentPerHour() {
+        return mRate * 60 * 60 * 1000;
+    }
+
+    public int getLevel() {
+        return mLevel;
+    }
+
+    public boolean isCharging() {
+        return mCharging;
+    }
+
+}
@@ -3,12 +3,14 @@ package com.access.careplanning.database;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.ForeignKey;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 @Entity(tableName = "battery", foreignKeys = @ForeignKey(entity = User.class,
         parentColumns = "id",
         childColumns = "user_id",
-        onDelete = ForeignKey.NO_ACTION))
+        onDelete = ForeignKey.NO_ACTION),
+        indices = @Index(value = "user_id", unique = true))
 public class Battery {
 
     @PrimaryKey(autoGenerate = true)
@@ -19,6 +21,18 @@ public class Battery {
 
     private int threshold;
 
+    /**
+     * Battery saver level, so a restart carries on from it without repeating its actions
+     */
+    @ColumnInfo(name = "saver_level", defaultValue = "0")
+    private int saverLevel;
+
+    /**
+     * Time the saver level was entered
+     */
+    @ColumnInfo(name = "saver_time", defaultValue = "0")
+    private long saverTime;
+
     public int getId() {
         return id;
     }
@@ -42,4 +56,20 @@ public class Battery {
     public void setThreshold(int threshold) {
         this.threshold = threshold;
     }
+
+    public int getSaverLevel() {
+        return saverLevel;
+    }
+
+    public void setSaverLevel(int saverLevel) {
+        this.saverLevel = saverLevel;
+    }
+
+    public long getSaverTime() {
+        return saverTime;
+    }
+
+    public void setSaverTime(long saverTime) {
+        this.saverTime = saverTime;
+    }
 }
@@ -5,36 +5,141 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Data Access Object for the app queries and actions
  */
 @Dao
 public interface CarePlanningDao {
 
+    /**
+     * Records written per batch when provisioning, well under the SQLite limit of 999
+     * variables for the time range delete
+     */
+    int PROVISION_CHUNK_SIZE = 500;
+
+    /**
+     * Insert a user
+     *
+     * @param user
+     * @return rowId of the new user, which is the user id
+     */
     @Insert(onConflict = OnConflictStrategy.ABORT)
-    void insert(User user);
+    long insert(User user);
 
     @Query("SELECT * from user WHERE google_id= :googleId")
     User getUser(String googleId);
 
+    @Query("SELECT id from user WHERE google_id= :googleId")
+    Integer getUserId(String googleId);
+
+    /**
+     * Get the id of the user with this Google id, inserting the user if they are new
+     *
+     * @param user
+     * @return user id
+     */
+    @Transaction
+    default int getOrInsertUserId(User user) {
+        Integer userId = getUserId(user.getGoogleId());
+        return userId != null ? userId : (int) insert(user);
+    }
+
     @Query("SELECT * from user WHERE google_id= :googleId")
     LiveData<User> getUserLiveData(String googleId);
 
+    /**
+     * Get the user with their time ranges and battery settings in one transaction
+     */
+    @Transaction
+    @Query("SELECT * from user WHERE google_id= :googleId")
+    UserWithSettings getUserWithSettings(String googleId);
+
+    @Transaction
+    @Query("SELECT * from user WHERE id == :userId")
+    LiveData<UserWithSettings> getUserWithSettingsLiveData(int userId);
+
+    /**
+     * Get the user with their settings, first inserting the user and a default time range
+     * if they are new or have no time range
+     *
+     * @param user
+     * @param defaultTimeRange times of the range to insert, a copy is inserted so it can be shared
+     * @return user with settings, the user id is the record id
+     */
+    @Transaction
+    default UserWithSettings getOrInsertUserWithSettings(User user, TimeRange defaultTimeRange) {
+        UserWithSettings settings = getUserWithSettings(user.getGoogleId());
+        if (settings != null && !settings.getTimeRanges().isEmpty()) {
+            return settings;
+        }
+        TimeRange timeRange = defaultTimeRange.copy();
+        timeRange.setUserId(settings != null ? settings.getUser().getId() : (int) insert(user));
+        insert(timeRange);
+        return getUserWithSettings(user.getGoogleId());
+    }
+
 
     @Insert(onConflict = OnConflictStrategy.ABORT)
-    void insert(TimeRange timeRange);
+    long insert(TimeRange timeRange);
 
     @Update
     void update(TimeRange timeRange);
 
-    @Query("SELECT * from time_range WHERE user_id == :userId")
+    @Query("DELETE from time_range WHERE id == :rangeId")
+    int deleteTimeRange(int rangeId);
+
+    @Query("SELECT MIN(id) from time_range WHERE user_id == :userId")
+    Integer getFirstTimeRangeId(int userId);
+
+    /**
+     * Insert the time range only if the user doesn't have one yet
+     *
+     * @param timeRange
+     * @return id of the user's first time range, either existing or the inserted one
+     */
+    @Transaction
+    default int insertIfAbsent(TimeRange timeRange) {
+        Integer rangeId = getFirstTimeRangeId(timeRange.getUserId());
+        return rangeId != null ? rangeId : (int) insert(timeRange);
+    }
+
+    @Query("UPDATE time_range SET start_hour = :hour, start_minute = :minute WHERE id == :rangeId")
+    int updateStartTime(int rangeId, int hour, int minute);
+
+    @Query("UPDATE time_range SET end_hour = :hour, end_minute = :minute WHERE id == :rangeId")
+    int updateEndTime(int rangeId, int hour, int minute);
+
+    @Query("UPDATE time_range SET start_hour = :startHour, start_minute = :startMinute, "
+            + "end_hour = :endHour, end_minute = :endMinute WHERE id == :rangeId")
+    int updateTimeRange(int rangeId, int startHour, int startMinute, int endHour, int endMinute);
+
+    /**
+     * Get the user's first time range
+     */
+    @Query("SELECT * from time_range WHERE user_id == :userId ORDER BY id LIMIT 1")
     TimeRange getTimeRange(int userId);
 
-    @Query("SELECT * from time_range WHERE user_id == :userId")
+    /**
+     * Get the user's first time range
+     */
+    @Query("SELECT * from time_range WHERE user_id == :userId ORDER BY id LIMIT 1")
     LiveData<TimeRange> getTimeRangeLiveData(int userId);
 
+    @Query("SELECT * from time_range WHERE user_id == :userId ORDER BY id")
+    List<TimeRange> getTimeRanges(int userId);
+
+    @Query("SELECT * from time_range WHERE user_id == :userId ORDER BY id")
+    LiveData<List<TimeRange>> getTimeRangesLiveData(int userId);
+
 
     @Query("SELECT * from battery WHERE user_id == :userId")
     LiveData<Battery> getBatteryLiveData(int userId);
@@ -43,9 +148,176 @@ public interface CarePlanningDao {
     Battery getBattery(int userId);
 
     @Insert(onConflict = OnConflictStrategy.ABORT)
-    void insert(Battery battery);
+    long insert(Battery battery);
 
     @Update
     void update(Battery battery);
 
+    @Query("UPDATE battery SET threshold = :threshold WHERE user_id == :userId")
+    int updateBatteryThreshold(int userId, int threshold);
+
+    /**
+     * Update the user's battery threshold, or insert it if the user doesn't have one yet
+     *
+     * @param userId
+     * @param threshold
+     */
+    @Transaction
+    default void upsertBattery(int userId, int threshold) {
+        if (updateBatteryThreshold(userId, threshold) == 0) {
+            Battery battery = new Battery();
+            battery.setUserId(userId);
+            battery.setThreshold(threshold);
+            insert(battery);
+        }
+    }
+
+    @Query("UPDATE battery SET saver_level = :level, saver_time = :time WHERE user_id == :userId")
+    int updateSaverLevel(int userId, int level, long time);
+
+    /**
+     * Save the user's battery saver level, inserting their battery settings if they have none
+     *
+     * @param userId
+     * @param threshold threshold to insert with
+     * @param level     saver level
+     * @param time      time the level was entered
+     */
+    @Transaction
+    default void upsertSaverLevel(int userId, int threshold, int level, long time) {
+        if (updateSaverLevel(userId, level, time) == 0) {
+            Battery battery = new Battery();
+            battery.setUserId(userId);
+            battery.setThreshold(threshold);
+            battery.setSaverLevel(level);
+            battery.setSaverTime(time);
+            insert(battery);
+        }
+    }
+
+    /**
+     * Get the user's policy rules, in the order they are applied
+     */
+    @Query("SELECT * FROM rule WHERE user_id = :userId ORDER BY priority, id")
+    List<Rule> getRules(int userId);
+
+    @Insert
+    void insertRules(List<Rule> rules);
+
+    @Query("DELETE FROM rule WHERE user_id = :userId")
+    int deleteRules(int userId);
+
+    /**
+     * Replace all the user's rules, so the rule set changes in one step
+     */
+    @Transaction
+    default void setRules(int userId, List<Rule> rules) {
+        deleteRules(userId);
+        for (Rule rule : rules) {
+            rule.setId(0);
+            rule.setUserId(userId);
+        }
+        insertRules(rules);
+    }
+
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long[] insertUsers(List<User> users);
+
+    @Insert(onConflict = OnConflictStrategy.ABORT)
+    void insertTimeRanges(List<TimeRange> timeRanges);
+
+    /**
+     * Insert batteries for users who don't have one yet, existing rows are updated by
+     * updateBatteryThreshold so their id and saver level are kept
+     */
+    @Insert(onConflict = OnConflictStrategy.ABORT)
+    void insertBatteries(List<Battery> batteries);
+
+    @Query("DELETE from time_range WHERE user_id IN (:userIds)")
+    int deleteTimeRanges(List<Integer> userIds);
+
+    /**
+     * Provision many carers in one transaction, read from the records as they are written
+     * so they are never all in memory. Each batch of records is written with one prepared
+     * statement per table. Existing users are kept, with their quiet periods and battery
+     * threshold replaced by any given in their record. If a Google id is repeated in a batch,
+     * the last record for it is used.
+     *
+     * @param records carers to provision
+     * @return counts of what was written
+     */
+    @Transaction
+    default ProvisionResult provision(Iterator<StaffRecord> records) {
+        ProvisionResult result = new ProvisionResult();
+        List<StaffRecord> chunk = new ArrayList<>(PROVISION_CHUNK_SIZE);
+        while (records.hasNext()) {
+            chunk.add(records.next());
+            if (chunk.size() == PROVISION_CHUNK_SIZE || !records.hasNext()) {
+                provisionChunk(chunk, result);
+                chunk.clear();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write one batch of records, call in the provisioning transaction
+     */
+    default void provisionChunk(List<StaffRecord> records, ProvisionResult result) {
+        // The last record wins, the insert would ignore a repeat as an existing user
+        Map<String, StaffRecord> unique = new LinkedHashMap<>();
+        for (StaffRecord record : records) {
+            unique.remove(record.getGoogleId());
+            unique.put(record.getGoogleId(), record);
+        }
+        List<StaffRecord> chunk = new ArrayList<>(unique.values());
+
+        List<User> users = new ArrayList<>(chunk.size());
+        for (StaffRecord record : chunk) {
+            users.add(new User(record.getGoogleId(), record.getName()));
+        }
+        final long[] ids = insertUsers(users);
+
+        List<Integer> replacedUserIds = new ArrayList<>();
+        List<TimeRange> timeRanges = new ArrayList<>();
+        List<Battery> batteries = new ArrayList<>();
+        int batteriesUpdated = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            final StaffRecord record = chunk.get(i);
+            // Ignored as the Google id is already there
+            final boolean inserted = ids[i] > 0;
+            final int userId = inserted ? (int) ids[i] : getUserId(record.getGoogleId());
+            result.addUser(inserted);
+
+            if (record.getTimeRanges() != null) {
+                if (!inserted) {
+                    replacedUserIds.add(userId);
+                }
+                for (TimeRange timeRange : record.getTimeRanges()) {
+                    timeRange.setUserId(userId);
+                    timeRanges.add(timeRange);
+                }
+            }
+            if (record.getBatteryThreshold() != null) {
+                if (!inserted && updateBatteryThreshold(userId, record.getBatteryThreshold()) > 0) {
+                    batteriesUpdated++;
+                } else {
+                    Battery battery = new Battery();
+                    battery.setUserId(userId);
+                    battery.setThreshold(record.getBatteryThreshold());
+                    batteries.add(battery);
+                }
+            }
+        }
+
+        if (!replacedUserIds.isEmpty()) {
+            deleteTimeRanges(replacedUserIds);
+        }
+        insertTimeRanges(timeRanges);
+        insertBatteries(batteries);
+        result.addTimeRanges(timeRanges.size());
+        result.addBatteries(batteries.size() + batteriesUpdated);
+    }
+
 }
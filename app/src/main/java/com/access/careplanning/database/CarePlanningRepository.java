@@ -4,30 +4,136 @@ import android.app.Application;
 
 import androidx.lifecycle.LiveData;
 
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.metrics.Histogram;
+import com.access.careplanning.metrics.Metrics;
+import com.access.careplanning.util.AndroidClock;
+import com.access.careplanning.util.Clock;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 public class CarePlanningRepository {
 
+    private static final String TAG = "CarePlanningRepository";
+
+    // Latency of the database work, cache hits aren't timed
+    private static final Histogram sUserLatency = Metrics.histogram("repo.getOrInsertUser");
+    private static final Histogram sTimeRangesLatency = Metrics.histogram("repo.loadTimeRanges");
+    private static final Histogram sBatteryLatency = Metrics.histogram("repo.loadBattery");
+    private static final Histogram sTimeRangeWriteLatency = Metrics.histogram("repo.writeTimeRange");
+    private static final Histogram sBatteryWriteLatency = Metrics.histogram("repo.writeBattery");
+    private static final Histogram sProvisionLatency = Metrics.histogram("repo.provision");
+    private static final Histogram sEventsLatency = Metrics.histogram("repo.getEvents");
+
+    private final CarePlanningRoomDatabase mDb;
     private final CarePlanningDao mCarePlanningDao;
+    private final EventDao mEventDao;
+    private final SettingsCache mCache;
+    private final EventJournal mJournal;
+    private final WriteExecutor mWriteExecutor;
+    private final Clock mClock;
+
+    /**
+     * Result of a queued write, called on the write thread
+     */
+    public interface IWriteResult {
+        /**
+         * @param committed true if written, false if it failed and was rolled back
+         */
+        void onWritten(boolean committed);
+    }
 
     // Note: to unit test the Repository, you have to remove the Application
     // dependency. Recommended for commercial app, this adds complexity.
     // https://github.com/googlesamples
     public CarePlanningRepository(Application application) {
+        this(application, AndroidClock.INSTANCE);
+    }
+
+    // The clock times the saved saver levels and events.
+    public CarePlanningRepository(Application application, Clock clock) {
+        mClock = clock;
         CarePlanningRoomDatabase db = CarePlanningRoomDatabase.getDatabase(application);
+        mDb = db;
         mCarePlanningDao = db.taskDao();
+        mEventDao = db.eventDao();
+        mCache = db.getSettingsCache();
+        mJournal = db.getEventJournal(clock);
+        mWriteExecutor = db.getWriteExecutor();
+    }
+
+    // You must call this on a non-UI thread or your app will throw an exception.
+    public long insert(User user) {
+        return mCarePlanningDao.insert(user);
     }
 
-    public void insert(User user) {
-        mCarePlanningDao.insert(user);
+    // Cached, else a single transaction, you must call this on a non-UI thread.
+    public int getOrInsertUserId(User user) {
+        Integer userId = mCache.getUserId(user.getGoogleId());
+        if (userId == null) {
+            final long start = Metrics.start();
+            userId = mCarePlanningDao.getOrInsertUserId(user);
+            sUserLatency.stop(start);
+            mCache.putUserId(user.getGoogleId(), userId);
+        }
+        return userId;
     }
 
+    // Cached, else you must call this on a non-UI thread.
     public User getUser(String googleId) {
-        return mCarePlanningDao.getUser(googleId);
+        return mCache.getUser(googleId, () -> mCarePlanningDao.getUser(googleId));
     }
 
     public LiveData<User> getUserLiveData(String googleId) {
         return mCarePlanningDao.getUserLiveData(googleId);
     }
 
+    // Cached eg preloaded at startup, else a single transaction, you must call this on a non-UI thread.
+    public UserWithSettings getOrInsertUserWithSettings(User user, TimeRange defaultTimeRange) {
+        UserWithSettings cached = mCache.getUserWithSettings(user.getGoogleId());
+        if (cached != null && !cached.getTimeRanges().isEmpty()) {
+            return cached;
+        }
+        final long start = Metrics.start();
+        UserWithSettings settings = mCarePlanningDao.getOrInsertUserWithSettings(user, defaultTimeRange);
+        sUserLatency.stop(start);
+        mCache.put(settings);
+        return settings;
+    }
+
+    // Load a user with all their settings into the cache, eg at startup before they have signed in.
+    // You must call this on a non-UI thread.
+    public UserWithSettings preloadUser(String googleId) {
+        UserWithSettings settings = mCarePlanningDao.getUserWithSettings(googleId);
+        if (settings != null) {
+            mCache.put(settings);
+        }
+        return settings;
+    }
+
+    // Open the database, running any migrations, you must call this on a non-UI thread.
+    public void openDatabase() {
+        mDb.getOpenHelper().getWritableDatabase();
+    }
+
+    // Run the common queries once, so SQLite has prepared their statements before they are needed.
+    // You must call this on a non-UI thread.
+    public void warmStatements() {
+        mCarePlanningDao.getUserId("");
+        mCarePlanningDao.getUserWithSettings("");
+        mCarePlanningDao.getTimeRanges(0);
+        mCarePlanningDao.getBattery(0);
+        mCarePlanningDao.getRules(0);
+    }
+
+    // Room executes all queries on a separate thread.
+    // Observed LiveData will notify the observer when the user or any of their settings change.
+    public LiveData<UserWithSettings> getUserWithSettingsLiveData(int userId) {
+        return mCarePlanningDao.getUserWithSettingsLiveData(userId);
+    }
+
 
     // Room executes all queries on a separate thread.
     // Observed LiveData will notify the observer when the data has changed.
@@ -35,23 +141,103 @@ public class CarePlanningRepository {
         return mCarePlanningDao.getTimeRangeLiveData(userId);
     }
 
+    // Cached, else you must call this on a non-UI thread.
     public TimeRange getTimeRange(int userId) {
-        return mCarePlanningDao.getTimeRange(userId);
+        List<TimeRange> timeRanges = getTimeRanges(userId);
+        return timeRanges.isEmpty() ? null : timeRanges.get(0);
     }
 
+    // Room executes all queries on a separate thread.
+    // Observed LiveData will notify the observer when the data has changed.
+    public LiveData<List<TimeRange>> getTimeRangesLiveData(int userId) {
+        return mCarePlanningDao.getTimeRangesLiveData(userId);
+    }
 
-    // You must call this on a non-UI thread or your app will throw an exception.
-    public void insert(TimeRange timeRange) {
-        CarePlanningRoomDatabase.databaseWriteExecutor.execute(() -> {
-            mCarePlanningDao.insert(timeRange);
+    // Cached, else you must call this on a non-UI thread. The list is read only.
+    public List<TimeRange> getTimeRanges(int userId) {
+        return mCache.getTimeRanges(userId, () -> {
+            final long start = Metrics.start();
+            List<TimeRange> timeRanges = mCarePlanningDao.getTimeRanges(userId);
+            sTimeRangesLatency.stop(start);
+            return timeRanges;
         });
     }
 
-    // You must call this on a non-UI thread or your app will throw an exception.
+
+    // Background alternative to LiveData, the query and listener run on the executor.
+    // The listener gets the current ranges, then each change, call cancel() when finished.
+    public ChangeObserver<List<TimeRange>> observeTimeRanges(int userId, Executor executor,
+                                                             ChangeObserver.IChangeListener<List<TimeRange>> listener) {
+        return new ChangeObserver<>(mDb, new String[]{"time_range"},
+                () -> mCarePlanningDao.getTimeRanges(userId), CarePlanningRepository::sameTimeRanges,
+                executor, listener);
+    }
+
+    // Queued in order with the user's other writes, may block if the queue is full.
+    public void insert(TimeRange timeRange) {
+        final int userId = timeRange.getUserId();
+        mWriteExecutor.execute(userId, () -> mCarePlanningDao.insert(timeRange),
+                () -> mCache.invalidateTimeRanges(userId), null);
+    }
+
+    // Writes on the calling thread, you must call this on a non-UI thread.
+    public long addTimeRange(TimeRange timeRange) {
+        final long start = Metrics.start();
+        final long id = mCarePlanningDao.insert(timeRange);
+        sTimeRangeWriteLatency.stop(start);
+        timeRange.setId((int) id);
+        mCache.invalidateTimeRanges(timeRange.getUserId());
+        return id;
+    }
+
+    // Single transaction, you must call this on a non-UI thread.
+    public int insertIfAbsent(TimeRange timeRange) {
+        final int id = mCarePlanningDao.insertIfAbsent(timeRange);
+        mCache.invalidateTimeRanges(timeRange.getUserId());
+        return id;
+    }
+
+    // Queued in order with the user's other writes, may block if the queue is full.
     public void update(TimeRange timeRange) {
-        CarePlanningRoomDatabase.databaseWriteExecutor.execute(() -> {
-            mCarePlanningDao.update(timeRange);
-        });
+        final int userId = timeRange.getUserId();
+        mWriteExecutor.execute(userId, () -> mCarePlanningDao.update(timeRange),
+                () -> mCache.invalidateTimeRanges(userId), null);
+    }
+
+    // Queued in order with the user's other writes, may block if the queue is full.
+    public void updateStartTime(int userId, int rangeId, int hour, int minute, IWriteResult result) {
+        queueWrite(userId, () -> {
+            final long start = Metrics.start();
+            mCarePlanningDao.updateStartTime(rangeId, hour, minute);
+            sTimeRangeWriteLatency.stop(start);
+        }, () -> mCache.invalidateTimeRanges(userId), result);
+    }
+
+    // Queued in order with the user's other writes, may block if the queue is full.
+    public void updateEndTime(int userId, int rangeId, int hour, int minute, IWriteResult result) {
+        queueWrite(userId, () -> {
+            final long start = Metrics.start();
+            mCarePlanningDao.updateEndTime(rangeId, hour, minute);
+            sTimeRangeWriteLatency.stop(start);
+        }, () -> mCache.invalidateTimeRanges(userId), result);
+    }
+
+    // Queued in order with the user's other writes, may block if the queue is full.
+    public void updateTimeRange(int userId, int rangeId, int startHour, int startMinute, int endHour, int endMinute,
+                                IWriteResult result) {
+        queueWrite(userId, () -> {
+            final long start = Metrics.start();
+            mCarePlanningDao.updateTimeRange(rangeId, startHour, startMinute, endHour, endMinute);
+            sTimeRangeWriteLatency.stop(start);
+        }, () -> mCache.invalidateTimeRanges(userId), result);
+    }
+
+    // Single statement, you must call this on a non-UI thread.
+    public void deleteTimeRange(int rangeId) {
+        final long start = Metrics.start();
+        mCarePlanningDao.deleteTimeRange(rangeId);
+        sTimeRangeWriteLatency.stop(start);
+        mCache.invalidateTimeRange(rangeId);
     }
 
     // Room executes all queries on a separate thread.
@@ -60,25 +246,182 @@ public class CarePlanningRepository {
         return mCarePlanningDao.getBatteryLiveData(userId);
     }
 
-    // Room executes all queries on a separate thread.
-    // Observed LiveData will notify the observer when the data has changed.
+    // Cached, else you must call this on a non-UI thread.
     public Battery getBattery(int userId) {
-        return mCarePlanningDao.getBattery(userId);
+        return mCache.getBattery(userId, () -> {
+            final long start = Metrics.start();
+            Battery battery = mCarePlanningDao.getBattery(userId);
+            sBatteryLatency.stop(start);
+            return battery;
+        });
     }
 
 
-    // You must call this on a non-UI thread or your app will throw an exception.
+    // Background alternative to LiveData, the query and listener run on the executor.
+    // The listener gets the current battery settings or null, then each change.
+    public ChangeObserver<Battery> observeBattery(int userId, Executor executor,
+                                                  ChangeObserver.IChangeListener<Battery> listener) {
+        return new ChangeObserver<>(mDb, new String[]{"battery"},
+                () -> mCarePlanningDao.getBattery(userId), CarePlanningRepository::sameBattery,
+                executor, listener);
+    }
+
+    // Queued in order with the user's other writes, may block if the queue is full.
     public void insert(Battery battery) {
-        CarePlanningRoomDatabase.databaseWriteExecutor.execute(() -> {
-            mCarePlanningDao.insert(battery);
-        });
+        final int userId = battery.getUserId();
+        mWriteExecutor.execute(userId, () -> mCarePlanningDao.insert(battery),
+                () -> mCache.invalidateBattery(userId), null);
     }
 
-    // You must call this on a non-UI thread or your app will throw an exception.
+    // Queued in order with the user's other writes, may block if the queue is full.
     public void update(Battery battery) {
-        CarePlanningRoomDatabase.databaseWriteExecutor.execute(() -> {
-            mCarePlanningDao.update(battery);
-        });
+        final int userId = battery.getUserId();
+        mWriteExecutor.execute(userId, () -> mCarePlanningDao.update(battery),
+                () -> mCache.invalidateBattery(userId), null);
+    }
+
+    // Queued in order with the user's other writes, may block if the queue is full.
+    public void upsertBattery(int userId, int threshold, IWriteResult result) {
+        queueWrite(userId, () -> {
+            final long start = Metrics.start();
+            mCarePlanningDao.upsertBattery(userId, threshold);
+            sBatteryWriteLatency.stop(start);
+        }, () -> mCache.invalidateBattery(userId), result);
+    }
+
+    /**
+     * Queue a write for the user, updating the cache and then the result once it has committed
+     */
+    private void queueWrite(int userId, Runnable write, Runnable afterCommit, IWriteResult result) {
+        mWriteExecutor.execute(userId, write, () -> {
+            afterCommit.run();
+            if (result != null) {
+                result.onWritten(true);
+            }
+        }, result != null ? () -> result.onWritten(false) : null);
+    }
+
+    // Queued in order with the user's other writes, may block if the queue is full.
+    // Inserts the battery settings with the threshold if the user has none.
+    public void setSaverLevel(int userId, int threshold, int level) {
+        final long time = mClock.currentTimeMillis();
+        mWriteExecutor.execute(userId, () -> mCarePlanningDao.upsertSaverLevel(userId, threshold, level, time),
+                () -> mCache.invalidateBattery(userId), null);
+    }
+
+    // Waits for the user's queued writes to commit, up to the timeout, you must call this on a non-UI thread.
+    // Returns false if they didn't finish in time.
+    public boolean awaitWrites(int userId, long timeoutMs) {
+        return mWriteExecutor.await(userId, timeoutMs);
+    }
+
+    // Single transaction, streamed in batches, you must call this on a non-UI thread.
+    // Cached settings of the provisioned users are reloaded when next read, once it commits.
+    public ProvisionResult provision(Iterator<StaffRecord> records) {
+        final long start = mClock.elapsedRealtime();
+        final long metricsStart = Metrics.start();
+        ProvisionResult result = mCarePlanningDao.provision(records);
+        sProvisionLatency.stop(metricsStart);
+        result.setElapsedMs(mClock.elapsedRealtime() - start);
+        AppLog.i(TAG, "provisioned %s", result);
+        return result;
+    }
+
+    // You must call this on a non-UI thread. Empty if the user has no rules of their own.
+    public List<Rule> getRules(int userId) {
+        return mCarePlanningDao.getRules(userId);
+    }
+
+    // Single transaction replacing all the user's rules, you must call this on a non-UI thread.
+    public void setRules(int userId, List<Rule> rules) {
+        mCarePlanningDao.setRules(userId, rules);
+    }
+
+    // Background alternative to LiveData, the query and listener run on the executor.
+    // The listener gets the current rules, then the rules each time they change.
+    public ChangeObserver<List<Rule>> observeRules(int userId, Executor executor,
+                                                   ChangeObserver.IChangeListener<List<Rule>> listener) {
+        return new ChangeObserver<>(mDb, new String[]{"rule"},
+                () -> mCarePlanningDao.getRules(userId), CarePlanningRepository::sameRules,
+                executor, listener);
+    }
+
+    // Buffered and written in batches, can be called on any thread.
+    public void recordEvent(int userId, String type, int value) {
+        mJournal.record(new Event(mClock.currentTimeMillis(), userId, type, value));
+    }
+
+    // Writes the buffered events, you must call this on a non-UI thread.
+    public void flushEvents() {
+        mJournal.flush();
+    }
+
+    // One page of the event history newest first, you must call this on a non-UI thread.
+    // Pass null for the first page, else the last event of the previous page.
+    public List<Event> getEvents(Event after, int pageSize) {
+        final long start = Metrics.start();
+        final List<Event> events;
+        if (after == null) {
+            mJournal.flush();
+            events = mEventDao.getLatestEvents(pageSize);
+        } else {
+            events = mEventDao.getEventsBefore(after.getTime(), after.getId(), pageSize);
+        }
+        sEventsLatency.stop(start);
+        return events;
+    }
+
+    static boolean sameTimeRanges(List<TimeRange> a, List<TimeRange> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            TimeRange x = a.get(i);
+            TimeRange y = b.get(i);
+            if (x.getId() != y.getId() || x.getDays() != y.getDays()
+                    || x.getStartHour() != y.getStartHour() || x.getStartMinute() != y.getStartMinute()
+                    || x.getEndHour() != y.getEndHour() || x.getEndMinute() != y.getEndMinute()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean sameRules(List<Rule> a, List<Rule> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            Rule x = a.get(i);
+            Rule y = b.get(i);
+            if (x.getId() != y.getId() || x.getPriority() != y.getPriority()
+                    || x.getConditionMask() != y.getConditionMask() || x.getConditionValue() != y.getConditionValue()
+                    || x.getRinger() != y.getRinger() || x.getWifi() != y.getWifi() || x.getNotify() != y.getNotify()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean sameBattery(Battery a, Battery b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getId() == b.getId() && a.getThreshold() == b.getThreshold();
+    }
+
+    /**
+     * @return reads answered from the settings cache
+     */
+    public long getCacheHitCount() {
+        return mCache.getHitCount();
+    }
+
+    /**
+     * @return reads that went to the database
+     */
+    public long getCacheMissCount() {
+        return mCache.getMissCount();
     }
 
 }
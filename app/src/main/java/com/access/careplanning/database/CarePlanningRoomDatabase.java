@@ -3,24 +3,103 @@ package com.access.careplanning.database;
 import android.app.Application;
 import android.content.Context;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import com.access.careplanning.util.Clock;
 
-@Database(entities = {User.class, TimeRange.class, Battery.class}, version = 1, exportSchema = false)
+@Database(entities = {User.class, TimeRange.class, Battery.class, Event.class, Rule.class}, version = 6)
 public abstract class CarePlanningRoomDatabase extends RoomDatabase {
 
     public abstract CarePlanningDao taskDao();
 
+    public abstract EventDao eventDao();
+
     private static volatile CarePlanningRoomDatabase INSTANCE;
 
-    private static final int NUMBER_OF_THREADS = 4;
+    private volatile SettingsCache mSettingsCache;
+    private volatile EventJournal mEventJournal;
+    private volatile WriteExecutor mWriteExecutor;
+
+    /**
+     * Version 2 allows several time ranges per user, each for a set of weekdays.
+     * Version 1 only ever used the first range of a user, the rest were duplicate defaults.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DELETE FROM time_range WHERE id NOT IN "
+                    + "(SELECT MIN(id) FROM time_range GROUP BY user_id)");
+            database.execSQL("ALTER TABLE time_range ADD COLUMN days INTEGER NOT NULL DEFAULT "
+                    + TimeRange.ALL_DAYS);
+        }
+    };
+
+    /**
+     * Version 3 indexes the lookup columns: a unique Google id per user, the user's time ranges,
+     * and one battery row per user. Duplicates left by earlier versions are removed first,
+     * keeping the first row, which is the one the app read.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            final String duplicateUsers = "SELECT id FROM User WHERE google_id IS NOT NULL AND id NOT IN "
+                    + "(SELECT MIN(id) FROM User WHERE google_id IS NOT NULL GROUP BY google_id)";
+            database.execSQL("DELETE FROM time_range WHERE user_id IN (" + duplicateUsers + ")");
+            database.execSQL("DELETE FROM battery WHERE user_id IN (" + duplicateUsers + ")");
+            database.execSQL("DELETE FROM User WHERE id IN (" + duplicateUsers + ")");
+            database.execSQL("DELETE FROM battery WHERE id NOT IN "
+                    + "(SELECT MIN(id) FROM battery GROUP BY user_id)");
+
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_User_google_id` ON `User` (`google_id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_time_range_user_id` ON `time_range` (`user_id`)");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_battery_user_id` ON `battery` (`user_id`)");
+        }
+    };
+
+    /**
+     * Version 4 adds the event history
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `event` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`time` INTEGER NOT NULL, `user_id` INTEGER NOT NULL, `type` TEXT NOT NULL, "
+                    + "`value` INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_event_time` ON `event` (`time`)");
+        }
+    };
+
+    /**
+     * Version 5 adds the users' policy rules table, empty after the migration. No rules are
+     * inserted, the defaults are applied at runtime when a user's getRules is empty.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `rule` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`user_id` INTEGER NOT NULL, `priority` INTEGER NOT NULL, `condition_mask` INTEGER NOT NULL, "
+                    + "`condition_value` INTEGER NOT NULL, `ringer` INTEGER NOT NULL, `wifi` INTEGER NOT NULL, "
+                    + "`notify` INTEGER NOT NULL, FOREIGN KEY(`user_id`) REFERENCES `User`(`id`) "
+                    + "ON UPDATE NO ACTION ON DELETE NO ACTION )");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_rule_user_id` ON `rule` (`user_id`)");
+        }
+    };
 
-    static final ExecutorService databaseWriteExecutor =
-            Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+    /**
+     * Version 6 saves the battery saver level with the battery settings
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE battery ADD COLUMN saver_level INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE battery ADD COLUMN saver_time INTEGER NOT NULL DEFAULT 0");
+        }
+    };
 
     static CarePlanningRoomDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
@@ -29,6 +108,9 @@ public abstract class CarePlanningRoomDatabase extends RoomDatabase {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                             CarePlanningRoomDatabase.class, "task_database")
                             //add optional init callback  .addCallback(sRoomDatabaseCallback)
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6)
+                            // Readers don't wait for writers, eg the policy engine during a settings write
+                            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
                             .build();
                 }
             }
@@ -36,13 +118,56 @@ public abstract class CarePlanningRoomDatabase extends RoomDatabase {
         return INSTANCE;
     }
 
+    /**
+     * Get the settings cache shared by the repositories, created on first use
+     */
+    SettingsCache getSettingsCache() {
+        if (mSettingsCache == null) {
+            synchronized (this) {
+                if (mSettingsCache == null) {
+                    mSettingsCache = new SettingsCache(this);
+                }
+            }
+        }
+        return mSettingsCache;
+    }
+
+    /**
+     * Get the event journal shared by the repositories, created on first use with that
+     * repository's clock
+     */
+    EventJournal getEventJournal(Clock clock) {
+        if (mEventJournal == null) {
+            synchronized (this) {
+                if (mEventJournal == null) {
+                    mEventJournal = new EventJournal(this, clock);
+                }
+            }
+        }
+        return mEventJournal;
+    }
+
+    /**
+     * Get the executor for background writes, in order per user, created on first use
+     */
+    WriteExecutor getWriteExecutor() {
+        if (mWriteExecutor == null) {
+            synchronized (this) {
+                if (mWriteExecutor == null) {
+                    mWriteExecutor = new WriteExecutor(this);
+                }
+            }
+        }
+        return mWriteExecutor;
+    }
+
     /*
      *If we need to prepopulate the database with some init data, do here in this callback
     private static RoomDatabase.Callback sRoomDatabaseCallback = new RoomDatabase.Callback() {
         @Override
         public void onOpen(@NonNull SupportSQLiteDatabase db) {
             super.onOpen(db);
-            databaseWriteExecutor.execute(() -> {
+            INSTANCE.getWriteExecutor().execute(0, () -> {
                 // PrePopulate the database in the background.
             });
         }
@@ -0,0 +1,130 @@
+package com.access.careplanning.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Observes a query off the main thread, for background consumers that aren't LiveData observers.
+ * When Room reports a change to its tables, the query is rerun on the given executor and the
+ * listener called there, only if the result differs from the last one delivered.
+ * Changes made while a query is running are conflated into one more run, so a burst of writes
+ * results in at most two reads and the listener only sees the latest value.
+ * Call cancel() when finished, the tracker holds the observer until then.
+ */
+public class ChangeObserver<T> {
+
+    /**
+     * Callback with a changed query result, called on the observer's executor
+     */
+    public interface IChangeListener<T> {
+        void onChanged(T value);
+    }
+
+    private final InvalidationTracker mTracker;
+    private final InvalidationTracker.Observer mObserver;
+    private final Supplier<T> mQuery;
+    private final BiPredicate<T, T> mSame;
+    private final Executor mExecutor;
+    private final IChangeListener<T> mListener;
+
+    // Guarded by this
+    private boolean mRunning;
+    private boolean mDirty;
+    private boolean mCancelled;
+
+    // Only accessed by the query run, which is never concurrent with itself
+    private boolean mDelivered;
+    private T mLast;
+
+    /**
+     * Start observing, the first result is always delivered
+     *
+     * @param db       database
+     * @param tables   tables the query reads
+     * @param query    blocking query, run on the executor
+     * @param same     true if two results are the same, so the second isn't delivered
+     * @param executor background executor for the query and listener
+     * @param listener called with each distinct result
+     */
+    ChangeObserver(CarePlanningRoomDatabase db, String[] tables, Supplier<T> query, BiPredicate<T, T> same,
+                   Executor executor, IChangeListener<T> listener) {
+        mTracker = db.getInvalidationTracker();
+        mQuery = query;
+        mSame = same;
+        mExecutor = executor;
+        mListener = listener;
+        mObserver = new InvalidationTracker.Observer(tables) {
+            @Override
+            public void onInvalidated(@NonNull Set<String> changed) {
+                requery();
+            }
+        };
+        mTracker.addObserver(mObserver);
+        requery();
+    }
+
+    /**
+     * Stop observing, a query already running may still deliver its result
+     */
+    public void cancel() {
+        synchronized (this) {
+            mCancelled = true;
+        }
+        mTracker.removeObserver(mObserver);
+    }
+
+    private void requery() {
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            if (mRunning) {
+                mDirty = true;
+                return;
+            }
+            mRunning = true;
+        }
+        mExecutor.execute(this::run);
+    }
+
+    private void run() {
+        try {
+            do {
+                final T value = mQuery.get();
+                if (!mDelivered || !mSame.test(mLast, value)) {
+                    mDelivered = true;
+                    mLast = value;
+                    synchronized (this) {
+                        if (mCancelled) {
+                            return;
+                        }
+                    }
+                    mListener.onChanged(value);
+                }
+            } while (runAgain());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                mRunning = false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if there were changes during the run, else the run is finished
+     */
+    private synchronized boolean runAgain() {
+        if (mDirty && !mCancelled) {
+            mDirty = false;
+            return true;
+        }
+        mRunning = false;
+        return false;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.access.careplanning.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A policy transition, eg the ringer set to vibrate, kept as an audit history.
+ * Rows are only ever inserted, then removed by age. There is no foreign key to the user,
+ * so the history outlives a removed user.
+ */
+@Entity(tableName = "event", indices = @Index("time"))
+public class Event {
+
+    /**
+     * Ringer mode set, the value is the AudioManager ringer mode
+     */
+    public static final String TYPE_RINGER = "ringer";
+
+    /**
+     * Wifi switched, the value is 1 for on or 0 for off
+     */
+    public static final String TYPE_WIFI = "wifi";
+
+    /**
+     * Battery saving switched, the value is 1 for on or 0 for off
+     */
+    public static final String TYPE_BATTERY_SAVER = "battery_saver";
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    /**
+     * Wall clock time in ms
+     */
+    private long time;
+
+    @ColumnInfo(name = "user_id")
+    private int userId;
+
+    @NonNull
+    private String type;
+
+    private int value;
+
+    public Event(long time, int userId, @NonNull String type, int value) {
+        this.time = time;
+        this.userId = userId;
+        this.type = type;
+        this.value = value;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    @NonNull
+    public String getType() {
+        return type;
+    }
+
+    public void setType(@NonNull String type) {
+        this.type = type;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public void setValue(int value) {
+        this.value = value;
+    }
+
+    @Override
+    public String toString() {
+        return type + "=" + value + " user " + userId + " at " + time;
+    }
+}
@@ -0,0 +1,80 @@
+package com.access.careplanning.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed size ring buffer of events waiting to be written. When full the oldest event is
+ * overwritten, so a stalled database can't grow memory. Not thread safe.
+ */
+class EventBuffer {
+
+    private final Event[] mEvents;
+    private int mHead; // index of the oldest event
+    private int mSize;
+    private long mDropped;
+
+    EventBuffer(int capacity) {
+        mEvents = new Event[capacity];
+    }
+
+    /**
+     * @return number of events waiting, including this one
+     */
+    int add(Event event) {
+        if (mSize == mEvents.length) {
+            mEvents[mHead] = event;
+            mHead = (mHead + 1) % mEvents.length;
+            mDropped++;
+        } else {
+            mEvents[(mHead + mSize) % mEvents.length] = event;
+            mSize++;
+        }
+        return mSize;
+    }
+
+    /**
+     * Remove all the waiting events
+     *
+     * @return events oldest first
+     */
+    List<Event> drain() {
+        List<Event> events = new ArrayList<>(mSize);
+        for (int i = 0; i < mSize; i++) {
+            final int index = (mHead + i) % mEvents.length;
+            events.add(mEvents[index]);
+            mEvents[index] = null;
+        }
+        mHead = 0;
+        mSize = 0;
+        return events;
+    }
+
+    /**
+     * Put back events that were drained but couldn't be written, before any added since.
+     * If there isn't room the oldest are dropped, as when adding.
+     *
+     * @param events events oldest first, all older than those waiting
+     */
+    void requeue(List<Event> events) {
+        final List<Event> newer = drain();
+        for (Event event : events) {
+            add(event);
+        }
+        for (Event event : newer) {
+            add(event);
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return events overwritten before they were written
+     */
+    long getDropped() {
+        return mDropped;
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.access.careplanning.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * Event history, written in batches by the EventJournal and read a page at a time, newest first.
+ * Pages are keyed on the last event read rather than an offset, so each page is an index range
+ * read however far back it is.
+ */
+@Dao
+public interface EventDao {
+
+    @Insert
+    void insertAll(List<Event> events);
+
+    /**
+     * Get the first page of the history
+     */
+    @Query("SELECT * FROM event ORDER BY time DESC, id DESC LIMIT :limit")
+    List<Event> getLatestEvents(int limit);
+
+    /**
+     * Get the page of the history after the given event
+     *
+     * @param time  time of the last event read
+     * @param id    id of the last event read, for events at the same time
+     * @param limit page size
+     */
+    @Query("SELECT * FROM event WHERE time <= :time AND (time < :time OR id < :id) "
+            + "ORDER BY time DESC, id DESC LIMIT :limit")
+    List<Event> getEventsBefore(long time, long id, int limit);
+
+    @Query("SELECT COUNT(*) FROM event")
+    int getEventCount();
+
+    /**
+     * Remove the events older than the retention period
+     *
+     * @return number removed
+     */
+    @Query("DELETE FROM event WHERE time < :time")
+    int deleteEventsBefore(long time);
+
+    /**
+     * Remove all but the newest events
+     *
+     * @return number removed
+     */
+    @Query("DELETE FROM event WHERE id IN "
+            + "(SELECT id FROM event ORDER BY time DESC, id DESC LIMIT -1 OFFSET :keep)")
+    int trimEvents(int keep);
+
+}
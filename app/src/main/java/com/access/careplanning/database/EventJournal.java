@@ -0,0 +1,166 @@
+package com.access.careplanning.database;
+
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.metrics.Metrics;
+import com.access.careplanning.util.Clock;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only history of policy transitions. Events are recorded into a ring buffer in memory,
+ * which is cheap on the wake path, and written in one transaction once enough are waiting or
+ * the first has waited a while. Old events are removed by age, and the table is capped, in the
+ * same transaction as a flush at most once a day. Events from a failed write go back in the
+ * buffer and are written with the next flush.
+ */
+class EventJournal {
+
+    private static final String TAG = "EventJournal";
+
+    /**
+     * Events held in memory, the oldest are lost beyond this if writes fail
+     */
+    static final int CAPACITY = 256;
+
+    /**
+     * Waiting events that trigger a flush straight away
+     */
+    static final int FLUSH_SIZE = 32;
+
+    /**
+     * Longest time an event waits to be written
+     */
+    static final long FLUSH_DELAY_MS = 1000 * 30;
+
+    /**
+     * Events older than this are removed
+     */
+    static final long RETENTION_MS = 1000L * 60 * 60 * 24 * 180;
+
+    /**
+     * Most events kept, newest first
+     */
+    static final int MAX_EVENTS = 100000;
+
+    private static final long COMPACT_INTERVAL_MS = 1000 * 60 * 60 * 24;
+
+    private final CarePlanningRoomDatabase mDb;
+    private final EventDao mDao;
+    private final Clock mClock;
+
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this
+    private final EventBuffer mBuffer = new EventBuffer(CAPACITY);
+    private boolean mFlushScheduled;
+    private long mRecorded;
+    private long mFlushes;
+    private long mLastCompactTime = -COMPACT_INTERVAL_MS;
+
+    /**
+     * @param clock times the daily compaction and the retention period
+     */
+    EventJournal(CarePlanningRoomDatabase db, Clock clock) {
+        mDb = db;
+        mDao = db.eventDao();
+        mClock = clock;
+        Metrics.gauge("events.recorded", this::getRecordedCount);
+        Metrics.gauge("events.flushes", this::getFlushCount);
+        Metrics.gauge("events.dropped", this::getDroppedCount);
+    }
+
+    /**
+     * Record an event to be written later, can be called on any thread
+     */
+    void record(Event event) {
+        synchronized (this) {
+            mRecorded++;
+            final int waiting = mBuffer.add(event);
+            if (waiting == FLUSH_SIZE) {
+                mExecutor.execute(this::flush);
+            } else if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                mExecutor.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Write the waiting events on the calling thread, eg before a receiver finishes or a read.
+     * You must call this on a non-UI thread.
+     */
+    void flush() {
+        final List<Event> events;
+        final boolean compact;
+        final long lastCompactTime;
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mBuffer.size() == 0) {
+                return;
+            }
+            events = mBuffer.drain();
+            final long now = mClock.elapsedRealtime();
+            lastCompactTime = mLastCompactTime;
+            compact = now - mLastCompactTime >= COMPACT_INTERVAL_MS;
+            if (compact) {
+                mLastCompactTime = now;
+            }
+        }
+        try {
+            mDb.runInTransaction(() -> {
+                mDao.insertAll(events);
+                if (compact) {
+                    compact(mClock.currentTimeMillis());
+                }
+            });
+            synchronized (this) {
+                mFlushes++;
+            }
+        } catch (RuntimeException e) {
+            AppLog.e(TAG, "Write failed, keeping events to retry", e);
+            synchronized (this) {
+                mBuffer.requeue(events);
+                if (compact) {
+                    mLastCompactTime = lastCompactTime;
+                }
+                if (!mFlushScheduled) {
+                    mFlushScheduled = true;
+                    mExecutor.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove events past the retention period, then any over the cap.
+     * Call in a transaction.
+     */
+    void compact(long now) {
+        final int expired = mDao.deleteEventsBefore(now - RETENTION_MS);
+        final int trimmed = mDao.trimEvents(MAX_EVENTS);
+        AppLog.i(TAG, "compacted, removed %d expired and %d over the cap", expired, trimmed);
+    }
+
+    synchronized long getRecordedCount() {
+        return mRecorded;
+    }
+
+    /**
+     * @return transactions written, fewer than the events when they are batched
+     */
+    synchronized long getFlushCount() {
+        return mFlushes;
+    }
+
+    synchronized long getDroppedCount() {
+        return mBuffer.getDropped();
+    }
+
+}
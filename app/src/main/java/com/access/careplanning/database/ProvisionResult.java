@@ -0,0 +1,66 @@
+package com.access.careplanning.database;
+
+/**
+ * Counts of the records written by a provisioning run
+ */
+public class ProvisionResult {
+
+    private int usersInserted;
+    private int usersExisting;
+    private int timeRanges;
+    private int batteries;
+    private long elapsedMs;
+
+    void addUser(boolean inserted) {
+        if (inserted) {
+            usersInserted++;
+        } else {
+            usersExisting++;
+        }
+    }
+
+    void addTimeRanges(int count) {
+        timeRanges += count;
+    }
+
+    void addBatteries(int count) {
+        batteries += count;
+    }
+
+    void setElapsedMs(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+
+    public int getUsersInserted() {
+        return usersInserted;
+    }
+
+    /**
+     * Get the number of users that were already there, whose settings were updated
+     */
+    public int getUsersExisting() {
+        return usersExisting;
+    }
+
+    public int getTimeRanges() {
+        return timeRanges;
+    }
+
+    public int getBatteries() {
+        return batteries;
+    }
+
+    /**
+     * Get the time taken, including reading the records
+     */
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    @Override
+    public String toString() {
+        return usersInserted + " users inserted, " + usersExisting + " updated, "
+                + timeRanges + " time ranges, " + batteries + " batteries in " + elapsedMs + "ms";
+    }
+
+}
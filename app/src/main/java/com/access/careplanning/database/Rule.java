@@ -0,0 +1,124 @@
+package com.access.careplanning.database;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A device policy rule of a user: when the device conditions match, take the actions.
+ * Conditions are bits of the DecisionTable state. The rule matches when the state bits in the
+ * mask equal the same bits of the value, so a rule can require a condition to be on or off,
+ * and ignores conditions outside the mask. Rules are applied in priority order, lowest first,
+ * and each action is taken from the first matching rule that sets it.
+ */
+@Entity(tableName = "rule", foreignKeys = @ForeignKey(entity = User.class,
+        parentColumns = "id",
+        childColumns = "user_id",
+        onDelete = ForeignKey.NO_ACTION),
+        indices = @Index("user_id"))
+public class Rule {
+
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+
+    @ColumnInfo(name = "user_id")
+    private int userId;
+
+    private int priority;
+
+    @ColumnInfo(name = "condition_mask")
+    private int conditionMask;
+
+    @ColumnInfo(name = "condition_value")
+    private int conditionValue;
+
+    /**
+     * DecisionTable.RINGER_ value, or 0 to leave to a later rule
+     */
+    private int ringer;
+
+    /**
+     * DecisionTable.WIFI_ value, or 0 to leave to a later rule
+     */
+    private int wifi;
+
+    /**
+     * DecisionTable.NOTIFY_ value, or 0 to leave to a later rule
+     */
+    private int notify;
+
+    public Rule(int priority, int conditionMask, int conditionValue, int ringer, int wifi, int notify) {
+        this.priority = priority;
+        this.conditionMask = conditionMask;
+        this.conditionValue = conditionValue;
+        this.ringer = ringer;
+        this.wifi = wifi;
+        this.notify = notify;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public int getConditionMask() {
+        return conditionMask;
+    }
+
+    public void setConditionMask(int conditionMask) {
+        this.conditionMask = conditionMask;
+    }
+
+    public int getConditionValue() {
+        return conditionValue;
+    }
+
+    public void setConditionValue(int conditionValue) {
+        this.conditionValue = conditionValue;
+    }
+
+    public int getRinger() {
+        return ringer;
+    }
+
+    public void setRinger(int ringer) {
+        this.ringer = ringer;
+    }
+
+    public int getWifi() {
+        return wifi;
+    }
+
+    public void setWifi(int wifi) {
+        this.wifi = wifi;
+    }
+
+    public int getNotify() {
+        return notify;
+    }
+
+    public void setNotify(int notify) {
+        this.notify = notify;
+    }
+}
@@ -0,0 +1,318 @@
+package com.access.careplanning.database;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * LRU cache of per-user settings snapshots, shared by every repository, so switching between
+ * the carers of a shared device and the ringer and battery decisions don't read the disk.
+ * Repository writes forget the user's rows they change, and when Room reports a table change
+ * the cached rows of that table are forgotten, so rows are only read again when next needed.
+ * Each entry counts its changes, and a value loaded outside the lock is only kept if there was
+ * no change while it loaded, so a slow load can't replace a newer value with a stale one.
+ * Cached objects are shared, treat them as read only.
+ */
+class SettingsCache {
+
+    private static final String TAG = "SettingsCache";
+
+    /**
+     * Users kept, more than the carers expected to share a device in a shift
+     */
+    static final int MAX_USERS = 8;
+
+    private static final String TABLE_USER = "User";
+    private static final String TABLE_TIME_RANGE = "time_range";
+    private static final String TABLE_BATTERY = "battery";
+
+    /**
+     * Settings snapshot of one user, a null field hasn't been loaded.
+     * The versions count the puts and invalidations of the time ranges and battery.
+     */
+    private static class Entry {
+        String googleId;
+        User user;
+        List<TimeRange> timeRanges;
+        long timeRangesVersion;
+        boolean batteryLoaded;
+        Battery battery;
+        long batteryVersion;
+    }
+
+    // Guarded by this, in access order for the LRU
+    private final LinkedHashMap<Integer, Entry> mEntries = new LinkedHashMap<Integer, Entry>(
+            MAX_USERS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            if (size() > MAX_USERS) {
+                mUserIds.remove(eldest.getValue().googleId);
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Map<String, Integer> mUserIds = new HashMap<>();
+    // Invalidations of the user table, a user is loaded before their entry is known
+    private long mUsersVersion;
+    private long mHits;
+    private long mMisses;
+
+    SettingsCache(CarePlanningRoomDatabase db) {
+        Metrics.gauge("cache.hits", this::getHitCount);
+        Metrics.gauge("cache.misses", this::getMissCount);
+        db.getInvalidationTracker().addObserver(
+                new InvalidationTracker.Observer(TABLE_USER, TABLE_TIME_RANGE, TABLE_BATTERY) {
+                    @Override
+                    public void onInvalidated(@NonNull Set<String> tables) {
+                        invalidate(tables);
+                    }
+                });
+    }
+
+    /**
+     * @return cached user db id, or null if not cached
+     */
+    synchronized Integer getUserId(String googleId) {
+        final Integer userId = googleId != null ? mUserIds.get(googleId) : null;
+        if (userId != null) {
+            mHits++;
+            mEntries.get(userId); // most recently used
+        } else {
+            mMisses++;
+        }
+        return userId;
+    }
+
+    /**
+     * Cache the db id of a user that has been read or inserted
+     */
+    synchronized void putUserId(String googleId, int userId) {
+        if (googleId != null) {
+            getEntry(userId).googleId = googleId;
+            mUserIds.put(googleId, userId);
+        }
+    }
+
+    /**
+     * Cache a user with all their settings, read in one transaction
+     */
+    synchronized void put(UserWithSettings settings) {
+        final User user = settings.getUser();
+        putUserId(user.getGoogleId(), user.getId());
+        Entry entry = getEntry(user.getId());
+        entry.user = user;
+        entry.timeRanges = Collections.unmodifiableList(new ArrayList<>(settings.getTimeRanges()));
+        entry.timeRangesVersion++;
+        entry.battery = settings.getBattery();
+        entry.batteryLoaded = true;
+        entry.batteryVersion++;
+    }
+
+    /**
+     * @return the user with all their settings if they are all cached, else null
+     */
+    synchronized UserWithSettings getUserWithSettings(String googleId) {
+        final Integer userId = googleId != null ? mUserIds.get(googleId) : null;
+        final Entry entry = userId != null ? mEntries.get(userId) : null;
+        if (entry == null || entry.user == null || entry.timeRanges == null || !entry.batteryLoaded) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        UserWithSettings settings = new UserWithSettings();
+        settings.setUser(entry.user);
+        settings.setTimeRanges(entry.timeRanges);
+        settings.setBattery(entry.battery);
+        return settings;
+    }
+
+    User getUser(String googleId, Supplier<User> loader) {
+        final long version;
+        synchronized (this) {
+            final Integer userId = googleId != null ? mUserIds.get(googleId) : null;
+            final Entry entry = userId != null ? mEntries.get(userId) : null;
+            if (entry != null && entry.user != null) {
+                mHits++;
+                return entry.user;
+            }
+            mMisses++;
+            version = mUsersVersion;
+        }
+        final User user = loader.get();
+        if (user != null) {
+            synchronized (this) {
+                if (mUsersVersion != version) {
+                    return user;
+                }
+                putUserId(user.getGoogleId(), user.getId());
+                getEntry(user.getId()).user = user;
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Get the user's time ranges in id order, loading them if not cached.
+     * The loaded ranges are only cached if they haven't changed while loading.
+     */
+    List<TimeRange> getTimeRanges(int userId, Supplier<List<TimeRange>> loader) {
+        final Entry entry;
+        final long version;
+        synchronized (this) {
+            entry = getEntry(userId);
+            if (entry.timeRanges != null) {
+                mHits++;
+                return entry.timeRanges;
+            }
+            mMisses++;
+            version = entry.timeRangesVersion;
+        }
+        final List<TimeRange> timeRanges = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+        synchronized (this) {
+            if (entry.timeRangesVersion == version && mEntries.get(userId) == entry) {
+                entry.timeRanges = timeRanges;
+            }
+        }
+        return timeRanges;
+    }
+
+    /**
+     * Get the user's battery settings, loading them if not cached.
+     * The loaded settings are only cached if they haven't changed while loading.
+     *
+     * @return battery settings, or null if the user has none
+     */
+    Battery getBattery(int userId, Supplier<Battery> loader) {
+        final Entry entry;
+        final long version;
+        synchronized (this) {
+            entry = getEntry(userId);
+            if (entry.batteryLoaded) {
+                mHits++;
+                return entry.battery;
+            }
+            mMisses++;
+            version = entry.batteryVersion;
+        }
+        final Battery battery = loader.get();
+        synchronized (this) {
+            if (entry.batteryVersion == version && mEntries.get(userId) == entry) {
+                entry.battery = battery;
+                entry.batteryLoaded = true;
+            }
+        }
+        return battery;
+    }
+
+    /**
+     * Forget the time ranges of the user with the range, when only the range id is known
+     *
+     * @param rangeId time range db id
+     */
+    synchronized void invalidateTimeRange(int rangeId) {
+        for (Entry entry : mEntries.values()) {
+            if (entry.timeRanges == null) {
+                continue;
+            }
+            for (TimeRange timeRange : entry.timeRanges) {
+                if (timeRange.getId() == rangeId) {
+                    entry.timeRanges = null;
+                    entry.timeRangesVersion++;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the user's time ranges, when the change isn't known eg an insert that may conflict
+     */
+    synchronized void invalidateTimeRanges(int userId) {
+        Entry entry = mEntries.get(userId);
+        if (entry != null) {
+            entry.timeRanges = null;
+            entry.timeRangesVersion++;
+        }
+    }
+
+    synchronized void invalidateBattery(int userId) {
+        Entry entry = mEntries.get(userId);
+        if (entry != null) {
+            entry.batteryLoaded = false;
+            entry.battery = null;
+            entry.batteryVersion++;
+        }
+    }
+
+    synchronized long getHitCount() {
+        return mHits;
+    }
+
+    synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * Forget the cached rows of the changed tables, on Room's background thread. Room only
+     * reports the tables, so every user's rows of a table are forgotten and each reloaded
+     * the next time it is read, rather than reloading all the cached users now.
+     */
+    private synchronized void invalidate(Set<String> tables) {
+        final boolean users = contains(tables, TABLE_USER);
+        final boolean timeRanges = contains(tables, TABLE_TIME_RANGE);
+        final boolean batteries = contains(tables, TABLE_BATTERY);
+        for (Entry entry : mEntries.values()) {
+            if (users) {
+                entry.user = null;
+            }
+            if (timeRanges) {
+                entry.timeRanges = null;
+                entry.timeRangesVersion++;
+            }
+            if (batteries) {
+                entry.battery = null;
+                entry.batteryLoaded = false;
+                entry.batteryVersion++;
+            }
+        }
+        if (users) {
+            mUsersVersion++;
+        }
+        if (AppLog.isLoggable(Log.DEBUG)) {
+            AppLog.d(TAG, "invalidated %s for %d user(s)", tables, mEntries.size());
+        }
+    }
+
+    private Entry getEntry(int userId) {
+        Entry entry = mEntries.get(userId);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(userId, entry);
+        }
+        return entry;
+    }
+
+    private static boolean contains(Set<String> tables, String table) {
+        for (String name : tables) {
+            if (name.equalsIgnoreCase(table)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
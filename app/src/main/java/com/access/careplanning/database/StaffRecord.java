@@ -0,0 +1,50 @@
+package com.access.careplanning.database;
+
+import java.util.List;
+
+/**
+ * One carer to provision: the user, and optionally their quiet periods and battery threshold
+ */
+public class StaffRecord {
+
+    private final String googleId;
+    private final String name;
+    private final List<TimeRange> timeRanges;
+    private final Integer batteryThreshold;
+
+    /**
+     * @param googleId         Google account id
+     * @param name             display name
+     * @param timeRanges       quiet periods replacing any the user has, or null to leave them
+     * @param batteryThreshold battery percent, or null to leave it
+     */
+    public StaffRecord(String googleId, String name, List<TimeRange> timeRanges, Integer batteryThreshold) {
+        this.googleId = googleId;
+        this.name = name;
+        this.timeRanges = timeRanges;
+        this.batteryThreshold = batteryThreshold;
+    }
+
+    public String getGoogleId() {
+        return googleId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the quiet periods, or null to leave the user's existing ones
+     */
+    public List<TimeRange> getTimeRanges() {
+        return timeRanges;
+    }
+
+    /**
+     * Get the battery threshold, or null to leave the user's existing one
+     */
+    public Integer getBatteryThreshold() {
+        return batteryThreshold;
+    }
+
+}
@@ -3,17 +3,28 @@ package com.access.careplanning.database;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.ForeignKey;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
+import java.util.Calendar;
+
 /**
- * Represents a time range with start and end (hours and minutes), for a given user
+ * Represents a time range with start and end (hours and minutes), for a given user.
+ * A user can have several ranges, each applying to a set of weekdays. The range runs into
+ * the next day if the end is before the start.
  */
 @Entity(tableName = "time_range", foreignKeys = @ForeignKey(entity = User.class,
         parentColumns = "id",
         childColumns = "user_id",
-        onDelete = ForeignKey.NO_ACTION))
+        onDelete = ForeignKey.NO_ACTION),
+        indices = @Index("user_id"))
 public class TimeRange {
 
+    /**
+     * Days bit mask for every day of the week, bit 0 is Sunday
+     */
+    public static final int ALL_DAYS = 0x7F;
+
     @PrimaryKey(autoGenerate = true)
     private int id;
 
@@ -32,6 +43,12 @@ public class TimeRange {
     @ColumnInfo(name = "end_minute")
     private int endMinute;
 
+    /**
+     * Days the range starts on, bit mask with bit 0 as Sunday
+     */
+    @ColumnInfo(name = "days", defaultValue = "" + ALL_DAYS)
+    private int days = ALL_DAYS;
+
     public TimeRange() {
     }
 
@@ -89,4 +106,31 @@ public class TimeRange {
     public void setEndMinute(int endMinute) {
         this.endMinute = endMinute;
     }
+
+    public int getDays() {
+        return days;
+    }
+
+    public void setDays(int days) {
+        this.days = days;
+    }
+
+    /**
+     * Get the days bit for a day of the week
+     *
+     * @param dayOfWeek Calendar day eg Calendar.MONDAY
+     * @return bit for the days mask
+     */
+    public static int dayBit(int dayOfWeek) {
+        return 1 << (dayOfWeek - Calendar.SUNDAY);
+    }
+
+    /**
+     * @return a new unsaved range with the same times and days, for no user
+     */
+    public TimeRange copy() {
+        TimeRange timeRange = new TimeRange(startHour, startMinute, endHour, endMinute);
+        timeRange.setDays(days);
+        return timeRange;
+    }
 }
@@ -2,12 +2,13 @@ package com.access.careplanning.database;
 
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
- * Represents a signed-in user
+ * Represents a signed-in user, one per Google account
  */
-@Entity
+@Entity(indices = @Index(value = "google_id", unique = true))
 public class User {
 
     @PrimaryKey(autoGenerate = true)
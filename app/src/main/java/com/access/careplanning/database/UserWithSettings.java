@@ -0,0 +1,57 @@
+package com.access.careplanning.database;
+
+import androidx.room.Embedded;
+import androidx.room.Relation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A user with all their settings, loaded in one transaction
+ */
+public class UserWithSettings {
+
+    @Embedded
+    private User user;
+
+    @Relation(parentColumn = "id", entityColumn = "user_id")
+    private List<TimeRange> timeRanges;
+
+    /**
+     * Battery settings, or null if the user hasn't set a threshold yet
+     */
+    @Relation(parentColumn = "id", entityColumn = "user_id")
+    private Battery battery;
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    /**
+     * Get the time ranges in id order, so the first range is first
+     */
+    public List<TimeRange> getTimeRanges() {
+        return timeRanges;
+    }
+
+    public void setTimeRanges(List<TimeRange> timeRanges) {
+        // A relation has no ORDER BY
+        List<TimeRange> sorted = new ArrayList<>(timeRanges);
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.getId(), b.getId()));
+        this.timeRanges = sorted;
+    }
+
+    public Battery getBattery() {
+        return battery;
+    }
+
+    public void setBattery(Battery battery) {
+        this.battery = battery;
+    }
+
+}
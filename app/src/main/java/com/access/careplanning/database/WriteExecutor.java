@@ -0,0 +1,257 @@
+package com.access.careplanning.database;
+
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.metrics.Counter;
+import com.access.careplanning.metrics.Histogram;
+import com.access.careplanning.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Database write executor that keeps writes for the same key, eg a user id, in the order they
+ * were submitted. Keys are striped over a few daemon threads, each with a bounded queue.
+ * Writes waiting in a queue when its thread is free are run together in one transaction,
+ * and their after commit actions, eg cache updates, run once the transaction has committed.
+ * A write that throws rolls back the whole batch, as Room's nested transactions can't commit
+ * without their outer one, so the batch is then run again with a transaction per write.
+ * Only the writes that commit run their after commit actions, the rest their failure actions.
+ * An action that throws is logged and counted, so it can't stop its stripe's thread.
+ * <p>
+ * Backpressure: a full queue blocks the caller for up to SUBMIT_TIMEOUT_MS, then the write is
+ * rejected with a RejectedExecutionException. Running it on the caller instead would break the
+ * key order.
+ */
+class WriteExecutor {
+
+    private static final String TAG = "WriteExecutor";
+
+    static final int STRIPES = 2;
+
+    /**
+     * Writes waiting per stripe
+     */
+    static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * Most writes committed in one transaction
+     */
+    static final int MAX_BATCH = 32;
+
+    static final long SUBMIT_TIMEOUT_MS = 1000 * 5;
+
+    private static final Histogram sCommitLatency = Metrics.histogram("db.write.commit");
+    private static final Histogram sWaitLatency = Metrics.histogram("db.write.wait");
+    private static final Counter sRejected = Metrics.counter("db.write.rejected");
+    private static final Counter sFailed = Metrics.counter("db.write.failed");
+    private static final Counter sCallbackFailed = Metrics.counter("db.write.callbackFailed");
+
+    /**
+     * A queued write
+     */
+    private static class Write {
+        final Runnable write;
+        final Runnable afterCommit;
+        final Runnable onFailed;
+        final long queued = Metrics.start();
+
+        Write(Runnable write, Runnable afterCommit, Runnable onFailed) {
+            this.write = write;
+            this.afterCommit = afterCommit;
+            this.onFailed = onFailed;
+        }
+    }
+
+    private final CarePlanningRoomDatabase mDb;
+    private final List<BlockingQueue<Write>> mQueues = new ArrayList<>(STRIPES);
+
+    private final AtomicLong mWrites = new AtomicLong();
+    private final AtomicLong mTransactions = new AtomicLong();
+
+    WriteExecutor(CarePlanningRoomDatabase db) {
+        mDb = db;
+        for (int i = 0; i < STRIPES; i++) {
+            final BlockingQueue<Write> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            mQueues.add(queue);
+            Thread thread = new Thread(() -> run(queue), TAG + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Metrics.gauge("db.write.queue", this::getQueuedCount);
+        Metrics.gauge("db.write.writes", this::getWriteCount);
+        Metrics.gauge("db.write.transactions", this::getTransactionCount);
+    }
+
+    /**
+     * Queue a write, run after any earlier writes with the same key
+     *
+     * @param key eg user id
+     * @param write database work, run in a transaction
+     */
+    void execute(int key, Runnable write) {
+        execute(key, write, null, null);
+    }
+
+    /**
+     * Queue a write, run after any earlier writes with the same key
+     *
+     * @param key         eg user id
+     * @param write       database work, run in a transaction
+     * @param afterCommit run on the write thread once the transaction has committed, or null
+     * @param onFailed    run on the write thread if the write failed and was rolled back, or null
+     * @throws RejectedExecutionException if the queue stays full
+     */
+    void execute(int key, Runnable write, Runnable afterCommit, Runnable onFailed) {
+        BlockingQueue<Write> queue = mQueues.get(Math.floorMod(key, STRIPES));
+        boolean queued;
+        try {
+            queued = queue.offer(new Write(write, afterCommit, onFailed), SUBMIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            sRejected.inc();
+            throw new RejectedExecutionException("Database write queue full for key " + key);
+        }
+    }
+
+    /**
+     * Wait until the writes already queued for the key have committed or failed,
+     * you must call this on a non-UI thread
+     *
+     * @param key       eg user id
+     * @param timeoutMs longest time to wait, including for queue space
+     * @return true if they finished in time
+     */
+    boolean await(int key, long timeoutMs) {
+        final CountDownLatch done = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        BlockingQueue<Write> queue = mQueues.get(Math.floorMod(key, STRIPES));
+        try {
+            // An empty write behind the queued ones, its transaction has nothing to commit
+            if (!queue.offer(new Write(() -> { }, done::countDown, done::countDown),
+                    timeoutMs, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+            final long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return done.await(Math.max(0, timeoutMs - waited), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Write thread loop, takes the next write and any waiting behind it
+     */
+    private void run(BlockingQueue<Write> queue) {
+        final List<Write> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ie) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<Write> batch) {
+        for (Write write : batch) {
+            sWaitLatency.stop(write.queued);
+        }
+        final long start = Metrics.start();
+        try {
+            mDb.runInTransaction(() -> {
+                for (Write write : batch) {
+                    write.write.run();
+                }
+            });
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                failed(batch.get(0), e);
+            } else {
+                AppLog.w(TAG, "Batch of %d writes rolled back, retrying one at a time", batch.size());
+                for (Write write : batch) {
+                    commitAlone(write);
+                }
+            }
+            return;
+        }
+        sCommitLatency.stop(start);
+        mWrites.addAndGet(batch.size());
+        mTransactions.incrementAndGet();
+
+        for (Write write : batch) {
+            runAction(write.afterCommit);
+        }
+    }
+
+    /**
+     * Run a write in its own transaction, after its batch was rolled back
+     */
+    private void commitAlone(Write write) {
+        try {
+            mDb.runInTransaction(write.write);
+        } catch (RuntimeException e) {
+            failed(write, e);
+            return;
+        }
+        mWrites.incrementAndGet();
+        mTransactions.incrementAndGet();
+        runAction(write.afterCommit);
+    }
+
+    private void failed(Write write, RuntimeException e) {
+        AppLog.e(TAG, "Write failed", e);
+        sFailed.inc();
+        runAction(write.onFailed);
+    }
+
+    /**
+     * Run an after commit or failure action, if any, keeping the write thread alive if it throws
+     */
+    private void runAction(Runnable action) {
+        if (action == null) {
+            return;
+        }
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            AppLog.e(TAG, "Write callback failed", e);
+            sCallbackFailed.inc();
+        }
+    }
+
+    /**
+     * @return writes waiting in all the queues
+     */
+    long getQueuedCount() {
+        long queued = 0;
+        for (BlockingQueue<Write> queue : mQueues) {
+            queued += queue.size();
+        }
+        return queued;
+    }
+
+    long getWriteCount() {
+        return mWrites.get();
+    }
+
+    /**
+     * @return transactions committed, fewer than the writes when they are batched
+     */
+    long getTransactionCount() {
+        return mTransactions.get();
+    }
+
+}
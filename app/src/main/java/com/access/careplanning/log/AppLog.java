@@ -0,0 +1,245 @@
+package com.access.careplanning.log;
+
+import android.util.Log;
+
+import com.access.careplanning.BuildConfig;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Logging for the app, in place of android.util.Log. A line is only formatted when its level is
+ * enabled, for logcat or the in-memory LogBuffer, so a disabled line costs a volatile read.
+ * Messages with arguments are formats for String.format, and the overloads take up to three
+ * arguments without a varargs array. Whole numbers have long overloads, so they are only boxed
+ * once the level is enabled. Guard lines that mix numbers with other arguments, or have more
+ * arguments, with isLoggable, or with DEBUG, which is a constant false in release builds so the
+ * compiler drops the line altogether.
+ * <pre>
+ * AppLog.d(TAG, "permitted %s %s", permission, granted);
+ * AppLog.i(TAG, "compacted %d", count);
+ * if (AppLog.isLoggable(Log.DEBUG)) {
+ *     AppLog.d(TAG, "wrote %s in %dms", row, latency);
+ * }
+ * </pre>
+ * Debug builds log from DEBUG to logcat, release builds from WARN. The buffer keeps INFO and
+ * above once set, for support to dump from a device.
+ */
+public final class AppLog {
+
+    public static final boolean DEBUG = BuildConfig.DEBUG;
+
+    private static volatile int sLogcatLevel = DEBUG ? Log.DEBUG : Log.WARN;
+    private static volatile int sBufferLevel = Log.INFO;
+    private static volatile LogBuffer sBuffer;
+    // Lowest level that goes anywhere, so the check is one read
+    private static volatile int sMinLevel = sLogcatLevel;
+
+    private AppLog() {
+    }
+
+    /**
+     * @param level lowest level written to logcat eg Log.INFO
+     */
+    public static void setLogcatLevel(int level) {
+        sLogcatLevel = level;
+        updateMinLevel();
+    }
+
+    /**
+     * @param level lowest level kept in the buffer eg Log.INFO
+     */
+    public static void setBufferLevel(int level) {
+        sBufferLevel = level;
+        updateMinLevel();
+    }
+
+    /**
+     * Keep the latest lines in the buffer, or stop keeping them if null
+     */
+    public static void setBuffer(LogBuffer buffer) {
+        sBuffer = buffer;
+        updateMinLevel();
+    }
+
+    public static LogBuffer getBuffer() {
+        return sBuffer;
+    }
+
+    private static synchronized void updateMinLevel() {
+        sMinLevel = sBuffer != null ? Math.min(sLogcatLevel, sBufferLevel) : sLogcatLevel;
+    }
+
+    /**
+     * @return true if a line of the level would be written anywhere
+     */
+    public static boolean isLoggable(int level) {
+        return level >= sMinLevel;
+    }
+
+    public static void d(String tag, String msg) {
+        if (Log.DEBUG >= sMinLevel) {
+            log(Log.DEBUG, tag, msg, null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg) {
+        if (Log.DEBUG >= sMinLevel) {
+            log(Log.DEBUG, tag, String.format(Locale.US, format, arg), null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (Log.DEBUG >= sMinLevel) {
+            log(Log.DEBUG, tag, String.format(Locale.US, format, arg1, arg2), null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (Log.DEBUG >= sMinLevel) {
+            log(Log.DEBUG, tag, String.format(Locale.US, format, arg1, arg2, arg3), null);
+        }
+    }
+
+    public static void d(String tag, String format, long arg) {
+        if (Log.DEBUG >= sMinLevel) {
+            log(Log.DEBUG, tag, String.format(Locale.US, format, arg), null);
+        }
+    }
+
+    public static void d(String tag, String format, long arg1, long arg2) {
+        if (Log.DEBUG >= sMinLevel) {
+            log(Log.DEBUG, tag, String.format(Locale.US, format, arg1, arg2), null);
+        }
+    }
+
+    public static void i(String tag, String msg) {
+        if (Log.INFO >= sMinLevel) {
+            log(Log.INFO, tag, msg, null);
+        }
+    }
+
+    public static void i(String tag, String msg, Throwable tr) {
+        if (Log.INFO >= sMinLevel) {
+            log(Log.INFO, tag, msg, tr);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg) {
+        if (Log.INFO >= sMinLevel) {
+            log(Log.INFO, tag, String.format(Locale.US, format, arg), null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2) {
+        if (Log.INFO >= sMinLevel) {
+            log(Log.INFO, tag, String.format(Locale.US, format, arg1, arg2), null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (Log.INFO >= sMinLevel) {
+            log(Log.INFO, tag, String.format(Locale.US, format, arg1, arg2, arg3), null);
+        }
+    }
+
+    public static void i(String tag, String format, long arg) {
+        if (Log.INFO >= sMinLevel) {
+            log(Log.INFO, tag, String.format(Locale.US, format, arg), null);
+        }
+    }
+
+    public static void i(String tag, String format, long arg1, long arg2) {
+        if (Log.INFO >= sMinLevel) {
+            log(Log.INFO, tag, String.format(Locale.US, format, arg1, arg2), null);
+        }
+    }
+
+    public static void w(String tag, String msg) {
+        if (Log.WARN >= sMinLevel) {
+            log(Log.WARN, tag, msg, null);
+        }
+    }
+
+    public static void w(String tag, String msg, Throwable tr) {
+        if (Log.WARN >= sMinLevel) {
+            log(Log.WARN, tag, msg, tr);
+        }
+    }
+
+    public static void w(String tag, String format, Object arg) {
+        if (Log.WARN >= sMinLevel) {
+            log(Log.WARN, tag, String.format(Locale.US, format, arg), null);
+        }
+    }
+
+    public static void w(String tag, String format, long arg) {
+        if (Log.WARN >= sMinLevel) {
+            log(Log.WARN, tag, String.format(Locale.US, format, arg), null);
+        }
+    }
+
+    public static void e(String tag, String msg) {
+        if (Log.ERROR >= sMinLevel) {
+            log(Log.ERROR, tag, msg, null);
+        }
+    }
+
+    public static void e(String tag, String msg, Throwable tr) {
+        if (Log.ERROR >= sMinLevel) {
+            log(Log.ERROR, tag, msg, tr);
+        }
+    }
+
+    public static void e(String tag, String format, Object arg) {
+        if (Log.ERROR >= sMinLevel) {
+            log(Log.ERROR, tag, String.format(Locale.US, format, arg), null);
+        }
+    }
+
+    public static void e(String tag, String format, long arg) {
+        if (Log.ERROR >= sMinLevel) {
+            log(Log.ERROR, tag, String.format(Locale.US, format, arg), null);
+        }
+    }
+
+    private static void log(int level, String tag, String msg, Throwable tr) {
+        if (tr != null) {
+            msg = msg + '\n' + Log.getStackTraceString(tr);
+        }
+        if (level >= sLogcatLevel) {
+            Log.println(level, tag, msg);
+        }
+        final LogBuffer buffer = sBuffer;
+        if (buffer != null && level >= sBufferLevel) {
+            buffer.add(System.currentTimeMillis(), level, tag, msg);
+        }
+    }
+
+    /**
+     * @return the buffered lines as text, or an empty string if there is no buffer
+     */
+    public static String dump() {
+        final LogBuffer buffer = sBuffer;
+        return buffer != null ? buffer.dump() : "";
+    }
+
+    /**
+     * Write the buffered lines to a new file, eg for support to copy off the device
+     *
+     * @param dir directory to write to
+     * @return the file written
+     * @throws IOException if it couldn't be written
+     */
+    public static File dumpToFile(File dir) throws IOException {
+        File file = new File(dir, "log-" + System.currentTimeMillis() + ".txt");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(dump());
+        }
+        return file;
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.access.careplanning.log;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Fixed size ring buffer of the latest log lines, kept in memory so they can be dumped on a device
+ * without logcat. The slots are allocated up front and the oldest line is overwritten when full,
+ * so adding a line allocates nothing beyond its message. Thread safe.
+ */
+public class LogBuffer {
+
+    private static final String LEVELS = "??VDIWEA";
+
+    private final long[] mTimes;
+    private final int[] mLevels;
+    private final String[] mTags;
+    private final String[] mMessages;
+    private int mHead; // index of the oldest line
+    private int mSize;
+    private long mDropped;
+
+    /**
+     * @param capacity number of lines kept
+     */
+    public LogBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        mTimes = new long[capacity];
+        mLevels = new int[capacity];
+        mTags = new String[capacity];
+        mMessages = new String[capacity];
+    }
+
+    /**
+     * @param time    wall clock time of the line
+     * @param level   log level eg Log.INFO
+     * @param tag     log tag
+     * @param message the formatted message
+     */
+    public synchronized void add(long time, int level, String tag, String message) {
+        final int index;
+        if (mSize == mTimes.length) {
+            index = mHead;
+            mHead = (mHead + 1) % mTimes.length;
+            mDropped++;
+        } else {
+            index = (mHead + mSize) % mTimes.length;
+            mSize++;
+        }
+        mTimes[index] = time;
+        mLevels[index] = level;
+        mTags[index] = tag;
+        mMessages[index] = message;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public int getCapacity() {
+        return mTimes.length;
+    }
+
+    /**
+     * @return lines overwritten since the buffer was created or cleared
+     */
+    public synchronized long getDropped() {
+        return mDropped;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < mTags.length; i++) {
+            mTags[i] = null;
+            mMessages[i] = null;
+        }
+        mHead = 0;
+        mSize = 0;
+        mDropped = 0;
+    }
+
+    /**
+     * @return the lines oldest first, one per line like logcat eg "06-01 10:15:00.250 I/Tag: message"
+     */
+    public synchronized String dump() {
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        StringBuilder sb = new StringBuilder();
+        if (mDropped > 0) {
+            sb.append("(").append(mDropped).append(" earlier line(s) dropped)\n");
+        }
+        for (int i = 0; i < mSize; i++) {
+            final int index = (mHead + i) % mTimes.length;
+            final int level = mLevels[index];
+            sb.append(format.format(new Date(mTimes[index]))).append(' ')
+                    .append(level >= 0 && level < LEVELS.length() ? LEVELS.charAt(level) : '?')
+                    .append('/').append(mTags[index]).append(": ").append(mMessages[index]).append('\n');
+        }
+        return sb.toString();
+    }
+
+}
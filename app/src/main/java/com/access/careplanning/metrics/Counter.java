@@ -0,0 +1,34 @@
+package com.access.careplanning.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count of events, eg cache misses. Adds from many threads don't contend.
+ */
+public class Counter {
+
+    private final LongAdder mCount = new LongAdder();
+
+    public void inc() {
+        add(1);
+    }
+
+    public void add(long n) {
+        if (Metrics.isEnabled()) {
+            mCount.add(n);
+        }
+    }
+
+    public long get() {
+        return mCount.sum();
+    }
+
+    void reset() {
+        mCount.reset();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
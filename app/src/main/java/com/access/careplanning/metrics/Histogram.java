@@ -0,0 +1,102 @@
+package com.access.careplanning.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency distribution in power of two buckets of microseconds, so recording is a few atomic
+ * adds with no allocation. Percentiles are the upper bound of their bucket, within a factor of 2.
+ */
+public class Histogram {
+
+    /**
+     * Bucket 0 is under 1us, bucket i is from 2^(i-1) to 2^i us, the last is everything over
+     */
+    static final int BUCKETS = 40;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Record the time since Metrics.start()
+     *
+     * @param start from Metrics.start(), nothing is recorded if it's 0 as metrics were disabled
+     */
+    public void stop(long start) {
+        if (start != 0) {
+            record((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    /**
+     * @param micros a latency in microseconds
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        mBuckets.incrementAndGet(bucket(micros));
+        mCount.incrementAndGet();
+        mSum.addAndGet(micros);
+        long max;
+        while (micros > (max = mMax.get()) && !mMax.compareAndSet(max, micros)) {
+            // retry
+        }
+    }
+
+    static int bucket(long micros) {
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMaxMicros() {
+        return mMax.get();
+    }
+
+    public double getMeanMicros() {
+        final long count = mCount.get();
+        return count > 0 ? (double) mSum.get() / count : 0;
+    }
+
+    /**
+     * @param percentile eg 99
+     * @return upper bound of the bucket holding the percentile, in microseconds
+     */
+    public long getPercentileMicros(double percentile) {
+        final long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= rank) {
+                return Math.min(i == 0 ? 1 : 1L << i, mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                getCount(), getMeanMicros() / 1000, getPercentileMicros(50) / 1000.0,
+                getPercentileMicros(90) / 1000.0, getPercentileMicros(99) / 1000.0, getMaxMicros() / 1000.0);
+    }
+}
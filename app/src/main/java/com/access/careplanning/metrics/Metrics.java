@@ -0,0 +1,122 @@
+package com.access.careplanning.metrics;
+
+import com.access.careplanning.BuildConfig;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process registry of counters, gauges and latency histograms, shown by the MetricsActivity
+ * and dumped to a file. Metrics are enabled in debug builds. When disabled start() returns 0 and
+ * recording is skipped, so the cost is a volatile read.
+ * <pre>
+ * private static final Histogram sLatency = Metrics.histogram("repo.provision");
+ * final long start = Metrics.start();
+ * ...
+ * sLatency.stop(start);
+ * </pre>
+ */
+public final class Metrics {
+
+    /**
+     * Current value of a gauge, eg a queue depth, read when the metrics are shown
+     */
+    public interface IGauge {
+        long get();
+    }
+
+    private static volatile boolean sEnabled = BuildConfig.DEBUG;
+
+    private static final Map<String, Counter> sCounters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> sHistograms = new ConcurrentHashMap<>();
+    private static final Map<String, IGauge> sGauges = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Get or create a counter, hold on to it rather than looking it up each time
+     */
+    public static Counter counter(String name) {
+        return sCounters.computeIfAbsent(name, (key) -> new Counter());
+    }
+
+    /**
+     * Get or create a histogram, hold on to it rather than looking it up each time
+     */
+    public static Histogram histogram(String name) {
+        return sHistograms.computeIfAbsent(name, (key) -> new Histogram());
+    }
+
+    /**
+     * Register a gauge, replacing any of the same name
+     */
+    public static void gauge(String name, IGauge gauge) {
+        sGauges.put(name, gauge);
+    }
+
+    /**
+     * @return start time for Histogram.stop, or 0 if metrics are disabled
+     */
+    public static long start() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Clear the counters and histograms, gauges are live values so are left
+     */
+    public static void reset() {
+        for (Counter counter : sCounters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : sHistograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * @return all the metrics as text, one per line in name order
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(sCounters).entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<String, IGauge> entry : new TreeMap<>(sGauges).entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(sHistograms).entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the metrics to a new file, eg for adb pull
+     *
+     * @param dir directory to write to
+     * @return the file written
+     * @throws IOException if it couldn't be written
+     */
+    public static File dumpToFile(File dir) throws IOException {
+        File file = new File(dir, "metrics-" + System.currentTimeMillis() + ".txt");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(dump());
+        }
+        return file;
+    }
+
+}
@@ -0,0 +1,242 @@
+package com.access.careplanning.notification;
+
+import android.annotation.SuppressLint;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.media.RingtoneManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+
+import com.access.careplanning.R;
+import com.access.careplanning.log.AppLog;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts the app notifications from any thread, without an activity eg from a receiver.
+ * Messages posted close together are coalesced into one notification, which replaces the
+ * previous one, and only plays a sound if the last sound was a while ago.
+ */
+public class NotificationDispatcher {
+
+    private static final String TAG = "NotificationDispatcher";
+
+    /**
+     * Channel id used before the dispatcher, deleted when the new channels are created
+     */
+    private static final String LEGACY_CHANNEL_ID = "ID";
+
+    /**
+     * Silent channel for changes posted soon after a sound
+     */
+    private static final String UPDATES_CHANNEL_ID = "updates";
+
+    private static final int NOTIFICATION_ID = 1;
+
+    /**
+     * Messages posted within this time of the first are shown together
+     */
+    private static final long COALESCE_WINDOW_MS = 500;
+
+    /**
+     * Minimum time between notification sounds
+     */
+    private static final long SOUND_INTERVAL_MS = 1000 * 60;
+
+    private static volatile NotificationDispatcher INSTANCE;
+
+    private final Context mContext;
+    private final NotificationManager mNotificationManager;
+    private final String mAlertsChannelId;
+    private final Handler mHandler;
+    private final Runnable mFlush = this::flush;
+
+    private final Object mLock = new Object();
+    // Guarded by mLock
+    private final Set<String> mPending = new LinkedHashSet<>();
+
+    // Only accessed on the handler thread
+    private boolean mChannelsCreated;
+    private long mLastSoundTime = -SOUND_INTERVAL_MS;
+    private int mPostCount;
+    private int mNotifyCount;
+
+    public static NotificationDispatcher getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (NotificationDispatcher.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new NotificationDispatcher(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private NotificationDispatcher(Context context) {
+        mContext = context;
+        mNotificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        mAlertsChannelId = context.getString(R.string.default_notification_channel_id);
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Show a message in the app notification, can be called on any thread
+     *
+     * @param message
+     */
+    public void post(final String message) {
+        synchronized (mLock) {
+            if (mPending.isEmpty()) {
+                mHandler.postDelayed(mFlush, COALESCE_WINDOW_MS);
+            }
+            mPending.add(message);
+        }
+    }
+
+    /**
+     * Show a message from a string resource, can be called on any thread
+     *
+     * @param resId
+     */
+    public void post(int resId) {
+        post(mContext.getString(resId));
+    }
+
+    /**
+     * Post the pending messages now, without waiting for the rest of the coalesce window, and
+     * wait until they have been posted, eg before a receiver's pending result is finished.
+     * Call on any thread but the dispatcher's.
+     *
+     * @param timeoutMs longest time to wait
+     * @return true if nothing was pending or it was posted in time
+     */
+    public boolean flushNow(long timeoutMs) {
+        synchronized (mLock) {
+            if (mPending.isEmpty()) {
+                return true;
+            }
+            mHandler.removeCallbacks(mFlush);
+        }
+        final CountDownLatch posted = new CountDownLatch(1);
+        mHandler.post(() -> {
+            flush();
+            posted.countDown();
+        });
+        try {
+            return posted.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Post the pending messages as one notification, on the handler thread
+     */
+    private void flush() {
+        final List<String> messages;
+        synchronized (mLock) {
+            messages = new ArrayList<>(mPending);
+            mPending.clear();
+        }
+        if (messages.isEmpty() || mNotificationManager == null) {
+            return;
+        }
+        createChannels();
+
+        final long now = SystemClock.elapsedRealtime();
+        final boolean sound = now - mLastSoundTime >= SOUND_INTERVAL_MS;
+        if (sound) {
+            mLastSoundTime = now;
+        }
+        mNotificationManager.notify(NOTIFICATION_ID, build(messages, sound));
+
+        mPostCount += messages.size();
+        mNotifyCount++;
+        if (AppLog.isLoggable(Log.DEBUG)) {
+            AppLog.d(TAG, "notified %d message(s), sound %s", messages.size(), sound);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private Notification build(List<String> messages, boolean sound) {
+        NotificationCompat.Builder builder;
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+            builder = new NotificationCompat.Builder(mContext, sound ? mAlertsChannelId : UPDATES_CHANNEL_ID);
+        } else {
+            builder = new NotificationCompat.Builder(mContext);
+            builder.setPriority(sound ? NotificationCompat.PRIORITY_DEFAULT : NotificationCompat.PRIORITY_LOW);
+        }
+        if (sound) {
+            builder.setSound(RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION));
+        }
+
+        final String title = mContext.getResources().getString(R.string.app_name);
+        builder.setContentTitle(title)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setAutoCancel(true); // Hide the notification after it's selected
+
+        if (messages.size() == 1) {
+            builder.setContentText(messages.get(0));
+        } else {
+            final String summary = mContext.getString(R.string.notification_changes, messages.size());
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                    .setBigContentTitle(title)
+                    .setSummaryText(summary);
+            for (String message : messages) {
+                style.addLine(message);
+            }
+            builder.setContentText(summary)
+                    .setNumber(messages.size())
+                    .setStyle(style);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Create the channels once per process, creating an existing channel is a wasted binder call
+     */
+    @SuppressLint("NewApi")
+    private void createChannels() {
+        if (mChannelsCreated || android.os.Build.VERSION.SDK_INT < android.os.Build.VERSION_CODES.O) {
+            return;
+        }
+        mChannelsCreated = true;
+        NotificationChannel alerts = new NotificationChannel(mAlertsChannelId,
+                mContext.getString(R.string.notification_channel_alerts), NotificationManager.IMPORTANCE_DEFAULT);
+        NotificationChannel updates = new NotificationChannel(UPDATES_CHANNEL_ID,
+                mContext.getString(R.string.notification_channel_updates), NotificationManager.IMPORTANCE_LOW);
+        updates.setSound(null, null);
+        mNotificationManager.createNotificationChannel(alerts);
+        mNotificationManager.createNotificationChannel(updates);
+        mNotificationManager.deleteNotificationChannel(LEGACY_CHANNEL_ID);
+    }
+
+    /**
+     * @return number of messages shown
+     */
+    public int getPostCount() {
+        return mPostCount;
+    }
+
+    /**
+     * @return number of notifications posted, fewer than messages when they are coalesced
+     */
+    public int getNotifyCount() {
+        return mNotifyCount;
+    }
+
+}
@@ -4,11 +4,12 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Build;
-import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.access.careplanning.log.AppLog;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,7 +33,7 @@ public class PermissionUtil {
     public static boolean permitted(Context context, Permission permission) {
         boolean b = Build.VERSION.SDK_INT < Build.VERSION_CODES.M
                 || ContextCompat.checkSelfPermission(context, permission.manifestPermission) == PackageManager.PERMISSION_GRANTED;
-        Log.i(TAG, "permitted " + permission.name() + " " + b);
+        AppLog.d(TAG, "permitted %s %s", permission, b);
         return b;
     }
 
@@ -70,7 +71,7 @@ public class PermissionUtil {
             List<String> newPermissions = new ArrayList<>();
             for (Permission permission : permissions) {
                 if (!permitted(activity, permission)) {
-                    Log.i(TAG, "askPermission " + permission.name() + " by " + activity.getLocalClassName());
+                    AppLog.i(TAG, "askPermission %s by %s", permission, activity.getLocalClassName());
                     newPermissions.add(permission.manifestPermission);
                 }
             }
@@ -98,7 +99,7 @@ public class PermissionUtil {
         }
         List<String> permissionsList = Arrays.asList(permissions);
         int pos = permissionsList.indexOf(permission.manifestPermission);
-        Log.i(TAG, "granted now " + permission.name() + " " + (pos >= 0 && grantResults[pos] == 0));
+        AppLog.i(TAG, "granted now %s %s", permission, pos >= 0 && grantResults[pos] == 0);
         return pos >= 0 && grantResults[pos] == 0;
     }
 
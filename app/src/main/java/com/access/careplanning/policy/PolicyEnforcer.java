@@ -0,0 +1,218 @@
+package com.access.careplanning.policy;
+
+import com.access.careplanning.battery.BatterySaver;
+import com.access.careplanning.database.Battery;
+import com.access.careplanning.database.Rule;
+import com.access.careplanning.database.TimeRange;
+import com.access.careplanning.util.Clock;
+
+import java.util.List;
+
+/**
+ * The enforcement steps of the PolicyEngine: load the user's settings into the PolicyEvaluator,
+ * take its actions, and keep the ringer alarm and battery watch in step with it. The settings,
+ * system state and alarms are reached through IPolicyHost, so the policy simulator runs the same
+ * steps on the JVM. Not thread safe, the engine uses it from its one thread.
+ */
+public class PolicyEnforcer {
+
+    /**
+     * The settings, system state and alarms, as well as the actions
+     */
+    public interface IPolicyHost extends PolicyEvaluator.IPolicyActions {
+
+        List<TimeRange> getTimeRanges(int userId);
+
+        /**
+         * @return the battery settings, or null if the user has none
+         */
+        Battery getBattery(int userId);
+
+        List<Rule> getRules(int userId);
+
+        /**
+         * @param time wall clock time of the next ringer change, or -1 to cancel the alarm
+         */
+        void setRingerAlarm(long time);
+
+        /**
+         * @param threshold   battery percent to watch for crossing, or -1 for none
+         * @param fewerChecks true to check the battery less often
+         */
+        void watchBattery(int threshold, boolean fewerChecks);
+
+        /**
+         * @return battery percent, or -1 if not known
+         */
+        int getBatteryLevel();
+
+        boolean isCharging();
+
+        boolean isWifiConnected();
+    }
+
+    private final Clock mClock;
+    private final IPolicyHost mHost;
+    private final int mDefaultThreshold;
+    private final PolicyEvaluator mPolicy;
+
+    private int mSaverUserId;
+    private int mRulesUserId;
+    private long mEvaluations;
+
+    /**
+     * @param clock            time for the rules and the deadline
+     * @param host             settings, system state and actions
+     * @param defaultThreshold battery threshold for a user without battery settings
+     */
+    public PolicyEnforcer(Clock clock, IPolicyHost host, int defaultThreshold) {
+        mClock = clock;
+        mHost = host;
+        mDefaultThreshold = defaultThreshold;
+        mPolicy = new PolicyEvaluator(new PolicyEvaluator.IPolicyActions() {
+            @Override
+            public void setRinger(int ringer, boolean notify) {
+                mHost.setRinger(ringer, notify);
+            }
+
+            @Override
+            public void setWifi(boolean enable, boolean notify) {
+                mHost.setWifi(enable, notify);
+            }
+
+            @Override
+            public void onSaverLevel(int level, boolean notify) {
+                mHost.onSaverLevel(level, notify);
+                watchSaverThreshold();
+            }
+
+            @Override
+            public boolean isRingerOverridden() {
+                return mHost.isRingerOverridden();
+            }
+
+            @Override
+            public void clearRingerOverride() {
+                mHost.clearRingerOverride();
+            }
+        });
+    }
+
+    /**
+     * Load the time ranges, battery settings and rules, then take the rules' actions for the
+     * ringer, wifi and battery saver, and set the alarm for the ringer's next change.
+     * Checks the deadline before each step and stops once past it.
+     *
+     * @param userId   user db id
+     * @param deadline elapsed realtime to stop by
+     * @return the step it stopped before, or null if it finished
+     */
+    public String enforce(int userId, long deadline) {
+        mPolicy.setTimeRanges(mHost.getTimeRanges(userId));
+        if (outOfTime(deadline)) {
+            return "battery";
+        }
+        setBattery(userId, mHost.getBattery(userId));
+        if (mRulesUserId != userId) {
+            if (outOfTime(deadline)) {
+                return "rules";
+            }
+            setRules(userId, mHost.getRules(userId));
+        }
+        if (outOfTime(deadline)) {
+            return "ringer";
+        }
+
+        applyRinger();
+        return null;
+    }
+
+    private boolean outOfTime(long deadline) {
+        return mClock.elapsedRealtime() > deadline;
+    }
+
+    /**
+     * The user's time ranges have changed, take the actions and move the ringer alarm
+     */
+    public void setTimeRanges(List<TimeRange> timeRanges) {
+        mPolicy.setTimeRanges(timeRanges);
+        applyRinger();
+    }
+
+    /**
+     * Take the rules' actions, and set the alarm for the next quiet period change
+     */
+    private void applyRinger() {
+        evaluate();
+        mHost.setRingerAlarm(mPolicy.getSchedule().nextTransitionTime(mClock.now()));
+    }
+
+    /**
+     * Compile the user's rules, only call when they change
+     */
+    public void setRules(int userId, List<Rule> rules) {
+        mPolicy.setRules(rules);
+        mRulesUserId = userId;
+    }
+
+    /**
+     * Set the saver levels for the user's threshold, and carry on from their saved level
+     * when the user changes, eg after a restart
+     *
+     * @param battery the user's battery settings, or null if none
+     */
+    public void setBattery(int userId, Battery battery) {
+        final boolean newUser = userId != mSaverUserId;
+        final int threshold = battery != null ? battery.getThreshold() : mDefaultThreshold;
+        if (newUser || threshold != mPolicy.getThreshold()) {
+            mSaverUserId = userId;
+            mPolicy.setThreshold(threshold);
+            if (newUser) {
+                mPolicy.restoreSaverLevel(battery != null ? battery.getSaverLevel() : BatterySaver.OFF);
+            }
+            watchSaverThreshold();
+        }
+    }
+
+    /**
+     * Watch the battery for the crossing into the next saver level, as often as the current
+     * level allows
+     */
+    private void watchSaverThreshold() {
+        final BatterySaver.Profile profile = mPolicy.getSaver().getProfile();
+        mHost.watchBattery(mPolicy.getSaver().getNextBelow(), profile != null && profile.isFewerChecks());
+    }
+
+    /**
+     * Evaluate the rules for the current conditions and take their actions
+     */
+    public void evaluate() {
+        evaluate(mHost.getBatteryLevel(), mHost.isCharging());
+    }
+
+    /**
+     * Evaluate the rules for a new battery status and take their actions
+     *
+     * @param batteryLevel battery percent, or -1 if not known
+     * @param charging     true if plugged in
+     */
+    public void evaluate(int batteryLevel, boolean charging) {
+        mEvaluations++;
+        mPolicy.evaluate(mClock.now(), batteryLevel, charging, mHost.isWifiConnected());
+    }
+
+    /**
+     * @return battery threshold, or -1 if not set yet
+     */
+    public int getThreshold() {
+        return mPolicy.getThreshold();
+    }
+
+    /**
+     * @return number of times the rules have been evaluated
+     */
+    public long getEvaluationCount() {
+        return mEvaluations;
+    }
+
+}
@@ -0,0 +1,368 @@
+package com.access.careplanning.policy;
+
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.AudioManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.access.careplanning.R;
+import com.access.careplanning.battery.BatteryMonitor;
+import com.access.careplanning.battery.BatterySaver;
+import com.access.careplanning.database.Battery;
+import com.access.careplanning.database.CarePlanningRepository;
+import com.access.careplanning.database.ChangeObserver;
+import com.access.careplanning.database.Event;
+import com.access.careplanning.database.Rule;
+import com.access.careplanning.database.TimeRange;
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.metrics.Histogram;
+import com.access.careplanning.metrics.Metrics;
+import com.access.careplanning.notification.NotificationDispatcher;
+import com.access.careplanning.rules.DecisionTable;
+import com.access.careplanning.schedule.RingerScheduler;
+import com.access.careplanning.util.AndroidClock;
+import com.access.careplanning.util.Clock;
+import com.access.careplanning.viewmodel.CarePlanningViewModel;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Headless enforcement of the user's policies: the ringer, wifi and notifications, from rules
+ * on conditions such as quiet periods, the battery threshold and charging. Settings are read
+ * straight from the repository, so it runs from the PolicyReceiver without any activity alive,
+ * and holds no UI references. All the enforcement work runs in order on one background thread.
+ * The system state is read from the SystemStateMirror, so the system services are only called
+ * to make a change. The enforcement steps themselves are the PolicyEnforcer's.
+ */
+public class PolicyEngine {
+
+    private static final String TAG = "PolicyEngine";
+
+    /**
+     * Time budget for one enforcement pass, well inside the broadcast receiver limit
+     */
+    private static final long TIME_BUDGET_MS = 1000 * 5;
+
+    private static volatile PolicyEngine INSTANCE;
+
+    private static final Histogram sEnforceLatency = Metrics.histogram("engine.enforce");
+    // From a receiver going async until its pending result is finished
+    private static final Histogram sAsyncLatency = Metrics.histogram("receiver.async");
+
+    private final Context mContext;
+    private final Clock mClock;
+    private final CarePlanningRepository mRepository;
+    private final RingerScheduler mRingerScheduler;
+    private final BatteryMonitor mBatteryMonitor;
+    private final NotificationDispatcher mNotifications;
+    private final SystemStateMirror mState;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Only accessed on the engine thread
+    private final PolicyEnforcer mEnforcer;
+
+    // Settings changes of the signed-in user, only accessed on the main thread
+    private int mObservedUserId;
+    private ChangeObserver<List<TimeRange>> mTimeRangesObserver;
+    private ChangeObserver<Battery> mBatteryObserver;
+    private ChangeObserver<List<Rule>> mRulesObserver;
+
+    public static PolicyEngine getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (PolicyEngine.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new PolicyEngine(context.getApplicationContext(), AndroidClock.INSTANCE);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Create on the main thread, the battery monitor and state mirror are started and deliver
+     * on the main thread
+     */
+    private PolicyEngine(Context context, Clock clock) {
+        mContext = context;
+        mClock = clock;
+        mRepository = new CarePlanningRepository((Application) context, clock);
+        mRingerScheduler = new RingerScheduler(context, clock);
+        mNotifications = NotificationDispatcher.getInstance(context);
+        mState = SystemStateMirror.getInstance(context);
+        mState.start();
+        mEnforcer = new PolicyEnforcer(clock, new PolicyEnforcer.IPolicyHost() {
+            @Override
+            public List<TimeRange> getTimeRanges(int userId) {
+                return mRepository.getTimeRanges(userId);
+            }
+
+            @Override
+            public Battery getBattery(int userId) {
+                return mRepository.getBattery(userId);
+            }
+
+            @Override
+            public List<Rule> getRules(int userId) {
+                return mRepository.getRules(userId);
+            }
+
+            @Override
+            public void setRingerAlarm(long time) {
+                mRingerScheduler.setAlarm(time);
+            }
+
+            @Override
+            public void watchBattery(int threshold, boolean fewerChecks) {
+                mMainHandler.post(() -> {
+                    mBatteryMonitor.setFewerChecks(fewerChecks);
+                    mBatteryMonitor.setThreshold(threshold);
+                });
+            }
+
+            @Override
+            public int getBatteryLevel() {
+                return PolicyEngine.this.getBatteryLevel();
+            }
+
+            @Override
+            public boolean isCharging() {
+                return mBatteryMonitor.isCharging();
+            }
+
+            @Override
+            public boolean isWifiConnected() {
+                return mState.isWifiConnected();
+            }
+
+            @Override
+            public void setRinger(int ringer, boolean notify) {
+                PolicyEngine.this.setRinger(toRingerMode(ringer), notify);
+            }
+
+            @Override
+            public void setWifi(boolean enable, boolean notify) {
+                setWifiMode(enable, notify);
+            }
+
+            @Override
+            public void onSaverLevel(int level, boolean notify) {
+                PolicyEngine.this.onSaverLevel(level, notify);
+            }
+
+            @Override
+            public boolean isRingerOverridden() {
+                return mState.isRingerOverridden();
+            }
+
+            @Override
+            public void clearRingerOverride() {
+                mState.clearRingerOverride();
+            }
+        }, CarePlanningViewModel.DEFAULT_BATTERY_THRESHOLD);
+        // Listeners last, as they can run on the engine thread straight away
+        mBatteryMonitor = BatteryMonitor.getInstance(context);
+        mBatteryMonitor.start();
+        mBatteryMonitor.addListener((level, charging) ->
+                mExecutor.execute(() -> mEnforcer.evaluate(level, charging)));
+        mState.addListener((what) -> {
+            // Conditions have changed, a user's ringer change is left as it is
+            if (what == SystemStateMirror.POLICY_ACCESS || what == SystemStateMirror.WIFI_CONNECTED) {
+                mExecutor.execute(mEnforcer::evaluate);
+            }
+        });
+    }
+
+    /**
+     * Set the signed-in user whose settings are enforced, call on the main thread.
+     * The user's settings are then observed on the engine thread, and each change enforced.
+     *
+     * @param userId user db id
+     */
+    public void setUserId(int userId) {
+        mRingerScheduler.setUserId(userId);
+        if (userId == mObservedUserId) {
+            return;
+        }
+        if (mObservedUserId > 0) {
+            mTimeRangesObserver.cancel();
+            mBatteryObserver.cancel();
+            mRulesObserver.cancel();
+        }
+        mObservedUserId = userId;
+        mTimeRangesObserver = mRepository.observeTimeRanges(userId, mExecutor, mEnforcer::setTimeRanges);
+        mBatteryObserver = mRepository.observeBattery(userId, mExecutor, (battery) -> {
+            mEnforcer.setBattery(userId, battery);
+            mEnforcer.evaluate();
+        });
+        // Rules are only compiled when they change
+        mRulesObserver = mRepository.observeRules(userId, mExecutor, (rules) -> {
+            mEnforcer.setRules(userId, rules);
+            mEnforcer.evaluate();
+        });
+    }
+
+    /**
+     * Reload the user's settings and enforce them, eg after they have changed
+     */
+    public void refresh() {
+        final long deadline = mClock.elapsedRealtime() + TIME_BUDGET_MS;
+        mExecutor.execute(() -> enforce(deadline));
+    }
+
+    /**
+     * Reload the user's settings and enforce them for a receiver, finishing its pending result
+     * once done and its writes and notifications are out, or out of time
+     *
+     * @param result from BroadcastReceiver.goAsync()
+     */
+    public void refresh(final BroadcastReceiver.PendingResult result) {
+        final long deadline = mClock.elapsedRealtime() + TIME_BUDGET_MS;
+        final long start = Metrics.start();
+        mExecutor.execute(() -> {
+            try {
+                enforce(deadline);
+                // Write this wake's transitions in one transaction, before the process may be stopped
+                mRepository.flushEvents();
+                awaitSideEffects(deadline);
+            } finally {
+                result.finish();
+                sAsyncLatency.stop(start);
+            }
+        });
+    }
+
+    /**
+     * Load the settings and enforce them, see PolicyEnforcer.enforce.
+     * Runs on the engine thread, stops between steps once past the deadline.
+     */
+    private void enforce(long deadline) {
+        final int userId = mRingerScheduler.getUserId();
+        if (userId <= 0) {
+            return;
+        }
+        final long start = Metrics.start();
+        try {
+            final String step = mEnforcer.enforce(userId, deadline);
+            if (step != null) {
+                AppLog.w(TAG, "Out of time before %s", step);
+            }
+        } finally {
+            sEnforceLatency.stop(start);
+        }
+    }
+
+    /**
+     * Wait for the queued saver level write and the coalesced notifications, until the deadline,
+     * so they aren't lost if the process is stopped once the receiver finishes
+     */
+    private void awaitSideEffects(long deadline) {
+        final int userId = mRingerScheduler.getUserId();
+        if (userId > 0 && !mRepository.awaitWrites(userId, Math.max(0, deadline - mClock.elapsedRealtime()))) {
+            AppLog.w(TAG, "Out of time waiting for writes");
+        }
+        if (!mNotifications.flushNow(Math.max(0, deadline - mClock.elapsedRealtime()))) {
+            AppLog.w(TAG, "Out of time posting notifications");
+        }
+    }
+
+    /**
+     * Record and save the new battery saver level, and notify the user once for it
+     */
+    private void onSaverLevel(int level, boolean notify) {
+        final int userId = mRingerScheduler.getUserId();
+        AppLog.i(TAG, "Battery saver level %d", level);
+        mRepository.recordEvent(userId, Event.TYPE_BATTERY_SAVER, level);
+        if (userId > 0) {
+            mRepository.setSaverLevel(userId, mEnforcer.getThreshold(), level);
+        }
+        if (notify) {
+            mNotifications.post(level == BatterySaver.OFF ? R.string.notification_power_saving_off
+                    : level == 1 ? R.string.notification_power_saving : R.string.notification_power_critical);
+        }
+    }
+
+    private static int toRingerMode(int ringer) {
+        switch (ringer) {
+            case DecisionTable.RINGER_VIBRATE:
+                return AudioManager.RINGER_MODE_VIBRATE;
+            case DecisionTable.RINGER_SILENT:
+                return AudioManager.RINGER_MODE_SILENT;
+            default:
+                return AudioManager.RINGER_MODE_NORMAL;
+        }
+    }
+
+    /**
+     * Set the ringer mode, notify the user if the mode has changed and notify is true.
+     * Needs system policy access, which only the UI can ask for.
+     */
+    private void setRinger(int ringerMode, boolean notify) {
+        if (!mState.isPolicyAccessGranted()) {
+            AppLog.w(TAG, "No policy access to set the ringer");
+            return;
+        }
+        if (mState.setRingerMode(ringerMode)) {
+            mRepository.recordEvent(mRingerScheduler.getUserId(), Event.TYPE_RINGER, ringerMode);
+            if (notify) {
+                mNotifications.post(R.string.notification_ringer);
+            }
+        }
+    }
+
+    /**
+     * Get battery percent, from the monitor if it has a level else the sticky battery status.
+     * Battery levels come from the BatteryMonitor broadcasts, with one alarm at the predicted
+     * threshold crossing rather than a polling alarm.
+     * Background on the alternatives:
+     * https://stackoverflow.com/questions/25065635/checking-for-power-saver-mode-programmatically?rq=1
+     * https://developer.android.com/training/monitoring-device-state/battery-monitoring
+     */
+    private int getBatteryLevel() {
+        final int level = mBatteryMonitor.getLevel();
+        if (level >= 0) {
+            return level;
+        }
+        Intent status = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return status != null ? BatteryMonitor.toPercent(status) : -1;
+    }
+
+    /**
+     * Wifi can't be enabled/disabled in Android Q onwards. It works in earlier versions.
+     *
+     * @param enable true to enable, or false to disable
+     * @return true if wifi was successfully changed (enabled or disabled), else false
+     */
+    public boolean setWifiMode(boolean enable) {
+        return setWifiMode(enable, true);
+    }
+
+    private boolean setWifiMode(boolean enable, boolean notify) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            if (mState.setWifiEnabled(enable)) {
+                AppLog.i(TAG, "Changed wifi on/off");
+                mRepository.recordEvent(mRingerScheduler.getUserId(), Event.TYPE_WIFI, enable ? 1 : 0);
+                if (notify) {
+                    mNotifications.post(enable ? R.string.notification_wifi_on : R.string.notification_wifi_off);
+                }
+                return true;
+            }
+        } else {
+            AppLog.w(TAG, "Could not enable/disable wifi on this device");
+        }
+        return false;
+    }
+
+}
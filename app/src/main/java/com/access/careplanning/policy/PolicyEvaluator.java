@@ -0,0 +1,177 @@
+package com.access.careplanning.policy;
+
+import com.access.careplanning.battery.BatterySaver;
+import com.access.careplanning.database.Rule;
+import com.access.careplanning.database.TimeRange;
+import com.access.careplanning.rules.DecisionTable;
+import com.access.careplanning.schedule.QuietSchedule;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The policy decisions of the PolicyEngine: the quiet schedule, compiled rules and battery saver
+ * level, turned into ringer, wifi and saver actions for the conditions at a time. The changes
+ * themselves are made through IPolicyActions. Plain Java with the time passed in, so whole days
+ * can be simulated on the JVM. Not thread safe, use from one thread.
+ */
+public class PolicyEvaluator {
+
+    /**
+     * Makes the changes the policies decide on
+     */
+    public interface IPolicyActions {
+
+        /**
+         * @param ringer DecisionTable ringer action eg RINGER_VIBRATE
+         * @param notify true to notify the user if it changes
+         */
+        void setRinger(int ringer, boolean notify);
+
+        void setWifi(boolean enable, boolean notify);
+
+        /**
+         * The battery saver has changed level, notify the user once if notify is true
+         */
+        void onSaverLevel(int level, boolean notify);
+
+        /**
+         * @return true if the user has changed the ringer themselves
+         */
+        boolean isRingerOverridden();
+
+        void clearRingerOverride();
+    }
+
+    private final IPolicyActions mActions;
+    private final QuietSchedule mSchedule = new QuietSchedule();
+    // No levels until the user's threshold is known
+    private final BatterySaver mSaver = new BatterySaver(Collections.emptyList(), BatterySaver.OFF);
+    private DecisionTable mRules = DecisionTable.compile(Collections.emptyList());
+    private int mThreshold = -1;
+    private int mLastRingerAction = DecisionTable.UNSET;
+    private int mLastWifiAction = DecisionTable.UNSET;
+
+    public PolicyEvaluator(IPolicyActions actions) {
+        mActions = actions;
+    }
+
+    public void setTimeRanges(List<TimeRange> timeRanges) {
+        mSchedule.setAll(timeRanges);
+    }
+
+    public QuietSchedule getSchedule() {
+        return mSchedule;
+    }
+
+    /**
+     * Compile the rules, only call when they change
+     */
+    public void setRules(List<Rule> rules) {
+        mRules = DecisionTable.compile(rules);
+    }
+
+    /**
+     * Set the battery saver levels for the threshold
+     */
+    public void setThreshold(int threshold) {
+        mThreshold = threshold;
+        mSaver.setProfiles(BatterySaver.defaultProfiles(threshold));
+    }
+
+    /**
+     * @return battery threshold, or -1 if not set yet
+     */
+    public int getThreshold() {
+        return mThreshold;
+    }
+
+    /**
+     * Carry on from a saved battery saver level, without its actions being taken again.
+     * The level's ringer and wifi actions count as already taken, so a wifi the user has
+     * switched back on isn't switched off again. Call after setThreshold.
+     */
+    public void restoreSaverLevel(int level) {
+        mSaver.setLevel(level);
+        final BatterySaver.Profile profile = mSaver.getProfile();
+        if (profile != null) {
+            if (profile.getRinger() != DecisionTable.UNSET) {
+                mLastRingerAction = profile.getRinger();
+            }
+            if (profile.getWifi() != DecisionTable.UNSET) {
+                mLastWifiAction = profile.getWifi();
+            }
+        }
+    }
+
+    public BatterySaver getSaver() {
+        return mSaver;
+    }
+
+    /**
+     * Evaluate the rules for the conditions and take their actions.
+     * The ringer is set whenever it differs from the rules, unless the user has changed it
+     * themselves, which holds until the rules' ringer action changes. Wifi is only switched when
+     * the rules' wifi action changes, eg on dropping below the battery threshold, so the user can
+     * still switch it themselves.
+     * The battery saver level's actions take over from the rules', and a change of level is one
+     * set of changes with one notification.
+     *
+     * @param now           current time
+     * @param batteryLevel  battery percent, or -1 if not known
+     * @param charging      true if plugged in
+     * @param wifiConnected true if on a wifi network
+     */
+    public void evaluate(Calendar now, int batteryLevel, boolean charging, boolean wifiConnected) {
+        final int dayOfWeek = now.get(Calendar.DAY_OF_WEEK);
+        final boolean saverChanged = mSaver.update(batteryLevel, charging);
+        final BatterySaver.Profile profile = mSaver.getProfile();
+        int state = 0;
+        if (mSchedule.isQuiet(dayOfWeek, now.get(Calendar.HOUR_OF_DAY), now.get(Calendar.MINUTE))) {
+            state |= DecisionTable.IN_QUIET_PERIOD;
+        }
+        if (profile != null) {
+            state |= DecisionTable.BELOW_BATTERY_THRESHOLD;
+        }
+        if (charging) {
+            state |= DecisionTable.CHARGING;
+        }
+        if (wifiConnected) {
+            state |= DecisionTable.WIFI_CONNECTED;
+        }
+        if (dayOfWeek != Calendar.SATURDAY && dayOfWeek != Calendar.SUNDAY) {
+            state |= DecisionTable.WEEKDAY;
+        }
+
+        final int actions = mRules.evaluate(state);
+        final boolean notify = DecisionTable.notify(actions) != DecisionTable.NOTIFY_OFF;
+        // A saver level change has its own notification instead of one per change
+        final boolean notifyChange = notify && !saverChanged;
+        int ringer = DecisionTable.ringer(actions);
+        int wifi = DecisionTable.wifi(actions);
+        if (profile != null && profile.getRinger() != DecisionTable.UNSET) {
+            ringer = profile.getRinger();
+        }
+        if (profile != null && profile.getWifi() != DecisionTable.UNSET) {
+            wifi = profile.getWifi();
+        }
+        if (ringer != mLastRingerAction) {
+            mLastRingerAction = ringer;
+            mActions.clearRingerOverride();
+        }
+        if (ringer != DecisionTable.UNSET && !mActions.isRingerOverridden()) {
+            mActions.setRinger(ringer, notifyChange);
+        }
+        if (wifi != mLastWifiAction) {
+            mLastWifiAction = wifi;
+            if (wifi != DecisionTable.UNSET) {
+                mActions.setWifi(wifi == DecisionTable.WIFI_ON, notifyChange);
+            }
+        }
+        if (saverChanged) {
+            mActions.onSaverLevel(mSaver.getLevel(), notify);
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.access.careplanning.policy;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.access.careplanning.battery.BatteryMonitor;
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.metrics.Histogram;
+import com.access.careplanning.metrics.Metrics;
+
+/**
+ * Runs the PolicyEngine for the ringer and battery check alarms, so the policies are enforced
+ * whether or not the app is open. Also restores the alarms after a reboot, app update or
+ * clock/timezone change.
+ */
+public class PolicyReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "PolicyReceiver";
+
+    private static final Histogram sReceiveLatency = Metrics.histogram("receiver.onReceive");
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        AppLog.d(TAG, "onReceive %s", intent.getAction());
+        final long start = Metrics.start();
+        // The engine starts the battery monitor, so get it first
+        PolicyEngine engine = PolicyEngine.getInstance(context);
+        if (BatteryMonitor.ACTION_BATTERY_CHECK.equals(intent.getAction())) {
+            BatteryMonitor.getInstance(context).onCheckAlarm();
+        }
+        engine.refresh(goAsync());
+        sReceiveLatency.stop(start);
+    }
+
+}
@@ -0,0 +1,301 @@
+package com.access.careplanning.policy;
+
+import android.app.NotificationManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.AudioManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.metrics.Counter;
+import com.access.careplanning.metrics.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory copy of the system state the policies act on: the ringer mode, wifi on/off,
+ * wifi connected and notification policy access. It is read once on start, then kept up to date
+ * from the platform's change broadcasts and network callbacks, so enforcing reads it without
+ * any calls to the system services, and only calls them to make a change.
+ * A ringer change that the app didn't make is taken as a manual override by the user. The app's
+ * own changes are remembered until their broadcasts arrive, and a different mode arriving while
+ * one is pending is taken as the system adjusting the app's change, eg under do not disturb.
+ * The getters can be called on any thread, listeners are called on the main thread, or the
+ * connectivity thread for WIFI_CONNECTED.
+ */
+public class SystemStateMirror {
+
+    private static final String TAG = "SystemStateMirror";
+
+    public static final int RINGER = 1;
+    public static final int WIFI_ENABLED = 2;
+    public static final int WIFI_CONNECTED = 3;
+    public static final int POLICY_ACCESS = 4;
+
+    private static final int NONE = -1;
+
+    // System service calls made, and changes skipped as the state already matched
+    private static final Counter sIpcCalls = Metrics.counter("state.ipc");
+    private static final Counter sUnchanged = Metrics.counter("state.unchanged");
+
+    /**
+     * Listener for changes to the system state, with what changed eg RINGER
+     */
+    public interface IStateListener {
+        void onStateChanged(int what);
+    }
+
+    private static volatile SystemStateMirror INSTANCE;
+
+    private final Context mContext;
+    private final AudioManager mAudioManager;
+    private final WifiManager mWifiManager;
+    private final NotificationManager mNotificationManager;
+    private final ConnectivityManager mConnectivityManager;
+    private final List<IStateListener> mListeners = new CopyOnWriteArrayList<>();
+
+    private boolean mStarted;
+    private volatile int mRingerMode = NONE;
+    private volatile boolean mWifiEnabled;
+    private volatile boolean mWifiConnected;
+    private volatile boolean mPolicyAccess;
+
+    // The ringer modes the app has set in order, until their broadcasts arrive, guarded by itself
+    private final Deque<Integer> mPendingRingers = new ArrayDeque<>();
+    // The last mode the system changed an app's change to, so it isn't asked for again
+    private volatile int mCoercedFrom = NONE;
+    private volatile int mCoercedTo = NONE;
+    private volatile boolean mRingerOverridden;
+
+    public static SystemStateMirror getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (SystemStateMirror.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SystemStateMirror(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private SystemStateMirror(Context context) {
+        mContext = context;
+        mAudioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        mWifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        mNotificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        mConnectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final String action = intent.getAction();
+            AppLog.d(TAG, "onReceive %s", action);
+            if (AudioManager.RINGER_MODE_CHANGED_ACTION.equals(action)) {
+                onRingerMode(intent.getIntExtra(AudioManager.EXTRA_RINGER_MODE, NONE));
+            } else if (WifiManager.WIFI_STATE_CHANGED_ACTION.equals(action)) {
+                final int state = intent.getIntExtra(WifiManager.EXTRA_WIFI_STATE, WifiManager.WIFI_STATE_UNKNOWN);
+                if (state == WifiManager.WIFI_STATE_ENABLED || state == WifiManager.WIFI_STATE_DISABLED) {
+                    mWifiEnabled = state == WifiManager.WIFI_STATE_ENABLED;
+                    notifyListeners(WIFI_ENABLED);
+                }
+            } else if (NotificationManager.ACTION_NOTIFICATION_POLICY_ACCESS_GRANTED_CHANGED.equals(action)) {
+                mPolicyAccess = readPolicyAccess();
+                notifyListeners(POLICY_ACCESS);
+            }
+        }
+    };
+
+    private final ConnectivityManager.NetworkCallback mNetworkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            setWifiConnected(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI));
+        }
+
+        @Override
+        public void onLost(Network network) {
+            setWifiConnected(false);
+        }
+    };
+
+    /**
+     * Read the current state and start following its changes, call on the main thread
+     */
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        mRingerMode = mAudioManager != null ? mAudioManager.getRingerMode() : NONE;
+        mWifiEnabled = mWifiManager != null && mWifiManager.isWifiEnabled();
+        mPolicyAccess = readPolicyAccess();
+        sIpcCalls.add(3);
+
+        IntentFilter filter = new IntentFilter(AudioManager.RINGER_MODE_CHANGED_ACTION);
+        filter.addAction(WifiManager.WIFI_STATE_CHANGED_ACTION);
+        filter.addAction(NotificationManager.ACTION_NOTIFICATION_POLICY_ACCESS_GRANTED_CHANGED);
+        mContext.registerReceiver(mReceiver, filter);
+        if (mConnectivityManager != null) {
+            // Delivers the current default network straight away
+            mConnectivityManager.registerDefaultNetworkCallback(mNetworkCallback);
+        }
+    }
+
+    /**
+     * Stop following the state changes
+     */
+    public void stop() {
+        if (mStarted) {
+            mStarted = false;
+            mContext.unregisterReceiver(mReceiver);
+            if (mConnectivityManager != null) {
+                mConnectivityManager.unregisterNetworkCallback(mNetworkCallback);
+            }
+        }
+    }
+
+    public void addListener(IStateListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(IStateListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void notifyListeners(int what) {
+        for (IStateListener listener : mListeners) {
+            listener.onStateChanged(what);
+        }
+    }
+
+    private void onRingerMode(int ringerMode) {
+        if (ringerMode == NONE) {
+            return;
+        }
+        synchronized (mPendingRingers) {
+            if (mPendingRingers.contains(ringerMode)) {
+                // The app's own change, any earlier ones are done too as broadcasts can be skipped
+                int pending;
+                do {
+                    pending = mPendingRingers.removeFirst();
+                } while (pending != ringerMode);
+                if (mPendingRingers.isEmpty()) {
+                    mRingerMode = ringerMode;
+                }
+                return;
+            }
+            if (!mPendingRingers.isEmpty()) {
+                // The system set another mode for the app's change
+                final int requested = mPendingRingers.peekLast();
+                AppLog.i(TAG, "Ringer %d set as %d", requested, ringerMode);
+                mPendingRingers.clear();
+                mCoercedFrom = requested;
+                mCoercedTo = ringerMode;
+                mRingerMode = ringerMode;
+                return;
+            }
+        }
+        if (ringerMode != mRingerMode) {
+            AppLog.i(TAG, "Ringer changed by the user to %d", ringerMode);
+            mRingerMode = ringerMode;
+            mRingerOverridden = true;
+            notifyListeners(RINGER);
+        }
+    }
+
+    private void setWifiConnected(boolean connected) {
+        if (connected != mWifiConnected) {
+            mWifiConnected = connected;
+            notifyListeners(WIFI_CONNECTED);
+        }
+    }
+
+    private boolean readPolicyAccess() {
+        return mNotificationManager != null && mNotificationManager.isNotificationPolicyAccessGranted();
+    }
+
+    /**
+     * Set the ringer mode, only calling the audio service if it differs, you must have policy access
+     *
+     * @param ringerMode eg AudioManager.RINGER_MODE_VIBRATE
+     * @return true if the mode was changed
+     */
+    public boolean setRingerMode(int ringerMode) {
+        if (mAudioManager == null || ringerMode == mRingerMode
+                || (ringerMode == mCoercedFrom && mRingerMode == mCoercedTo)) {
+            sUnchanged.inc();
+            return false;
+        }
+        synchronized (mPendingRingers) {
+            mPendingRingers.addLast(ringerMode);
+        }
+        mAudioManager.setRingerMode(ringerMode);
+        mRingerMode = ringerMode;
+        sIpcCalls.inc();
+        return true;
+    }
+
+    /**
+     * Switch wifi on or off, only calling the wifi service if it differs.
+     * Wifi can't be enabled/disabled in Android Q onwards.
+     *
+     * @return true if wifi was changed
+     */
+    @SuppressWarnings("deprecation")
+    public boolean setWifiEnabled(boolean enable) {
+        if (mWifiManager == null || Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return false;
+        }
+        if (enable == mWifiEnabled) {
+            sUnchanged.inc();
+            return false;
+        }
+        sIpcCalls.inc();
+        if (mWifiManager.setWifiEnabled(enable)) {
+            mWifiEnabled = enable;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the user has changed the ringer since the override was last cleared
+     */
+    public boolean isRingerOverridden() {
+        return mRingerOverridden;
+    }
+
+    /**
+     * Go back to setting the ringer, eg when the rules' ringer action changes
+     */
+    public void clearRingerOverride() {
+        mRingerOverridden = false;
+        mCoercedFrom = NONE;
+    }
+
+    public int getRingerMode() {
+        return mRingerMode;
+    }
+
+    public boolean isWifiEnabled() {
+        return mWifiEnabled;
+    }
+
+    public boolean isWifiConnected() {
+        return mWifiConnected;
+    }
+
+    public boolean isPolicyAccessGranted() {
+        return mPolicyAccess;
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.access.careplanning.provision;
+
+import com.access.careplanning.database.StaffRecord;
+import com.access.careplanning.database.TimeRange;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads carers to provision from a CSV file a line at a time, so a file of any size can be
+ * streamed into CarePlanningRepository.provision. One carer per line:
+ * <pre>
+ * google_id,name,battery_threshold,quiet_periods
+ * 1234567890,Ann Smith,15,22:00-06:00;12:30-13:00@62
+ * </pre>
+ * An empty threshold or quiet periods leaves the carer's existing setting. Quiet periods are
+ * separated by ';', each optionally followed by '@' and a days bit mask with bit 0 as Sunday,
+ * else every day. A header line, blank lines and lines starting with '#' are skipped.
+ * Fields aren't quoted, so names can't contain commas.
+ */
+public class StaffCsvReader implements Iterator<StaffRecord>, Closeable {
+
+    private static final String HEADER = "google_id";
+
+    private final BufferedReader mReader;
+    private StaffRecord mNext;
+    private int mLineNumber;
+
+    public StaffCsvReader(Reader reader) {
+        mReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mNext == null) {
+            mNext = readRecord();
+        }
+        return mNext != null;
+    }
+
+    @Override
+    public StaffRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        StaffRecord record = mNext;
+        mNext = null;
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    /**
+     * @return next record, or null at the end
+     */
+    private StaffRecord readRecord() {
+        try {
+            String line;
+            while ((line = mReader.readLine()) != null) {
+                mLineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || (mLineNumber == 1 && line.startsWith(HEADER))) {
+                    continue;
+                }
+                return parse(line);
+            }
+            return null;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private StaffRecord parse(String line) {
+        final String[] fields = line.split(",", -1);
+        if (fields.length != 4 || fields[0].trim().isEmpty()) {
+            throw invalid("expected google_id,name,battery_threshold,quiet_periods");
+        }
+
+        Integer threshold = null;
+        final String thresholdField = fields[2].trim();
+        if (!thresholdField.isEmpty()) {
+            threshold = parseInt(thresholdField, 0, 100);
+        }
+
+        List<TimeRange> timeRanges = null;
+        final String periodsField = fields[3].trim();
+        if (!periodsField.isEmpty()) {
+            timeRanges = new ArrayList<>();
+            for (String period : periodsField.split(";")) {
+                timeRanges.add(parsePeriod(period.trim()));
+            }
+        }
+        return new StaffRecord(fields[0].trim(), fields[1].trim(), timeRanges, threshold);
+    }
+
+    /**
+     * Parse a quiet period eg 22:00-06:00 or 09:00-17:00@62
+     */
+    private TimeRange parsePeriod(String period) {
+        int days = TimeRange.ALL_DAYS;
+        final int at = period.indexOf('@');
+        if (at >= 0) {
+            days = parseInt(period.substring(at + 1), 1, TimeRange.ALL_DAYS);
+            period = period.substring(0, at);
+        }
+        final int dash = period.indexOf('-');
+        if (dash < 0) {
+            throw invalid("quiet period '" + period + "' should be HH:MM-HH:MM");
+        }
+        final int[] start = parseTime(period.substring(0, dash));
+        final int[] end = parseTime(period.substring(dash + 1));
+        TimeRange timeRange = new TimeRange(start[0], start[1], end[0], end[1]);
+        timeRange.setDays(days);
+        return timeRange;
+    }
+
+    private int[] parseTime(String time) {
+        final int colon = time.indexOf(':');
+        if (colon < 0) {
+            throw invalid("time '" + time + "' should be HH:MM");
+        }
+        return new int[]{parseInt(time.substring(0, colon), 0, 23), parseInt(time.substring(colon + 1), 0, 59)};
+    }
+
+    private int parseInt(String value, int min, int max) {
+        try {
+            final int parsed = Integer.parseInt(value.trim());
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException nfe) {
+            // reported below
+        }
+        throw invalid("'" + value + "' should be a number from " + min + " to " + max);
+    }
+
+    private InvalidParameterException invalid(String message) {
+        return new InvalidParameterException("Line " + mLineNumber + ": " + message);
+    }
+
+}
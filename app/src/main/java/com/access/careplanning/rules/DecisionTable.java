@@ -0,0 +1,121 @@
+package com.access.careplanning.rules;
+
+import com.access.careplanning.database.Rule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A user's rules compiled into a table of the actions for every combination of conditions.
+ * Evaluating is one array read, with no allocation, so it can be done on every battery,
+ * alarm or network event. Compile again only when the rules change.
+ * <p>
+ * The actions are packed into an int, 2 bits each for the ringer, wifi and notifications,
+ * where 0 means no rule set it and the current setting is left.
+ */
+public class DecisionTable {
+
+    // Condition bits of the state
+    public static final int IN_QUIET_PERIOD = 1;
+    public static final int BELOW_BATTERY_THRESHOLD = 1 << 1;
+    public static final int CHARGING = 1 << 2;
+    public static final int WIFI_CONNECTED = 1 << 3;
+    /**
+     * Monday to Friday
+     */
+    public static final int WEEKDAY = 1 << 4;
+
+    static final int CONDITIONS = 5;
+
+    // Action values
+    public static final int UNSET = 0;
+    public static final int RINGER_NORMAL = 1;
+    public static final int RINGER_VIBRATE = 2;
+    public static final int RINGER_SILENT = 3;
+    public static final int WIFI_ON = 1;
+    public static final int WIFI_OFF = 2;
+    public static final int NOTIFY_ON = 1;
+    public static final int NOTIFY_OFF = 2;
+
+    private static final int RINGER_SHIFT = 0;
+    private static final int WIFI_SHIFT = 2;
+    private static final int NOTIFY_SHIFT = 4;
+    private static final int FIELD_MASK = 3;
+
+    private final int[] mActions = new int[1 << CONDITIONS];
+
+    private DecisionTable() {
+    }
+
+    /**
+     * Rules used when a user hasn't any: vibrate in quiet periods else normal,
+     * and wifi off below the battery threshold
+     */
+    public static List<Rule> defaultRules() {
+        return Arrays.asList(
+                new Rule(0, IN_QUIET_PERIOD, IN_QUIET_PERIOD, RINGER_VIBRATE, UNSET, UNSET),
+                new Rule(1, BELOW_BATTERY_THRESHOLD, BELOW_BATTERY_THRESHOLD, UNSET, WIFI_OFF, UNSET),
+                new Rule(2, 0, 0, RINGER_NORMAL, UNSET, NOTIFY_ON));
+    }
+
+    /**
+     * Compile rules, in any order, into a table
+     *
+     * @param rules the user's rules, or empty for the defaults
+     */
+    public static DecisionTable compile(List<Rule> rules) {
+        if (rules.isEmpty()) {
+            rules = defaultRules();
+        }
+        List<Rule> ordered = new ArrayList<>(rules);
+        Collections.sort(ordered, (a, b) -> a.getPriority() != b.getPriority()
+                ? Integer.compare(a.getPriority(), b.getPriority()) : Integer.compare(a.getId(), b.getId()));
+
+        DecisionTable table = new DecisionTable();
+        for (int state = 0; state < table.mActions.length; state++) {
+            int actions = 0;
+            for (Rule rule : ordered) {
+                if ((state & rule.getConditionMask()) == (rule.getConditionValue() & rule.getConditionMask())) {
+                    actions = merge(actions, RINGER_SHIFT, rule.getRinger());
+                    actions = merge(actions, WIFI_SHIFT, rule.getWifi());
+                    actions = merge(actions, NOTIFY_SHIFT, rule.getNotify());
+                }
+            }
+            table.mActions[state] = actions;
+        }
+        return table;
+    }
+
+    /**
+     * Set an action field if it isn't set, so the first matching rule wins
+     */
+    private static int merge(int actions, int shift, int value) {
+        if (((actions >> shift) & FIELD_MASK) == UNSET) {
+            actions |= (value & FIELD_MASK) << shift;
+        }
+        return actions;
+    }
+
+    /**
+     * @param state condition bits
+     * @return packed actions, read with ringer(), wifi() and notify()
+     */
+    public int evaluate(int state) {
+        return mActions[state & (mActions.length - 1)];
+    }
+
+    public static int ringer(int actions) {
+        return (actions >> RINGER_SHIFT) & FIELD_MASK;
+    }
+
+    public static int wifi(int actions) {
+        return (actions >> WIFI_SHIFT) & FIELD_MASK;
+    }
+
+    public static int notify(int actions) {
+        return (actions >> NOTIFY_SHIFT) & FIELD_MASK;
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.access.careplanning.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decodes QR codes from camera preview frames, as fast as possible on slow devices:
+ * - only QR codes are tried, not every barcode format
+ * - only a square in the centre of the frame is scanned
+ * - that square is first decoded at half resolution, then at full resolution if that fails
+ * The frame isn't rotated, QR codes decode in any orientation.
+ * Plain Java, confine to one thread.
+ */
+public class QrFrameDecoder {
+
+    /**
+     * Side of the centre square, as a fraction of the shorter side of the frame
+     */
+    static final float CROP_FRACTION = 0.6f;
+
+    private final QRCodeReader mReader = new QRCodeReader();
+    private final Map<DecodeHintType, Object> mHints = new EnumMap<>(DecodeHintType.class);
+
+    /**
+     * Reused half resolution luminance, grown as needed
+     */
+    private byte[] mHalfBuffer = new byte[0];
+
+    private long mLastDecodeNanos;
+    private boolean mLastFullResolution;
+
+    public QrFrameDecoder() {
+        mHints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+    }
+
+    /**
+     * Decode a QR code in the centre of a frame
+     *
+     * @param data   NV21 or other planar YUV frame, luminance first
+     * @param width  frame width
+     * @param height frame height
+     * @return decoded result, or null if there is no readable QR code
+     */
+    public Result decode(byte[] data, int width, int height) {
+        final long start = System.nanoTime();
+        // Even sizes and offsets, so the half resolution pass lines up with the full one
+        final int size = ((int) (Math.min(width, height) * CROP_FRACTION)) & ~1;
+        final int left = ((width - size) / 2) & ~1;
+        final int top = ((height - size) / 2) & ~1;
+
+        mLastFullResolution = false;
+        Result result = decode(halfResolution(data, width, left, top, size));
+        if (result == null) {
+            mLastFullResolution = true;
+            result = decode(new PlanarYUVLuminanceSource(data, width, height, left, top, size, size, false));
+        }
+        mLastDecodeNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Every other pixel of every other row of the square, a quarter of the pixels to binarize
+     */
+    private LuminanceSource halfResolution(byte[] data, int width, int left, int top, int size) {
+        final int half = size / 2;
+        if (mHalfBuffer.length < half * half) {
+            mHalfBuffer = new byte[half * half];
+        }
+        for (int y = 0; y < half; y++) {
+            final int row = (top + y * 2) * width + left;
+            final int offset = y * half;
+            for (int x = 0; x < half; x++) {
+                mHalfBuffer[offset + x] = data[row + x * 2];
+            }
+        }
+        return new PlanarYUVLuminanceSource(mHalfBuffer, half, half, 0, 0, half, half, false);
+    }
+
+    private Result decode(LuminanceSource source) {
+        try {
+            return mReader.decode(new BinaryBitmap(new HybridBinarizer(source)), mHints);
+        } catch (ReaderException re) {
+            return null;
+        } finally {
+            mReader.reset();
+        }
+    }
+
+    /**
+     * @return time taken by the last decode in ms
+     */
+    public double getLastDecodeMs() {
+        return mLastDecodeNanos / 1e6;
+    }
+
+    /**
+     * @return true if the last decode needed the full resolution pass
+     */
+    public boolean isLastFullResolution() {
+        return mLastFullResolution;
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.access.careplanning.scan;
+
+import android.content.Context;
+import android.hardware.Camera;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.zxing.Result;
+
+import com.access.careplanning.log.AppLog;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import me.dm7.barcodescanner.core.BarcodeScannerView;
+import me.dm7.barcodescanner.zxing.ZXingScannerView;
+
+/**
+ * Scanner view that only reads QR codes, with the QrFrameDecoder pipeline.
+ * Frames are decoded on a background thread, and frames that arrive while a decode is still
+ * running are dropped. The decode time of each frame and the time to the first decode are
+ * logged, to compare device models.
+ */
+public class QrScannerView extends BarcodeScannerView {
+
+    private static final String TAG = "QrScannerView";
+
+    private final QrFrameDecoder mDecoder = new QrFrameDecoder();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean mBusy = new AtomicBoolean();
+
+    private volatile ZXingScannerView.ResultHandler mResultHandler;
+    private HandlerThread mDecodeThread;
+    private Handler mDecodeHandler;
+
+    // Preview size, read once per camera start rather than with every frame
+    private int mPreviewWidth;
+    private int mPreviewHeight;
+
+    private long mStartTime;
+    private int mFrames;
+    private int mDropped;
+
+    public QrScannerView(Context context) {
+        super(context);
+    }
+
+    public void setResultHandler(ZXingScannerView.ResultHandler resultHandler) {
+        mResultHandler = resultHandler;
+    }
+
+    @Override
+    public void startCamera(int cameraId) {
+        mDecodeThread = new HandlerThread(TAG);
+        mDecodeThread.start();
+        mDecodeHandler = new Handler(mDecodeThread.getLooper());
+        mPreviewWidth = 0;
+        mFrames = 0;
+        mDropped = 0;
+        mBusy.set(false);
+        mStartTime = SystemClock.elapsedRealtime();
+        super.startCamera(cameraId);
+    }
+
+    @Override
+    public void stopCamera() {
+        super.stopCamera();
+        if (mDecodeThread != null) {
+            mDecodeThread.quit();
+            mDecodeThread = null;
+        }
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        if (mResultHandler == null || mDecodeThread == null) {
+            return;
+        }
+        if (!mBusy.compareAndSet(false, true)) {
+            mDropped++;
+            return;
+        }
+        if (mPreviewWidth == 0) {
+            try {
+                Camera.Size size = camera.getParameters().getPreviewSize();
+                mPreviewWidth = size.width;
+                mPreviewHeight = size.height;
+            } catch (RuntimeException re) {
+                // Camera released meanwhile
+                AppLog.w(TAG, "No preview size", re);
+                mBusy.set(false);
+                return;
+            }
+        }
+        mFrames++;
+        final int width = mPreviewWidth;
+        final int height = mPreviewHeight;
+        mDecodeHandler.post(() -> decode(data, width, height, camera));
+    }
+
+    /**
+     * Decode a frame on the decode thread, then either deliver the result or ask for the next frame
+     */
+    private void decode(byte[] data, int width, int height, Camera camera) {
+        final Result result = mDecoder.decode(data, width, height);
+        // Every frame, so only in debug builds
+        if (AppLog.DEBUG) {
+            AppLog.d(TAG, String.format(Locale.US, "frame %d %dx%d %s resolution decode %.1fms",
+                    mFrames, width, height, mDecoder.isLastFullResolution() ? "full" : "half",
+                    mDecoder.getLastDecodeMs()));
+        }
+
+        if (result != null) {
+            if (AppLog.isLoggable(Log.INFO)) {
+                AppLog.i(TAG, String.format(Locale.US, "time to first decode %dms on %s %s, %d frames, %d dropped",
+                        SystemClock.elapsedRealtime() - mStartTime, Build.MANUFACTURER, Build.MODEL,
+                        mFrames, mDropped));
+            }
+            mMainHandler.post(() -> {
+                ZXingScannerView.ResultHandler resultHandler = mResultHandler;
+                mResultHandler = null;
+                stopCameraPreview();
+                if (resultHandler != null) {
+                    resultHandler.handleResult(result);
+                }
+            });
+            return;
+        }
+
+        mBusy.set(false);
+        try {
+            camera.setOneShotPreviewCallback(this);
+        } catch (RuntimeException re) {
+            // Camera released meanwhile
+            AppLog.d(TAG, "Camera stopped");
+        }
+    }
+
+}
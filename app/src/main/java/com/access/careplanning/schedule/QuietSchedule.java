@@ -0,0 +1,270 @@
+package com.access.careplanning.schedule;
+
+import com.access.careplanning.database.TimeRange;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Compiled weekly schedule of quiet (vibrate) periods, built from the user's time ranges.
+ * Each minute of the week is one bit, so "is this minute quiet" is a single bit test and
+ * "when is the next transition" is a scan over at most 158 words, neither allocates.
+ * A coverage count per minute lets a single range be added, changed or removed without
+ * rebuilding the whole week.
+ * <p>
+ * A range covers [start, end) on each of its days, and continues into the next day when the
+ * end is before the start. Not thread safe, confine to one thread or synchronise externally.
+ */
+public class QuietSchedule {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    public static final int DAYS_PER_WEEK = 7;
+    public static final int MINUTES_PER_WEEK = MINUTES_PER_DAY * DAYS_PER_WEEK;
+
+    /**
+     * Returned when the quiet state never changes, eg no ranges at all
+     */
+    public static final int NO_TRANSITION = -1;
+
+    private static final int WORDS = (MINUTES_PER_WEEK + 63) / 64;
+
+    private static final long MINUTE_MS = 60 * 1000;
+
+    /**
+     * Longer than any daylight saving change, to find the offset before one
+     */
+    private static final long DST_LOOKBACK_MS = 3 * 60 * MINUTE_MS;
+
+    private final long[] mQuiet = new long[WORDS];
+
+    /**
+     * Number of ranges covering each minute of the week
+     */
+    private final short[] mCoverage = new short[MINUTES_PER_WEEK];
+
+    /**
+     * The compiled ranges by TimeRange id, as {start minute, end minute, days}
+     */
+    private final Map<Integer, int[]> mRanges = new HashMap<>();
+
+    /**
+     * Replace the schedule with these ranges, only ranges that were added, changed or removed
+     * since the last call are recompiled.
+     *
+     * @param ranges all of the user's time ranges
+     */
+    public void setAll(List<TimeRange> ranges) {
+        Set<Integer> ids = new HashSet<>();
+        for (TimeRange range : ranges) {
+            ids.add(range.getId());
+            put(range);
+        }
+        if (ids.size() < mRanges.size()) {
+            for (Integer id : mRanges.keySet().toArray(new Integer[0])) {
+                if (!ids.contains(id)) {
+                    remove(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a range, or update the range with the same id
+     *
+     * @param range time range
+     */
+    public void put(TimeRange range) {
+        final int[] compiled = {
+                minuteOfDay(range.getStartHour(), range.getStartMinute()),
+                minuteOfDay(range.getEndHour(), range.getEndMinute()),
+                range.getDays()};
+        final int[] existing = mRanges.get(range.getId());
+        if (existing != null) {
+            if (existing[0] == compiled[0] && existing[1] == compiled[1] && existing[2] == compiled[2]) {
+                return;
+            }
+            apply(existing, -1);
+        }
+        mRanges.put(range.getId(), compiled);
+        apply(compiled, 1);
+    }
+
+    /**
+     * Remove a range
+     *
+     * @param rangeId TimeRange id
+     */
+    public void remove(int rangeId) {
+        final int[] existing = mRanges.remove(rangeId);
+        if (existing != null) {
+            apply(existing, -1);
+        }
+    }
+
+    /**
+     * Remove all ranges
+     */
+    public void clear() {
+        mRanges.clear();
+        Arrays.fill(mQuiet, 0);
+        Arrays.fill(mCoverage, (short) 0);
+    }
+
+    public int size() {
+        return mRanges.size();
+    }
+
+    /**
+     * @param dayOfWeek Calendar day eg Calendar.MONDAY
+     * @param hour      hour of day
+     * @param minute    minute
+     * @return true if the minute is in a quiet period
+     */
+    public boolean isQuiet(int dayOfWeek, int hour, int minute) {
+        return isQuiet(minuteOfWeek(dayOfWeek, hour, minute));
+    }
+
+    /**
+     * @param minuteOfWeek minute from the start of Sunday
+     * @return true if the minute is in a quiet period
+     */
+    public boolean isQuiet(int minuteOfWeek) {
+        return (mQuiet[minuteOfWeek >>> 6] & (1L << minuteOfWeek)) != 0;
+    }
+
+    /**
+     * Minutes from the given minute until the quiet state next changes, wrapping into next week
+     *
+     * @param minuteOfWeek minute from the start of Sunday
+     * @return minutes until the next transition (1 to a week), or NO_TRANSITION
+     */
+    public int minutesUntilTransition(int minuteOfWeek) {
+        final boolean quiet = isQuiet(minuteOfWeek);
+        int next = findChange(quiet, minuteOfWeek + 1, MINUTES_PER_WEEK);
+        if (next < 0) {
+            next = findChange(quiet, 0, minuteOfWeek + 1);
+            if (next < 0) {
+                return NO_TRANSITION;
+            }
+            next += MINUTES_PER_WEEK;
+        }
+        return next - minuteOfWeek;
+    }
+
+    /**
+     * Find the first minute in [from, to) whose state differs from quiet
+     *
+     * @return minute of week, or -1 if none
+     */
+    private int findChange(boolean quiet, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        final int lastWord = (to - 1) >>> 6;
+        for (int word = from >>> 6; word <= lastWord; word++) {
+            long bits = quiet ? ~mQuiet[word] : mQuiet[word];
+            if (word == from >>> 6) {
+                bits &= -1L << from;
+            }
+            if (word == lastWord && (to & 63) != 0) {
+                bits &= -1L >>> (64 - (to & 63));
+            }
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add (+1) or remove (-1) a compiled range's coverage
+     */
+    private void apply(int[] compiled, int delta) {
+        final int start = compiled[0];
+        final int end = compiled[1];
+        if (start == end) {
+            return;
+        }
+        final int length = end > start ? end - start : MINUTES_PER_DAY - start + end;
+        for (int day = 0; day < DAYS_PER_WEEK; day++) {
+            if ((compiled[2] & (1 << day)) != 0) {
+                final int first = day * MINUTES_PER_DAY + start;
+                for (int i = 0; i < length; i++) {
+                    cover((first + i) % MINUTES_PER_WEEK, delta);
+                }
+            }
+        }
+    }
+
+    private void cover(int minute, int delta) {
+        final int coverage = mCoverage[minute] + delta;
+        mCoverage[minute] = (short) coverage;
+        if (coverage > 0) {
+            mQuiet[minute >>> 6] |= 1L << minute;
+        } else {
+            mQuiet[minute >>> 6] &= ~(1L << minute);
+        }
+    }
+
+    /**
+     * Get the wall clock time of the next transition after now.
+     * Works in local days and minutes, so a daylight saving change moves the alarm with the clock.
+     * A transition in the hour skipped when the clocks go forward happens as they go forward,
+     * and one in the hour repeated when they go back happens the first time round.
+     *
+     * @param now current time, not changed
+     * @return time in ms, or -1 if the schedule never changes
+     */
+    public long nextTransitionTime(Calendar now) {
+        final int minuteOfDay = minuteOfDay(
+                now.get(Calendar.HOUR_OF_DAY), now.get(Calendar.MINUTE));
+        final int minutes = minutesUntilTransition(minuteOfWeek(
+                now.get(Calendar.DAY_OF_WEEK), now.get(Calendar.HOUR_OF_DAY), now.get(Calendar.MINUTE)));
+        if (minutes == NO_TRANSITION) {
+            return -1;
+        }
+
+        final int target = minuteOfDay + minutes;
+        Calendar next = (Calendar) now.clone();
+        next.add(Calendar.DAY_OF_YEAR, target / MINUTES_PER_DAY);
+        next.set(Calendar.HOUR_OF_DAY, (target % MINUTES_PER_DAY) / 60);
+        next.set(Calendar.MINUTE, target % 60);
+        next.set(Calendar.SECOND, 0);
+        next.set(Calendar.MILLISECOND, 0);
+        long time = next.getTimeInMillis();
+
+        final TimeZone zone = now.getTimeZone();
+        final int offset = zone.getOffset(time);
+        final int offsetBefore = zone.getOffset(time - DST_LOOKBACK_MS);
+        if (next.get(Calendar.HOUR_OF_DAY) * 60 + next.get(Calendar.MINUTE) != target % MINUTES_PER_DAY) {
+            // Skipped local time, back to the moment the clocks went forward
+            while (zone.getOffset(time - MINUTE_MS) == offset) {
+                time -= MINUTE_MS;
+            }
+        } else if (offsetBefore > offset && time - (offsetBefore - offset) > now.getTimeInMillis()
+                && zone.getOffset(time - (offsetBefore - offset)) == offsetBefore) {
+            // Repeated local time, the first one
+            time -= offsetBefore - offset;
+        }
+        return time;
+    }
+
+    public static int minuteOfDay(int hour, int minute) {
+        return (hour * 60) + minute;
+    }
+
+    /**
+     * @param dayOfWeek Calendar day eg Calendar.MONDAY
+     * @return minute from the start of Sunday
+     */
+    public static int minuteOfWeek(int dayOfWeek, int hour, int minute) {
+        return (dayOfWeek - Calendar.SUNDAY) * MINUTES_PER_DAY + minuteOfDay(hour, minute);
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.access.careplanning.schedule;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.media.AudioManager;
+
+import com.access.careplanning.IntentEnum;
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.policy.PolicyReceiver;
+import com.access.careplanning.util.AndroidClock;
+import com.access.careplanning.util.Clock;
+
+import java.util.Calendar;
+
+/**
+ * Keeps exactly one pending wakeup, for the next quiet period transition of the user's schedule.
+ * When it fires, the PolicyReceiver sets the ringer and schedules the transition after that,
+ * so the device wakes once per range start and end, whether or not the app is open.
+ */
+public class RingerScheduler {
+
+    private static final String TAG = "RingerScheduler";
+
+    public static final String ACTION_RINGER_ALARM = "com.access.careplanning.RINGER_ALARM";
+
+    private static final String PREFS_NAME = "ringer_scheduler";
+    private static final String PREF_USER_ID = "user_id";
+
+    private final Context mContext;
+    private final AlarmManager mAlarmManager;
+    private final Clock mClock;
+
+    public RingerScheduler(Context context) {
+        this(context, AndroidClock.INSTANCE);
+    }
+
+    public RingerScheduler(Context context, Clock clock) {
+        mContext = context.getApplicationContext();
+        mAlarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+        mClock = clock;
+    }
+
+    /**
+     * Set the user whose schedule the alarms are for, kept so alarms can be restored after a reboot
+     *
+     * @param userId user db id
+     */
+    public void setUserId(int userId) {
+        getPrefs().edit().putInt(PREF_USER_ID, userId).apply();
+    }
+
+    /**
+     * @return the user the alarms are for, or 0 if none
+     */
+    public int getUserId() {
+        return getPrefs().getInt(PREF_USER_ID, 0);
+    }
+
+    /**
+     * Set the single alarm for the next transition, replacing any existing one
+     *
+     * @param schedule quiet schedule
+     * @return alarm time in ms, or -1 if the schedule has no transitions so no alarm is set
+     */
+    public long schedule(QuietSchedule schedule) {
+        return setAlarm(schedule.nextTransitionTime(mClock.now()));
+    }
+
+    /**
+     * Set the single alarm, replacing any existing one
+     *
+     * @param time alarm time in ms, or -1 to cancel it
+     * @return the time
+     */
+    public long setAlarm(long time) {
+        if (time < 0) {
+            cancel();
+            return time;
+        }
+
+        if (mAlarmManager != null) {
+            final PendingIntent intent = getAlarmIntent();
+            try {
+                mAlarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, time, intent);
+            } catch (SecurityException se) {
+                // Exact alarms not allowed for this app, an inexact alarm is the best available
+                mAlarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, time, intent);
+            }
+        }
+        AppLog.d(TAG, "next ringer transition at %d", time);
+        return time;
+    }
+
+    public void cancel() {
+        if (mAlarmManager != null) {
+            mAlarmManager.cancel(getAlarmIntent());
+        }
+    }
+
+    /**
+     * One PendingIntent for every transition, so setting it again replaces the previous alarm
+     */
+    private PendingIntent getAlarmIntent() {
+        Intent intent = new Intent(mContext, PolicyReceiver.class);
+        intent.setAction(ACTION_RINGER_ALARM);
+        return PendingIntent.getBroadcast(mContext, IntentEnum.ALARM.getCode(), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private SharedPreferences getPrefs() {
+        return mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Get the ringer mode for a time, vibrate inside any quiet period
+     *
+     * @param schedule quiet schedule
+     * @param time     time to check
+     * @return AudioManager ringer mode
+     */
+    public static int getRingerMode(QuietSchedule schedule, Calendar time) {
+        return schedule.isQuiet(time.get(Calendar.DAY_OF_WEEK),
+                time.get(Calendar.HOUR_OF_DAY), time.get(Calendar.MINUTE))
+                ? AudioManager.RINGER_MODE_VIBRATE
+                : AudioManager.RINGER_MODE_NORMAL;
+    }
+
+}
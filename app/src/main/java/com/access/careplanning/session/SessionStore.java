@@ -0,0 +1,65 @@
+package com.access.careplanning.session;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * The last signed-in carer: Google id, user db id and name, so a returning carer goes straight
+ * to their settings without the Google sign in call or a user lookup. The Google account is
+ * still checked, in the background, and the session cleared if it's no longer signed in.
+ */
+public class SessionStore {
+
+    private static final String PREFS_NAME = "session";
+    private static final String PREF_GOOGLE_ID = "google_id";
+    private static final String PREF_USER_ID = "user_id";
+    private static final String PREF_NAME = "name";
+
+    private final SharedPreferences mPrefs;
+
+    public SessionStore(Context context) {
+        mPrefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Remember the signed-in carer, can be called on any thread
+     *
+     * @param googleId Google account id
+     * @param userId   user db id
+     * @param name     display name
+     */
+    public void save(String googleId, int userId, String name) {
+        mPrefs.edit()
+                .putString(PREF_GOOGLE_ID, googleId)
+                .putInt(PREF_USER_ID, userId)
+                .putString(PREF_NAME, name)
+                .apply();
+    }
+
+    public void clear() {
+        mPrefs.edit().clear().apply();
+    }
+
+    /**
+     * @return true if a carer has signed in and not been signed out since
+     */
+    public boolean hasSession() {
+        return getGoogleId() != null && getUserId() > 0;
+    }
+
+    public String getGoogleId() {
+        return mPrefs.getString(PREF_GOOGLE_ID, null);
+    }
+
+    /**
+     * @return user db id, or 0 if there's no session
+     */
+    public int getUserId() {
+        return mPrefs.getInt(PREF_USER_ID, 0);
+    }
+
+    public String getName() {
+        return mPrefs.getString(PREF_NAME, null);
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.access.careplanning.startup;
+
+import android.app.Application;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.access.careplanning.database.CarePlanningRepository;
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.metrics.Metrics;
+import com.access.careplanning.notification.NotificationDispatcher;
+import com.google.android.gms.auth.api.signin.GoogleSignIn;
+import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Startup work run in the background from the sign in screen, while it shows:
+ * open the database, prepare the common statements, load the last signed-in user's settings
+ * into the cache and start the notification thread. The main screen then finds the database
+ * open and its user cached. Each phase is timed, in the log and as startup.* metrics.
+ */
+public class StartupPipeline {
+
+    private static final String TAG = "StartupPipeline";
+
+    private final Application mApplication;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Phase times in ms, in the order run
+    private final Map<String, Long> mPhaseTimes = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public StartupPipeline(Application application) {
+        mApplication = application;
+    }
+
+    /**
+     * Start the pipeline, call when the UI is launched
+     */
+    public void start() {
+        record("launch", SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime());
+        mExecutor.execute(() -> {
+            final long start = SystemClock.elapsedRealtime();
+            CarePlanningRepository repository = phase("repository", () -> new CarePlanningRepository(mApplication));
+            phase("openDatabase", repository::openDatabase);
+            phase("warmStatements", repository::warmStatements);
+
+            GoogleSignInAccount account = phase("lastAccount", () -> GoogleSignIn.getLastSignedInAccount(mApplication));
+            if (account != null) {
+                phase("loadUser", () -> repository.preloadUser(account.getId()));
+            }
+            phase("services", () -> NotificationDispatcher.getInstance(mApplication));
+
+            record("pipeline", SystemClock.elapsedRealtime() - start);
+            AppLog.i(TAG, "startup phases (ms) %s", mPhaseTimes);
+        });
+    }
+
+    /**
+     * @return phase times in ms, in the order they ran
+     */
+    public Map<String, Long> getPhaseTimes() {
+        synchronized (mPhaseTimes) {
+            return new LinkedHashMap<>(mPhaseTimes);
+        }
+    }
+
+    private void phase(String name, Runnable work) {
+        phase(name, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    private <T> T phase(String name, Supplier<T> work) {
+        final long start = SystemClock.elapsedRealtime();
+        try {
+            return work.get();
+        } finally {
+            record(name, SystemClock.elapsedRealtime() - start);
+        }
+    }
+
+    private void record(String name, long ms) {
+        mPhaseTimes.put(name, ms);
+        if (Metrics.isEnabled()) {
+            Metrics.histogram("startup." + name).record(ms * 1000);
+        }
+    }
+
+}
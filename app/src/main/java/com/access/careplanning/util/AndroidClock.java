@@ -0,0 +1,32 @@
+package com.access.careplanning.util;
+
+import android.os.SystemClock;
+
+import java.util.TimeZone;
+
+/**
+ * The device clock
+ */
+public class AndroidClock implements Clock {
+
+    public static final AndroidClock INSTANCE = new AndroidClock();
+
+    private AndroidClock() {
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public TimeZone getTimeZone() {
+        return TimeZone.getDefault();
+    }
+
+}
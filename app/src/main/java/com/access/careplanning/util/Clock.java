@@ -0,0 +1,33 @@
+package com.access.careplanning.util;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Source of the time for the policy logic, so a simulated clock can replay days, daylight saving
+ * changes and timezone moves. Plain Java, so it can be used on the JVM.
+ */
+public interface Clock {
+
+    /**
+     * @return wall clock time in ms
+     */
+    long currentTimeMillis();
+
+    /**
+     * @return ms since boot, including deep sleep
+     */
+    long elapsedRealtime();
+
+    TimeZone getTimeZone();
+
+    /**
+     * @return a new calendar at the current time in the clock's timezone
+     */
+    default Calendar now() {
+        Calendar calendar = Calendar.getInstance(getTimeZone());
+        calendar.setTimeInMillis(currentTimeMillis());
+        return calendar;
+    }
+
+}
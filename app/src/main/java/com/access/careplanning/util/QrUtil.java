@@ -0,0 +1,20 @@
+package com.access.careplanning.util;
+
+/**
+ * QR code helpers. Plain Java, so they can be benchmarked on the JVM.
+ */
+public class QrUtil {
+
+    private static final String VALID_WIFI_QR_CODE = "WIFI_ON";
+
+    /**
+     * Check for the code that turns wifi on
+     *
+     * @param code scanned code
+     * @return true if the code contains the wifi on code, in any case
+     */
+    public static boolean isValidQR(String code) {
+        return code != null && code.toUpperCase().contains(VALID_WIFI_QR_CODE);
+    }
+
+}
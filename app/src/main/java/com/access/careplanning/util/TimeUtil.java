@@ -0,0 +1,32 @@
+package com.access.careplanning.util;
+
+import java.util.Locale;
+
+/**
+ * Time of day helpers. Plain Java, so they can be benchmarked on the JVM.
+ */
+public class TimeUtil {
+
+    /**
+     * Get the time as minutes since midnight
+     *
+     * @param hour hour of day
+     * @param min  minute
+     * @return minutes since midnight
+     */
+    public static int timeToMins(int hour, int min) {
+        return (hour * 60) + min;
+    }
+
+    /**
+     * Format a 24 hour time for display eg 8:05
+     *
+     * @param hour hour of day
+     * @param min  minute
+     * @return formatted time
+     */
+    public static String formatTime(int hour, int min) {
+        return String.format(Locale.US, "%d:%02d", hour, min);
+    }
+
+}
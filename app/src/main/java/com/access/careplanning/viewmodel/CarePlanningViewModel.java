@@ -3,18 +3,22 @@ package com.access.careplanning.viewmodel;
 import android.app.Application;
 import android.content.Context;
 import android.media.AudioManager;
-import android.util.Log;
 
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.ViewModel;
 
-import com.access.careplanning.database.Battery;
 import com.access.careplanning.database.CarePlanningRepository;
 import com.access.careplanning.database.TimeRange;
 import com.access.careplanning.database.User;
+import com.access.careplanning.database.UserWithSettings;
+import com.access.careplanning.log.AppLog;
+import com.access.careplanning.schedule.QuietSchedule;
+import com.access.careplanning.util.QrUtil;
+import com.access.careplanning.util.TimeUtil;
 
 import java.security.InvalidParameterException;
+import java.util.List;
 
 // ViewModels don't survive the app's process being killed in the background when the OS needs more resources.
 // For UI data that needs to survive process death due to running out of resources, you can use the Saved State module for ViewModels
@@ -23,7 +27,7 @@ public class CarePlanningViewModel extends AndroidViewModel {
     private static final String TAG = "CarePlanningVM";
 
     /**
-     * Default time range to use before a user has chosen their own range
+     * Default time range to use before a user has chosen their own range, copied when inserted
      */
     public static final TimeRange DEFAULT_TIME_RANGE = new TimeRange(10, 0, 15, 0);
 
@@ -32,23 +36,33 @@ public class CarePlanningViewModel extends AndroidViewModel {
      */
     public static final int DEFAULT_BATTERY_THRESHOLD = 10;
 
-    private static final String VALID_WIFI_QR_CODE = "WIFI_ON";
-
 
     private final CarePlanningRepository mRepository;
 
-    private int mUserId;
+    /**
+     * Single background queue for all of this view model's database work
+     */
+    private final SettingsWriteQueue mWriteQueue;
+
+    private volatile int mUserId;
+
+    /**
+     * The user's first time range, which is the one edited on the main screen
+     */
+    private volatile int mPrimaryRangeId;
+
+    /**
+     * Compiled quiet periods of all the user's time ranges
+     */
+    private final QuietSchedule mSchedule = new QuietSchedule();
 
-    private LiveData<TimeRange> mTimeRange;
-    private LiveData<Battery> mBattery;
+    private LiveData<UserWithSettings> mSettings;
 
     private int mStartHour;
     private int mStartMin;
     private int mEndHour;
     private int mEndMin;
-    private int mBatteryThreshold = 0;
-
-    private boolean mBatterySaverOn = false;
+    private int mBatteryThreshold = DEFAULT_BATTERY_THRESHOLD;
 
     /**
      * Interface for database initialisation completed
@@ -60,74 +74,137 @@ public class CarePlanningViewModel extends AndroidViewModel {
     public CarePlanningViewModel(Application application) {
         super(application);
         mRepository = new CarePlanningRepository(application);
+        mWriteQueue = new SettingsWriteQueue(mRepository);
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        mWriteQueue.shutdown();
     }
 
     /**
-     * Initial the user info in the database.
-     * - Create the user if this user is a new sign-in or get the user id
+     * Get the settings write queue, eg to check queue depth and write latency
+     *
+     * @return write queue
+     */
+    public SettingsWriteQueue getWriteQueue() {
+        return mWriteQueue;
+    }
+
+    /**
+     * Initial the user info in the database, in one transaction.
+     * - Load the user with their settings
+     * - Create the user if this user is a new sign-in
      * - Insert default time range data if not there for this user
+     * Runs first on the write queue, so later edits are for this user.
      *
      * @param user
      * @param defaultTimeRange
      * @param databaseInit
      */
     public void initUser(User user, TimeRange defaultTimeRange, IDatabaseInit databaseInit) {
-        new Thread(() -> {
-            User existingUser = mRepository.getUser(user.getGoogleId());
-            // Get the user id from an existing record, or insert a new user record
-            mUserId = (existingUser != null) ? existingUser.getId() : insert(user);
-
-            // Set up default time range for this user, insert won't overwrite if the record exists
-            defaultTimeRange.setUserId(mUserId);
-            insert(defaultTimeRange);
+        mWriteQueue.execute(() -> {
+            UserWithSettings settings = mRepository.getOrInsertUserWithSettings(user, defaultTimeRange);
+            mUserId = settings.getUser().getId();
+            mWriteQueue.setUserId(mUserId);
+            mPrimaryRangeId = settings.getTimeRanges().get(0).getId();
+            mWriteQueue.setPrimaryRangeId(mPrimaryRangeId);
 
             // Mark initialisation complete
             if (databaseInit != null) {
                 databaseInit.onComplete();
             }
-            Log.d(TAG, "initUser complete");
+            AppLog.d(TAG, "initUser complete");
+        });
+    }
+
+    /**
+     * Use the user from a saved session, without looking them up.
+     * The primary range id is found first on the write queue, so time edits made before it is
+     * known are written to it, inserting the default range if the user has none.
+     *
+     * @param userId user db id
+     */
+    public void initSession(int userId) {
+        mUserId = userId;
+        mWriteQueue.execute(() -> {
+            mWriteQueue.setUserId(userId);
+            TimeRange timeRange = DEFAULT_TIME_RANGE.copy();
+            timeRange.setUserId(userId);
+            mPrimaryRangeId = mRepository.insertIfAbsent(timeRange);
+            mWriteQueue.setPrimaryRangeId(mPrimaryRangeId);
+        });
+    }
 
-        }).start();
+    /**
+     * @return the user db id, or 0 before initUser has completed
+     */
+    public int getUserId() {
+        return mUserId;
     }
 
     /**
-     * Insert new user
+     * Get live data wrapped user with all their settings, lazy initialise.
+     * One observable for the whole screen, updated when any of the settings change.
      *
-     * @param user
-     * @return user db id
+     * @return live data user with settings
      */
-    private int insert(User user) {
-        mRepository.insert(user);
-        return mRepository.getUser(user.getGoogleId()).getId();
+    public LiveData<UserWithSettings> getSettings() {
+        if (mUserId > 0 && mSettings == null) {
+            mSettings = mRepository.getUserWithSettingsLiveData(mUserId);
+        }
+        return mSettings;
     }
 
     /**
-     * Get the time range object. Run on background thread.
+     * Update the schedule and shown values from the user's settings
      *
-     * @return time range
+     * @param settings user with settings, the time ranges in id order
      */
-    private TimeRange getTimeRange() {
-        return mRepository.getTimeRange(mUserId);
+    public void setSettings(UserWithSettings settings) {
+        setTimeRanges(settings.getTimeRanges());
+        mBatteryThreshold = settings.getBattery() != null
+                ? settings.getBattery().getThreshold() : DEFAULT_BATTERY_THRESHOLD;
     }
 
     /**
-     * Get live data wrapped time range, lazy initialise.
+     * Update the quiet schedule from the user's time ranges, only changed ranges are recompiled.
+     * The first range is the one shown and edited on the main screen.
      *
-     * @return live data time range
+     * @param ranges all the user's time ranges
      */
-    public LiveData<TimeRange> getTimeRangeLiveData() {
-        if (mTimeRange == null) {
-            mTimeRange = mRepository.getTimeRangeLiveData(mUserId);
+    public void setTimeRanges(List<TimeRange> ranges) {
+        mSchedule.setAll(ranges);
+        if (!ranges.isEmpty()) {
+            TimeRange primary = ranges.get(0);
+            mPrimaryRangeId = primary.getId();
+            setStartTime(primary.getStartHour(), primary.getStartMinute());
+            setEndTime(primary.getEndHour(), primary.getEndMinute());
         }
-        return mTimeRange;
     }
 
-    private void insert(TimeRange timeRange) {
-        mRepository.insert(timeRange);
+    /**
+     * Queue adding another quiet period for the user
+     *
+     * @param timeRange     range to add, for the days in its days mask
+     * @param writeComplete optional callback on the queue thread once written or failed
+     */
+    public void addQuietPeriod(TimeRange timeRange, SettingsWriteQueue.IWriteComplete writeComplete) {
+        mWriteQueue.executeWrite(() -> {
+            timeRange.setUserId(mUserId);
+            timeRange.setId((int) mRepository.addTimeRange(timeRange));
+        }, writeComplete);
     }
 
-    private void update(TimeRange timeRange) {
-        mRepository.update(timeRange);
+    /**
+     * Queue removing a quiet period
+     *
+     * @param rangeId       TimeRange id
+     * @param writeComplete optional callback on the queue thread once written or failed
+     */
+    public void removeQuietPeriod(int rangeId, SettingsWriteQueue.IWriteComplete writeComplete) {
+        mWriteQueue.executeWrite(() -> mRepository.deleteTimeRange(rangeId), writeComplete);
     }
 
 
@@ -148,143 +225,134 @@ public class CarePlanningViewModel extends AndroidViewModel {
     }
 
     /**
-     * Update the start time on background thread.
-     * For a more complex production app consider a long running thread or queue
+     * Queue an update of the start time, coalesced with any other pending time edits
      *
      * @param hour   start hour
      * @param minute start minute
      */
     public void updateStartTime(final int hour, final int minute) {
-        new Thread(() -> {
-            TimeRange range = getTimeRange();
-            if (range != null) {
-                range.setStartHour(hour);
-                range.setStartMinute(minute);
-                update(range);
-            }
-        }).start();
+        updateStartTime(hour, minute, null);
     }
 
     /**
-     * Update the end time on background thread.
-     * For a more complex production app consider a long running thread or queue
+     * Queue an update of the start time, coalesced with any other pending time edits
+     *
+     * @param hour          start hour
+     * @param minute        start minute
+     * @param writeComplete optional callback on a write thread once written or lost
+     */
+    public void updateStartTime(final int hour, final int minute,
+                                SettingsWriteQueue.IWriteComplete writeComplete) {
+        mWriteQueue.submitStartTime(mPrimaryRangeId, hour, minute, writeComplete);
+    }
+
+    /**
+     * Queue an update of the end time, coalesced with any other pending time edits
      *
      * @param hour   end hour
      * @param minute end minute
      */
     public void updateEndTime(final int hour, final int minute) {
-        new Thread(() -> {
-            TimeRange range = getTimeRange();
-            if (range != null) {
-                range.setEndHour(hour);
-                range.setEndMinute(minute);
-                update(range);
-            }
-        }).start();
-    }
-
-
-    public boolean isBatterySaverOn() {
-        return mBatterySaverOn;
-    }
-
-    public void setBatterySaverOn(boolean mBatterySaverOn) {
-        this.mBatterySaverOn = mBatterySaverOn;
+        updateEndTime(hour, minute, null);
     }
 
     /**
-     * Get live data wrapped battery, lazy initialise to avoid recreating
+     * Queue an update of the end time, coalesced with any other pending time edits
      *
-     * @return live data wrapped battery
+     * @param hour          end hour
+     * @param minute        end minute
+     * @param writeComplete optional callback on a write thread once written or lost
      */
-    public LiveData<Battery> getBattery() {
-        if (mUserId > 0 && mBattery == null) {
-            mBattery = mRepository.getBatteryLiveData(mUserId);
-        }
-        return mBattery;
+    public void updateEndTime(final int hour, final int minute,
+                              SettingsWriteQueue.IWriteComplete writeComplete) {
+        mWriteQueue.submitEndTime(mPrimaryRangeId, hour, minute, writeComplete);
     }
 
-    private void insert(Battery battery) {
-        mRepository.insert(battery);
-    }
 
-    private void update(Battery battery) {
-        mRepository.update(battery);
+    /**
+     * @return battery saving threshold shown, the default until the user sets one
+     */
+    public int getBatteryThreshold() {
+        return mBatteryThreshold;
     }
 
     /**
-     * Update or insert the battery threshold
+     * Queue an update or insert of the battery threshold, only the latest pending value is written
      *
      * @param percent
      */
     public void setBatterySaverPercent(int percent) {
+        setBatterySaverPercent(percent, null);
+    }
+
+    /**
+     * Queue an update or insert of the battery threshold, only the latest pending value is written
+     *
+     * @param percent
+     * @param writeComplete optional callback on a write thread once written or lost
+     */
+    public void setBatterySaverPercent(int percent, SettingsWriteQueue.IWriteComplete writeComplete) {
         if (percent < 0 || percent > 100) {
             throw new InvalidParameterException("Invalid battery percent");
         }
-
-        new Thread(() -> {
-            Battery battery = mRepository.getBattery(mUserId);
-            if (battery != null) {
-                battery.setThreshold(percent);
-                update(battery);
-            } else {
-                battery = new Battery();
-                battery.setUserId(mUserId);
-                battery.setThreshold(percent);
-                insert(battery);
-            }
-        }).start();
+        mWriteQueue.submitBatteryThreshold(percent, writeComplete);
     }
 
+    /**
+     * Set the start time shown for the first range. It can be after the end time,
+     * in which case the quiet period runs past midnight.
+     */
     public void setStartTime(int hour, int minute) {
         if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
             throw new InvalidParameterException("Hour or minute invalid");
         }
-        if (timeToMins(hour, minute) >= timeToMins(mEndHour, mEndMin)) {
-            throw new InvalidParameterException("Start time must be before the end time");
-        }
 
         mStartHour = hour;
         mStartMin = minute;
     }
 
+    /**
+     * Set the end time shown for the first range. It can be before the start time,
+     * in which case the quiet period runs past midnight.
+     */
     public void setEndTime(int hour, int minute) {
         if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
             throw new InvalidParameterException("Hour or minute invalid");
         }
-        if (timeToMins(hour, minute) <= timeToMins(mStartHour, mStartMin)) {
-            throw new InvalidParameterException("Start time must be before the end time");
-        }
 
         mEndHour = hour;
         mEndMin = minute;
     }
 
-    private int getStartTimeInMins() {
-        return timeToMins(mStartHour, mStartMin);
-    }
-
-    private int getEndTimeInMins() {
-        return timeToMins(mEndHour, mEndMin);
-    }
-
-    private boolean isTimeWithinPeriod(int hour, int minute) {
-        final int mins = timeToMins(hour, minute);
-        return mins >= getStartTimeInMins() && mins <= getEndTimeInMins();
+    /**
+     * Get the quiet schedule compiled from the user's time ranges
+     *
+     * @return schedule, only update it through setTimeRanges
+     */
+    public QuietSchedule getSchedule() {
+        return mSchedule;
     }
 
-    public int getCurrentRingerMode(int hour, int minute) {
-        return isTimeWithinPeriod(hour, minute)
+    /**
+     * Get the ringer mode for a time, vibrate inside any quiet period
+     *
+     * @param dayOfWeek Calendar day eg Calendar.MONDAY
+     * @param hour      hour of day
+     * @param minute    minute
+     * @return AudioManager ringer mode
+     */
+    public int getCurrentRingerMode(int dayOfWeek, int hour, int minute) {
+        return mSchedule.isQuiet(dayOfWeek, hour, minute)
                 ? AudioManager.RINGER_MODE_VIBRATE
                 : AudioManager.RINGER_MODE_NORMAL;
     }
 
     public static int timeToMins(int hour, int min) {
-        return (hour * 60) + min;
+        return TimeUtil.timeToMins(hour, min);
     }
 
     public static boolean isValidQR(String code) {
-        return code != null && code.toUpperCase().contains(VALID_WIFI_QR_CODE);
+        return QrUtil.isValidQR(code);
     }
 
 }
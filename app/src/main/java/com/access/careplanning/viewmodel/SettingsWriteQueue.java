@@ -0,0 +1,292 @@
+package com.access.careplanning.viewmodel;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.access.careplanning.database.CarePlanningRepository;
+import com.access.careplanning.log.AppLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serialised command queue for the settings of the signed-in user.
+ * All the view model database work runs in order on a single background thread.
+ * Edits to the same row (a time range or the battery) that are still waiting to be written are
+ * coalesced, so a burst of time picker or seekbar changes results in one database write.
+ * The coalesced writes go to the repository's write executor, in order with the user's other
+ * writes, and complete once they have committed.
+ */
+public class SettingsWriteQueue {
+
+    private static final String TAG = "SettingsWriteQueue";
+
+    /**
+     * Callback for when a queued edit has been written to the database, or lost
+     */
+    public interface IWriteComplete {
+        /**
+         * @param written true if the edit was written, false if the write failed and it was lost
+         */
+        void onComplete(boolean written);
+    }
+
+    private final CarePlanningRepository mRepository;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Pending edits for one time range row
+     */
+    private static class PendingRange {
+        boolean startPending;
+        int startHour;
+        int startMinute;
+        boolean endPending;
+        int endHour;
+        int endMinute;
+        int edits;
+        final List<IWriteComplete> callbacks = new ArrayList<>();
+    }
+
+    // Only accessed on the queue thread
+    private int mUserId;
+    private int mPrimaryRangeId;
+
+    // Pending edits, guarded by this
+    private final Map<Integer, PendingRange> mPendingRanges = new HashMap<>();
+    private int mBatteryThreshold;
+
+    private int mTimeRangeEdits;
+    private int mBatteryEdits;
+    private int mWritingEdits;
+    private boolean mBatteryScheduled;
+    private List<IWriteComplete> mBatteryCallbacks = new ArrayList<>();
+
+    // Statistics, guarded by this
+    private long mEditCount;
+    private long mWriteCount;
+    private long mLastWriteMs;
+    private long mTotalWriteMs;
+
+    SettingsWriteQueue(CarePlanningRepository repository) {
+        mRepository = repository;
+    }
+
+    /**
+     * Run a task on the queue thread, after everything already queued
+     *
+     * @param task task to run
+     */
+    void execute(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * Run a write on the queue thread, after everything already queued, then the callback
+     *
+     * @param write    database work
+     * @param callback optional callback on the queue thread once written or failed
+     */
+    void executeWrite(Runnable write, IWriteComplete callback) {
+        mExecutor.execute(() -> {
+            boolean written = false;
+            try {
+                write.run();
+                written = true;
+            } catch (RuntimeException e) {
+                AppLog.e(TAG, "Write failed", e);
+            }
+            if (callback != null) {
+                callback.onComplete(written);
+            }
+        });
+    }
+
+    /**
+     * Set the user that the queued edits are for. Call on the queue thread.
+     *
+     * @param userId user db id
+     */
+    void setUserId(int userId) {
+        mUserId = userId;
+    }
+
+    /**
+     * Set the range that edits submitted with range id 0 are for, ie those made before the view
+     * model knew the id. Call on the queue thread, before the edits' writes run.
+     *
+     * @param rangeId TimeRange id of the user's first range
+     */
+    void setPrimaryRangeId(int rangeId) {
+        mPrimaryRangeId = rangeId;
+    }
+
+    synchronized void submitStartTime(int rangeId, int hour, int minute, IWriteComplete callback) {
+        PendingRange pending = pendingRange(rangeId, callback);
+        pending.startPending = true;
+        pending.startHour = hour;
+        pending.startMinute = minute;
+    }
+
+    synchronized void submitEndTime(int rangeId, int hour, int minute, IWriteComplete callback) {
+        PendingRange pending = pendingRange(rangeId, callback);
+        pending.endPending = true;
+        pending.endHour = hour;
+        pending.endMinute = minute;
+    }
+
+    synchronized void submitBatteryThreshold(int percent, IWriteComplete callback) {
+        mBatteryThreshold = percent;
+        mBatteryEdits++;
+        mEditCount++;
+        if (callback != null) {
+            mBatteryCallbacks.add(callback);
+        }
+        if (!mBatteryScheduled) {
+            mBatteryScheduled = true;
+            mExecutor.execute(this::writeBattery);
+        }
+    }
+
+    /**
+     * Get the pending edits for a range, queueing a write for it if there isn't one already
+     */
+    private PendingRange pendingRange(int rangeId, IWriteComplete callback) {
+        PendingRange pending = mPendingRanges.get(rangeId);
+        if (pending == null) {
+            pending = new PendingRange();
+            mPendingRanges.put(rangeId, pending);
+            mExecutor.execute(() -> writeTimeRange(rangeId));
+        }
+        pending.edits++;
+        if (callback != null) {
+            pending.callbacks.add(callback);
+        }
+        mTimeRangeEdits++;
+        mEditCount++;
+        return pending;
+    }
+
+    /**
+     * Queue all the pending edits of a time range as one statement, runs on the queue thread
+     *
+     * @param pendingId TimeRange id, or 0 for the primary range
+     */
+    private void writeTimeRange(int pendingId) {
+        final PendingRange pending;
+        synchronized (this) {
+            pending = mPendingRanges.remove(pendingId);
+            mTimeRangeEdits -= pending.edits;
+            mWritingEdits += pending.edits;
+        }
+        final int rangeId = pendingId > 0 ? pendingId : mPrimaryRangeId;
+
+        final long start = SystemClock.elapsedRealtime();
+        final CarePlanningRepository.IWriteResult result = (committed) ->
+                completed(start, pending.edits, pending.callbacks, "time range", committed);
+        if (pending.startPending && pending.endPending) {
+            mRepository.updateTimeRange(mUserId, rangeId, pending.startHour, pending.startMinute,
+                    pending.endHour, pending.endMinute, result);
+        } else if (pending.startPending) {
+            mRepository.updateStartTime(mUserId, rangeId, pending.startHour, pending.startMinute, result);
+        } else {
+            mRepository.updateEndTime(mUserId, rangeId, pending.endHour, pending.endMinute, result);
+        }
+    }
+
+    /**
+     * Queue a write of the latest battery threshold, runs on the queue thread
+     */
+    private void writeBattery() {
+        final int threshold, edits;
+        final List<IWriteComplete> callbacks;
+        synchronized (this) {
+            threshold = mBatteryThreshold;
+            callbacks = mBatteryCallbacks;
+            edits = mBatteryEdits;
+            mBatteryEdits = 0;
+            mWritingEdits += edits;
+            mBatteryScheduled = false;
+            mBatteryCallbacks = new ArrayList<>();
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        mRepository.upsertBattery(mUserId, threshold,
+                (committed) -> completed(start, edits, callbacks, "battery", committed));
+    }
+
+    /**
+     * A queued write has committed or failed, runs on the write thread
+     */
+    private void completed(long start, int edits, List<IWriteComplete> callbacks, String row, boolean committed) {
+        final long latency = SystemClock.elapsedRealtime() - start;
+        synchronized (this) {
+            mWritingEdits -= edits;
+            if (committed) {
+                mWriteCount++;
+                mLastWriteMs = latency;
+                mTotalWriteMs += latency;
+            }
+        }
+        if (!committed) {
+            AppLog.w(TAG, "Lost %s write", row);
+        } else if (AppLog.isLoggable(Log.DEBUG)) {
+            AppLog.d(TAG, "wrote %s, %d edit(s) coalesced in %dms", row, edits, latency);
+        }
+        for (IWriteComplete callback : callbacks) {
+            callback.onComplete(committed);
+        }
+    }
+
+    /**
+     * Stop the queue thread once the queued work has finished
+     */
+    void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * @return number of edits accepted but not yet written
+     */
+    public synchronized int getQueueDepth() {
+        return mTimeRangeEdits + mBatteryEdits + mWritingEdits;
+    }
+
+    /**
+     * @return number of edits submitted
+     */
+    public synchronized long getEditCount() {
+        return mEditCount;
+    }
+
+    /**
+     * @return number of database writes, one per coalesced burst of edits
+     */
+    public synchronized long getWriteCount() {
+        return mWriteCount;
+    }
+
+    /**
+     * @return latency of the last write in milliseconds
+     */
+    public synchronized long getLastWriteLatencyMs() {
+        return mLastWriteMs;
+    }
+
+    /**
+     * @return mean write latency in milliseconds, or 0 if nothing written yet
+     */
+    public synchronized long getAverageWriteLatencyMs() {
+        return mWriteCount > 0 ? mTotalWriteMs / mWriteCount : 0;
+    }
+
+}
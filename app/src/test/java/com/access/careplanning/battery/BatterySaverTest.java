@@ -0,0 +1,76 @@
+package com.access.careplanning.battery;
+
+import com.access.careplanning.rules.DecisionTable;
+
+import org.junit.Test;
+
+import static com.access.careplanning.battery.BatterySaver.HYSTERESIS;
+import static com.access.careplanning.battery.BatterySaver.OFF;
+import static org.junit.Assert.*;
+
+public class BatterySaverTest {
+
+    @Test
+    public void entersLevelsAsTheBatteryDrops() {
+        BatterySaver saver = new BatterySaver(BatterySaver.defaultProfiles(20), OFF);
+        assertFalse(saver.update(50, false));
+        assertNull(saver.getProfile());
+        assertEquals(20, saver.getNextBelow());
+
+        assertTrue(saver.update(19, false));
+        assertEquals(1, saver.getLevel());
+        assertEquals(DecisionTable.WIFI_OFF, saver.getProfile().getWifi());
+        assertEquals(10, saver.getNextBelow());
+
+        assertTrue(saver.update(9, false));
+        assertEquals(2, saver.getLevel());
+        assertTrue(saver.getProfile().isFewerChecks());
+        assertEquals(-1, saver.getNextBelow());
+    }
+
+    @Test
+    public void skipsStraightToTheDeepestLevel() {
+        BatterySaver saver = new BatterySaver(BatterySaver.defaultProfiles(20), OFF);
+        assertTrue(saver.update(5, false));
+        assertEquals(2, saver.getLevel());
+    }
+
+    @Test
+    public void hysteresisStopsFlapping() {
+        BatterySaver saver = new BatterySaver(BatterySaver.defaultProfiles(20), OFF);
+        assertTrue(saver.update(19, false));
+        // Around the threshold, stays on
+        assertFalse(saver.update(20, false));
+        assertFalse(saver.update(19, false));
+        assertFalse(saver.update(20 + HYSTERESIS - 1, false));
+        assertEquals(1, saver.getLevel());
+
+        assertTrue(saver.update(20 + HYSTERESIS, false));
+        assertEquals(OFF, saver.getLevel());
+    }
+
+    @Test
+    public void chargerRecoversStraightAway() {
+        BatterySaver saver = new BatterySaver(BatterySaver.defaultProfiles(20), OFF);
+        saver.update(5, false);
+        assertTrue(saver.update(5, true));
+        assertEquals(OFF, saver.getLevel());
+        // Unplugged while still low
+        assertTrue(saver.update(6, false));
+        assertEquals(2, saver.getLevel());
+    }
+
+    @Test
+    public void restoresSavedLevel() {
+        BatterySaver saver = new BatterySaver(BatterySaver.defaultProfiles(20), 1);
+        // Inside the band, so the saved level holds without a transition
+        assertFalse(saver.update(22, false));
+        assertEquals(1, saver.getLevel());
+        assertFalse(saver.update(-1, false));
+
+        // Fewer levels, the level is kept in range
+        saver = new BatterySaver(BatterySaver.defaultProfiles(20).subList(0, 1), 2);
+        assertEquals(1, saver.getLevel());
+    }
+
+}
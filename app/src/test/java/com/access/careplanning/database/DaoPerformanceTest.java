@@ -0,0 +1,303 @@
+package com.access.careplanning.database;
+
+import android.app.Application;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.access.careplanning.rules.DecisionTable;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Latency percentiles of each DAO method on an in-memory database seeded with thousands of
+ * carers, run on the JVM with Robolectric's SQLite so it needs no device. Queries run on the
+ * test thread, and LiveData is timed from observing to the first value.
+ * The report is written to build/reports/dao-performance.txt, for comparing between changes
+ * on the same machine rather than against fixed limits.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, application = Application.class)
+public class DaoPerformanceTest {
+
+    private static final int USERS = 5000;
+    private static final int RANGES_PER_USER = 3;
+    private static final int RULES_PER_USER = 4;
+    private static final int EVENTS = 20000;
+    private static final int WARMUP = 50;
+    private static final int SAMPLES = 500;
+    // New carers provisioned per sample
+    private static final int PROVISION_STAFF = 20;
+
+    private static final File REPORT = new File("build/reports/dao-performance.txt");
+
+    // Sorted sample times in nanoseconds by method, from all the tests
+    private static final Map<String, long[]> sResults = new TreeMap<>();
+
+    @org.junit.Rule
+    public InstantTaskExecutorRule mInstantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private CarePlanningRoomDatabase mDb;
+    private CarePlanningDao mDao;
+    private EventDao mEventDao;
+    private final Random mRandom = new Random(1);
+
+    /**
+     * A DAO call for the i-th sample
+     */
+    private interface ICall {
+        void call(int i);
+    }
+
+    @Before
+    public void setUp() {
+        // Run queries and LiveData refreshes on the calling thread so they can be timed
+        mDb = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(),
+                CarePlanningRoomDatabase.class)
+                .allowMainThreadQueries()
+                .setQueryExecutor(Runnable::run)
+                .setTransactionExecutor(Runnable::run)
+                .build();
+        mDao = mDb.taskDao();
+        mEventDao = mDb.eventDao();
+
+        ProvisionResult result = mDao.provision(generate(USERS));
+        assertEquals(USERS, result.getUsersInserted());
+        mDb.runInTransaction(() -> {
+            for (int userId = 1; userId <= USERS; userId++) {
+                mDao.insertRules(rules(userId));
+            }
+        });
+        List<Event> events = new ArrayList<>(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            events.add(new Event(i * 60000L, 1 + i % USERS, Event.TYPE_RINGER, i % 3));
+        }
+        mEventDao.insertAll(events);
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        File dir = REPORT.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        try (PrintWriter writer = new PrintWriter(REPORT, "UTF-8")) {
+            writer.println(String.format(Locale.US, "%d users, %d time ranges, %d rules, %d events, "
+                            + "%d samples per method, times in microseconds",
+                    USERS, USERS * RANGES_PER_USER, USERS * RULES_PER_USER, EVENTS, SAMPLES));
+            writer.println(String.format(Locale.US, "%-36s %9s %9s %9s %9s", "method", "p50", "p90", "p99", "max"));
+            for (Map.Entry<String, long[]> entry : sResults.entrySet()) {
+                final long[] nanos = entry.getValue();
+                writer.println(String.format(Locale.US, "%-36s %9.1f %9.1f %9.1f %9.1f", entry.getKey(),
+                        percentile(nanos, 50), percentile(nanos, 90), percentile(nanos, 99),
+                        nanos[nanos.length - 1] / 1000.0));
+            }
+        }
+    }
+
+    /**
+     * @param sorted sample times in nanoseconds, sorted
+     * @return the nearest rank percentile in microseconds
+     */
+    private static double percentile(long[] sorted, int percent) {
+        final int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank - 1, 0)] / 1000.0;
+    }
+
+    private static String googleId(int i) {
+        return String.format(Locale.US, "1%020d", i);
+    }
+
+    /**
+     * Generates the carers as they are provisioned, each with a night, lunch and evening range
+     */
+    private static Iterator<StaffRecord> generate(final int count) {
+        return new Iterator<StaffRecord>() {
+            private int mNext;
+
+            @Override
+            public boolean hasNext() {
+                return mNext < count;
+            }
+
+            @Override
+            public StaffRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final int i = mNext++;
+                TimeRange night = new TimeRange(22, 0, 6, 0);
+                TimeRange lunch = new TimeRange(12, i % 60, 13, 0);
+                TimeRange evening = new TimeRange(18, 0, 19, i % 60);
+                return new StaffRecord(googleId(i), "Carer " + i,
+                        Arrays.asList(night, lunch, evening), 10 + i % 20);
+            }
+        };
+    }
+
+    /**
+     * A sample's new carers, with ids apart from the seeded ones
+     */
+    private static List<StaffRecord> newStaff(String prefix, int sample) {
+        List<StaffRecord> records = new ArrayList<>(PROVISION_STAFF);
+        for (int i = 0; i < PROVISION_STAFF; i++) {
+            TimeRange night = new TimeRange(22, 0, 6, 0);
+            TimeRange lunch = new TimeRange(12, i % 60, 13, 0);
+            records.add(new StaffRecord(String.format(Locale.US, "%s%06d%04d", prefix, sample, i),
+                    "Carer " + i, Arrays.asList(night, lunch), 10 + i % 20));
+        }
+        return records;
+    }
+
+    private static List<Rule> rules(int userId) {
+        List<Rule> rules = new ArrayList<>(RULES_PER_USER);
+        for (int i = 0; i < RULES_PER_USER; i++) {
+            Rule rule = new Rule(i,
+                    DecisionTable.IN_QUIET_PERIOD, DecisionTable.IN_QUIET_PERIOD,
+                    DecisionTable.RINGER_VIBRATE, DecisionTable.UNSET, DecisionTable.NOTIFY_ON);
+            rule.setUserId(userId);
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    private int randomUserId() {
+        return 1 + mRandom.nextInt(USERS);
+    }
+
+    /**
+     * Time the call, after warming up the statement cache
+     */
+    private void measure(String method, ICall call) {
+        for (int i = 0; i < WARMUP; i++) {
+            call.call(i);
+        }
+        final long[] nanos = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            final long start = System.nanoTime();
+            call.call(WARMUP + i);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        sResults.put(method, nanos);
+    }
+
+    /**
+     * @return the first value of the LiveData, delivered while observing
+     */
+    private static <T> T firstValue(LiveData<T> liveData) {
+        final List<T> values = new ArrayList<>(1);
+        Observer<T> observer = values::add;
+        liveData.observeForever(observer);
+        liveData.removeObserver(observer);
+        assertEquals(1, values.size());
+        return values.get(0);
+    }
+
+    @Test
+    public void userQueries() {
+        measure("getUser", (i) -> assertNotNull(mDao.getUser(googleId(randomUserId() - 1))));
+        measure("getUserId", (i) -> assertNotNull(mDao.getUserId(googleId(randomUserId() - 1))));
+        measure("getUserId missing", (i) -> assertNull(mDao.getUserId("2" + i)));
+        measure("getUserWithSettings", (i) -> {
+            UserWithSettings settings = mDao.getUserWithSettings(googleId(randomUserId() - 1));
+            assertEquals(RANGES_PER_USER, settings.getTimeRanges().size());
+        });
+        measure("getOrInsertUserId", (i) -> mDao.getOrInsertUserId(new User(googleId(randomUserId() - 1), "")));
+    }
+
+    @Test
+    public void settingsQueries() {
+        measure("getTimeRange", (i) -> assertNotNull(mDao.getTimeRange(randomUserId())));
+        measure("getTimeRanges", (i) -> assertEquals(RANGES_PER_USER, mDao.getTimeRanges(randomUserId()).size()));
+        measure("getFirstTimeRangeId", (i) -> assertNotNull(mDao.getFirstTimeRangeId(randomUserId())));
+        measure("getBattery", (i) -> assertNotNull(mDao.getBattery(randomUserId())));
+        measure("getRules", (i) -> assertEquals(RULES_PER_USER, mDao.getRules(randomUserId()).size()));
+    }
+
+    @Test
+    public void liveDataQueries() {
+        measure("getUserLiveData", (i) -> assertNotNull(firstValue(mDao.getUserLiveData(googleId(randomUserId() - 1)))));
+        measure("getUserWithSettingsLiveData", (i) -> assertNotNull(firstValue(mDao.getUserWithSettingsLiveData(randomUserId()))));
+        measure("getTimeRangeLiveData", (i) -> assertNotNull(firstValue(mDao.getTimeRangeLiveData(randomUserId()))));
+        measure("getTimeRangesLiveData", (i) -> assertEquals(RANGES_PER_USER,
+                firstValue(mDao.getTimeRangesLiveData(randomUserId())).size()));
+        measure("getBatteryLiveData", (i) -> assertNotNull(firstValue(mDao.getBatteryLiveData(randomUserId()))));
+    }
+
+    @Test
+    public void writes() {
+        measure("updateTimeRange", (i) -> assertEquals(1,
+                mDao.updateTimeRange(randomUserId() * RANGES_PER_USER, 21, i % 60, 7, 0)));
+        measure("updateStartTime", (i) -> assertEquals(1, mDao.updateStartTime(randomUserId() * RANGES_PER_USER, 21, i % 60)));
+        measure("insertIfAbsent", (i) -> {
+            TimeRange timeRange = new TimeRange(22, 0, 6, 0);
+            timeRange.setUserId(randomUserId());
+            mDao.insertIfAbsent(timeRange);
+        });
+        measure("upsertBattery", (i) -> mDao.upsertBattery(randomUserId(), 10 + i % 20));
+        measure("upsertSaverLevel", (i) -> mDao.upsertSaverLevel(randomUserId(), 15, i % 3, i));
+        measure("setRules", (i) -> {
+            final int userId = randomUserId();
+            mDao.setRules(userId, rules(userId));
+        });
+    }
+
+    /**
+     * Provisioning streamed in one transaction, against a statement and transaction per row
+     * as the app writes settings
+     */
+    @Test
+    public void provisioning() {
+        measure("provision " + PROVISION_STAFF + " batched", (i) -> assertEquals(PROVISION_STAFF,
+                mDao.provision(newStaff("b", i).iterator()).getUsersInserted()));
+        measure("provision " + PROVISION_STAFF + " one at a time", (i) -> {
+            for (StaffRecord record : newStaff("s", i)) {
+                final int id = mDao.getOrInsertUserId(new User(record.getGoogleId(), record.getName()));
+                for (TimeRange timeRange : record.getTimeRanges()) {
+                    timeRange.setUserId(id);
+                    mDao.insert(timeRange);
+                }
+                mDao.upsertBattery(id, record.getBatteryThreshold());
+            }
+        });
+    }
+
+    @Test
+    public void eventQueries() {
+        measure("getLatestEvents", (i) -> assertEquals(50, mEventDao.getLatestEvents(50).size()));
+        measure("getEventsBefore", (i) -> assertEquals(50,
+                mEventDao.getEventsBefore((1000 + mRandom.nextInt(EVENTS - 1000)) * 60000L, Long.MAX_VALUE, 50).size()));
+        measure("getEventCount", (i) -> assertEquals(EVENTS, mEventDao.getEventCount()));
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.access.careplanning.database;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventBufferTest {
+
+    private static Event event(int value) {
+        return new Event(value, 1, Event.TYPE_RINGER, value);
+    }
+
+    @Test
+    public void drainsInOrder() {
+        EventBuffer buffer = new EventBuffer(4);
+        assertEquals(1, buffer.add(event(1)));
+        assertEquals(2, buffer.add(event(2)));
+        List<Event> events = buffer.drain();
+        assertEquals(2, events.size());
+        assertEquals(1, events.get(0).getValue());
+        assertEquals(2, events.get(1).getValue());
+        assertEquals(0, buffer.size());
+        assertTrue(buffer.drain().isEmpty());
+    }
+
+    @Test
+    public void overwritesOldestWhenFull() {
+        EventBuffer buffer = new EventBuffer(3);
+        for (int i = 1; i <= 5; i++) {
+            buffer.add(event(i));
+        }
+        assertEquals(3, buffer.size());
+        assertEquals(2, buffer.getDropped());
+        List<Event> events = buffer.drain();
+        assertEquals(3, events.get(0).getValue());
+        assertEquals(5, events.get(2).getValue());
+
+        // Wraps correctly after a drain
+        buffer.add(event(6));
+        assertEquals(6, buffer.drain().get(0).getValue());
+    }
+
+    @Test
+    public void requeuesBeforeNewerEvents() {
+        EventBuffer buffer = new EventBuffer(4);
+        buffer.add(event(1));
+        buffer.add(event(2));
+        buffer.add(event(3));
+        List<Event> failed = buffer.drain();
+        buffer.add(event(4));
+        buffer.add(event(5));
+
+        // Oldest dropped to make room
+        buffer.requeue(failed);
+        assertEquals(4, buffer.size());
+        assertEquals(1, buffer.getDropped());
+        List<Event> events = buffer.drain();
+        assertEquals(2, events.get(0).getValue());
+        assertEquals(3, events.get(1).getValue());
+        assertEquals(4, events.get(2).getValue());
+        assertEquals(5, events.get(3).getValue());
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.access.careplanning.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LogBufferTest {
+
+    // android.util.Log levels
+    private static final int DEBUG = 3;
+    private static final int WARN = 5;
+
+    @Test
+    public void dumpsInOrder() {
+        LogBuffer buffer = new LogBuffer(4);
+        buffer.add(0, DEBUG, "Tag", "first");
+        buffer.add(1, WARN, "Other", "second");
+        assertEquals(2, buffer.size());
+        String[] lines = buffer.dump().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(" D/Tag: first"));
+        assertTrue(lines[1], lines[1].endsWith(" W/Other: second"));
+    }
+
+    @Test
+    public void overwritesOldestWhenFull() {
+        LogBuffer buffer = new LogBuffer(3);
+        for (int i = 1; i <= 5; i++) {
+            buffer.add(i, DEBUG, "Tag", "line " + i);
+        }
+        assertEquals(3, buffer.size());
+        assertEquals(2, buffer.getDropped());
+        String[] lines = buffer.dump().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].contains("2 earlier line(s) dropped"));
+        assertTrue(lines[1], lines[1].endsWith("line 3"));
+        assertTrue(lines[3], lines[3].endsWith("line 5"));
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals("", buffer.dump());
+        buffer.add(6, DEBUG, "Tag", "line 6");
+        assertTrue(buffer.dump().endsWith("line 6\n"));
+    }
+
+}
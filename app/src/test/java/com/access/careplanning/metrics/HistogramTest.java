@@ -0,0 +1,45 @@
+package com.access.careplanning.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void buckets() {
+        assertEquals(0, Histogram.bucket(0));
+        assertEquals(1, Histogram.bucket(1));
+        assertEquals(2, Histogram.bucket(3));
+        assertEquals(11, Histogram.bucket(1500));
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(100);
+        }
+        histogram.record(5000);
+        histogram.record(20000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(20000, histogram.getMaxMicros());
+        assertEquals((98 * 100 + 25000) / 100.0, histogram.getMeanMicros(), 0.001);
+        // Within a factor of 2 above the value
+        assertEquals(128, histogram.getPercentileMicros(50));
+        assertEquals(8192, histogram.getPercentileMicros(99));
+        assertEquals(20000, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    public void stopSkippedWhenDisabled() {
+        Histogram histogram = new Histogram();
+        histogram.stop(0);
+        assertEquals(0, histogram.getCount());
+        histogram.stop(System.nanoTime());
+        assertEquals(1, histogram.getCount());
+    }
+
+}
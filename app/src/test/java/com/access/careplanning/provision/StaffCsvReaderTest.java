@@ -0,0 +1,59 @@
+package com.access.careplanning.provision;
+
+import com.access.careplanning.database.StaffRecord;
+import com.access.careplanning.database.TimeRange;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.security.InvalidParameterException;
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+public class StaffCsvReaderTest {
+
+    @Test
+    public void readsRecords() {
+        StaffCsvReader reader = new StaffCsvReader(new StringReader(
+                "google_id,name,battery_threshold,quiet_periods\n"
+                        + "# comment\n"
+                        + "111,Ann Smith,15,22:00-06:00;12:30-13:00@62\n"
+                        + "\n"
+                        + "222, Bob ,,\n"));
+
+        assertTrue(reader.hasNext());
+        StaffRecord ann = reader.next();
+        assertEquals("111", ann.getGoogleId());
+        assertEquals("Ann Smith", ann.getName());
+        assertEquals(Integer.valueOf(15), ann.getBatteryThreshold());
+        assertEquals(2, ann.getTimeRanges().size());
+        TimeRange night = ann.getTimeRanges().get(0);
+        assertEquals(22, night.getStartHour());
+        assertEquals(6, night.getEndHour());
+        assertEquals(TimeRange.ALL_DAYS, night.getDays());
+        TimeRange lunch = ann.getTimeRanges().get(1);
+        assertEquals(30, lunch.getStartMinute());
+        assertEquals(62, lunch.getDays());
+        assertEquals(0, lunch.getDays() & TimeRange.dayBit(Calendar.SUNDAY));
+
+        StaffRecord bob = reader.next();
+        assertEquals("Bob", bob.getName());
+        assertNull(bob.getBatteryThreshold());
+        assertNull(bob.getTimeRanges());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void reportsLine() {
+        StaffCsvReader reader = new StaffCsvReader(new StringReader("111,Ann,15,\n222,Bob,101,\n"));
+        reader.next();
+        try {
+            reader.next();
+            fail("Invalid threshold read");
+        } catch (InvalidParameterException ipe) {
+            assertTrue(ipe.getMessage().startsWith("Line 2:"));
+        }
+    }
+
+}
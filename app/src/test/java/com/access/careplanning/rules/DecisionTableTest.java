@@ -0,0 +1,49 @@
+package com.access.careplanning.rules;
+
+import com.access.careplanning.database.Rule;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.access.careplanning.rules.DecisionTable.*;
+import static org.junit.Assert.*;
+
+public class DecisionTableTest {
+
+    @Test
+    public void defaultRules() {
+        DecisionTable table = DecisionTable.compile(Collections.emptyList());
+
+        final int quiet = table.evaluate(IN_QUIET_PERIOD | WEEKDAY);
+        assertEquals(RINGER_VIBRATE, ringer(quiet));
+        assertEquals(UNSET, wifi(quiet));
+        assertEquals(NOTIFY_ON, DecisionTable.notify(quiet));
+
+        assertEquals(RINGER_NORMAL, ringer(table.evaluate(0)));
+        assertEquals(WIFI_OFF, wifi(table.evaluate(BELOW_BATTERY_THRESHOLD | CHARGING)));
+    }
+
+    @Test
+    public void firstMatchingRuleWinsPerAction() {
+        DecisionTable table = DecisionTable.compile(Arrays.asList(
+                // Fallback, listed first to check the priority order is used
+                new Rule(9, 0, 0, RINGER_NORMAL, WIFI_ON, NOTIFY_ON),
+                // Silent in weekday quiet periods, without notifications
+                new Rule(1, IN_QUIET_PERIOD | WEEKDAY, IN_QUIET_PERIOD | WEEKDAY, RINGER_SILENT, UNSET, NOTIFY_OFF),
+                // Wifi off below the threshold unless charging
+                new Rule(2, BELOW_BATTERY_THRESHOLD | CHARGING, BELOW_BATTERY_THRESHOLD, UNSET, WIFI_OFF, UNSET)));
+
+        int actions = table.evaluate(IN_QUIET_PERIOD | WEEKDAY | BELOW_BATTERY_THRESHOLD);
+        assertEquals(RINGER_SILENT, ringer(actions));
+        assertEquals(WIFI_OFF, wifi(actions));
+        assertEquals(NOTIFY_OFF, DecisionTable.notify(actions));
+
+        actions = table.evaluate(IN_QUIET_PERIOD | BELOW_BATTERY_THRESHOLD | CHARGING);
+        assertEquals(RINGER_NORMAL, ringer(actions));
+        assertEquals(WIFI_ON, wifi(actions));
+        assertEquals(NOTIFY_ON, DecisionTable.notify(actions));
+    }
+
+}
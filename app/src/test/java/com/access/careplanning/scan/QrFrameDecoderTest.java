@@ -0,0 +1,81 @@
+package com.access.careplanning.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class QrFrameDecoderTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    /**
+     * Make a grey luminance frame with a QR code of the given size in the centre
+     */
+    private static byte[] frame(String text, int size) throws Exception {
+        BitMatrix matrix = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, size, size);
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(data, (byte) 200);
+        final int left = (WIDTH - size) / 2;
+        final int top = (HEIGHT - size) / 2;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (matrix.get(x, y)) {
+                    data[(top + y) * WIDTH + left + x] = 10;
+                }
+            }
+        }
+        return data;
+    }
+
+    @Test
+    public void decodesAtHalfResolution() throws Exception {
+        QrFrameDecoder decoder = new QrFrameDecoder();
+        Result result = decoder.decode(frame("WIFI_ON", 240), WIDTH, HEIGHT);
+        assertNotNull(result);
+        assertEquals("WIFI_ON", result.getText());
+        assertFalse(decoder.isLastFullResolution());
+    }
+
+    @Test
+    public void fallsBackToFullResolution() throws Exception {
+        // Modules of about one pixel are lost at half resolution
+        final String text = "WIFI_ON https://example.com/care/planning/room/12/wifi";
+        QrFrameDecoder decoder = new QrFrameDecoder();
+        Result result = decoder.decode(frame(text, 41), WIDTH, HEIGHT);
+        assertNotNull(result);
+        assertEquals(text, result.getText());
+        assertTrue(decoder.isLastFullResolution());
+    }
+
+    @Test
+    public void noCode() {
+        QrFrameDecoder decoder = new QrFrameDecoder();
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        assertNull(decoder.decode(data, WIDTH, HEIGHT));
+        assertTrue(decoder.isLastFullResolution());
+    }
+
+    @Test
+    public void outsideCentreIsIgnored() throws Exception {
+        BitMatrix matrix = new QRCodeWriter().encode("WIFI_ON", BarcodeFormat.QR_CODE, 100, 100);
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(data, (byte) 200);
+        for (int y = 0; y < 100; y++) {
+            for (int x = 0; x < 100; x++) {
+                if (matrix.get(x, y)) {
+                    data[y * WIDTH + x] = 10;
+                }
+            }
+        }
+        assertNull(new QrFrameDecoder().decode(data, WIDTH, HEIGHT));
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.access.careplanning.schedule;
+
+import com.access.careplanning.database.TimeRange;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class QuietScheduleTest {
+
+    private static TimeRange range(int id, int hour, int min, int hourEnd, int minuteEnd, int days) {
+        TimeRange range = new TimeRange(hour, min, hourEnd, minuteEnd);
+        range.setId(id);
+        range.setDays(days);
+        return range;
+    }
+
+    @Test
+    public void singleRange() {
+        QuietSchedule schedule = new QuietSchedule();
+        schedule.put(range(1, 10, 0, 15, 0, TimeRange.ALL_DAYS));
+
+        assertFalse(schedule.isQuiet(Calendar.MONDAY, 9, 59));
+        assertTrue(schedule.isQuiet(Calendar.MONDAY, 10, 0));
+        assertTrue(schedule.isQuiet(Calendar.MONDAY, 14, 59));
+        assertFalse(schedule.isQuiet(Calendar.MONDAY, 15, 0));
+        assertTrue(schedule.isQuiet(Calendar.SUNDAY, 12, 0));
+        assertTrue(schedule.isQuiet(Calendar.SATURDAY, 12, 0));
+    }
+
+    @Test
+    public void crossesMidnight() {
+        QuietSchedule schedule = new QuietSchedule();
+        schedule.put(range(1, 22, 0, 6, 0, TimeRange.dayBit(Calendar.SATURDAY)));
+
+        assertTrue(schedule.isQuiet(Calendar.SATURDAY, 23, 59));
+        assertTrue(schedule.isQuiet(Calendar.SUNDAY, 0, 0));
+        assertTrue(schedule.isQuiet(Calendar.SUNDAY, 5, 59));
+        assertFalse(schedule.isQuiet(Calendar.SUNDAY, 6, 0));
+        assertFalse(schedule.isQuiet(Calendar.SUNDAY, 23, 0));
+        assertFalse(schedule.isQuiet(Calendar.FRIDAY, 23, 0));
+    }
+
+    @Test
+    public void weekdays() {
+        QuietSchedule schedule = new QuietSchedule();
+        schedule.put(range(1, 9, 0, 10, 0,
+                TimeRange.dayBit(Calendar.MONDAY) | TimeRange.dayBit(Calendar.WEDNESDAY)));
+
+        assertTrue(schedule.isQuiet(Calendar.MONDAY, 9, 30));
+        assertFalse(schedule.isQuiet(Calendar.TUESDAY, 9, 30));
+        assertTrue(schedule.isQuiet(Calendar.WEDNESDAY, 9, 30));
+    }
+
+    @Test
+    public void transitions() {
+        QuietSchedule schedule = new QuietSchedule();
+        assertEquals(QuietSchedule.NO_TRANSITION, schedule.minutesUntilTransition(0));
+
+        schedule.put(range(1, 10, 0, 15, 0, TimeRange.ALL_DAYS));
+        final int monday9 = QuietSchedule.minuteOfWeek(Calendar.MONDAY, 9, 0);
+        assertEquals(60, schedule.minutesUntilTransition(monday9));
+        assertEquals(300, schedule.minutesUntilTransition(monday9 + 60));
+
+        // Last range of the week wraps to Sunday morning
+        final int saturday16 = QuietSchedule.minuteOfWeek(Calendar.SATURDAY, 16, 0);
+        assertEquals(8 * 60 + 10 * 60, schedule.minutesUntilTransition(saturday16));
+
+        schedule.put(range(1, 0, 0, 0, 0, TimeRange.ALL_DAYS));
+        assertEquals(QuietSchedule.NO_TRANSITION, schedule.minutesUntilTransition(monday9));
+    }
+
+    @Test
+    public void incrementalUpdates() {
+        QuietSchedule schedule = new QuietSchedule();
+        schedule.setAll(Arrays.asList(
+                range(1, 10, 0, 12, 0, TimeRange.ALL_DAYS),
+                range(2, 11, 0, 13, 0, TimeRange.ALL_DAYS)));
+        assertTrue(schedule.isQuiet(Calendar.MONDAY, 12, 30));
+
+        // Overlapping minutes stay quiet while another range still covers them
+        schedule.remove(2);
+        assertTrue(schedule.isQuiet(Calendar.MONDAY, 11, 30));
+        assertFalse(schedule.isQuiet(Calendar.MONDAY, 12, 30));
+
+        schedule.setAll(Arrays.asList(range(1, 14, 0, 15, 0, TimeRange.ALL_DAYS)));
+        assertFalse(schedule.isQuiet(Calendar.MONDAY, 11, 0));
+        assertTrue(schedule.isQuiet(Calendar.MONDAY, 14, 0));
+        assertEquals(1, schedule.size());
+
+        schedule.setAll(new ArrayList<>());
+        assertFalse(schedule.isQuiet(Calendar.MONDAY, 14, 0));
+        assertEquals(0, schedule.size());
+    }
+
+    private static final TimeZone LONDON = TimeZone.getTimeZone("Europe/London");
+
+    private static Calendar london(int year, int month, int day, int hour, int minute) {
+        return time(LONDON, year, month, day, hour, minute);
+    }
+
+    private static Calendar time(TimeZone zone, int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute, 0);
+        return calendar;
+    }
+
+    @Test
+    public void nextTransitionInSkippedHour() {
+        QuietSchedule schedule = new QuietSchedule();
+        schedule.put(range(1, 1, 30, 7, 0, TimeRange.ALL_DAYS));
+
+        // Clocks go forward from 1:00 to 2:00, so the period starts at 2:00
+        final long time = schedule.nextTransitionTime(london(2026, Calendar.MARCH, 29, 0, 0));
+        assertEquals(london(2026, Calendar.MARCH, 29, 2, 0).getTimeInMillis(), time);
+    }
+
+    @Test
+    public void nextTransitionInRepeatedHour() {
+        QuietSchedule schedule = new QuietSchedule();
+        schedule.put(range(1, 1, 30, 7, 0, TimeRange.ALL_DAYS));
+
+        // Clocks go back from 2:00 to 1:00, the first 1:30 is at 0:30 UTC
+        final long time = schedule.nextTransitionTime(london(2026, Calendar.OCTOBER, 25, 0, 0));
+        assertEquals(time(TimeZone.getTimeZone("UTC"), 2026, Calendar.OCTOBER, 25, 0, 30).getTimeInMillis(), time);
+
+        assertEquals(-1, new QuietSchedule().nextTransitionTime(london(2026, Calendar.OCTOBER, 25, 0, 0)));
+    }
+
+}
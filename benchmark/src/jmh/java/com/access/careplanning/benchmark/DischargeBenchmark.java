@@ -0,0 +1,35 @@
+package com.access.careplanning.benchmark;
+
+import com.access.careplanning.battery.DischargeEstimator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Battery discharge estimate, run for every battery broadcast
+ */
+@State(Scope.Thread)
+public class DischargeBenchmark {
+
+    private DischargeEstimator mEstimator;
+    private long mTime;
+    private int mLevel;
+
+    @Setup
+    public void setUp() {
+        mEstimator = new DischargeEstimator();
+        mTime = 0;
+        mLevel = 100;
+    }
+
+    @Benchmark
+    public long sampleAndPredict() {
+        mTime += 1000 * 60;
+        mLevel = mLevel > 1 ? mLevel - 1 : 100;
+        mEstimator.sample(mTime, mLevel, false);
+        return mEstimator.millisUntilBelow(20);
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.access.careplanning.benchmark;
+
+import com.access.careplanning.scan.QrFrameDecoder;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+
+/**
+ * QR decode of one preview frame, with a large code that decodes at half resolution,
+ * a small one that needs the full resolution pass, and no code at all
+ */
+@State(Scope.Thread)
+public class QrDecodeBenchmark {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    /**
+     * Size of the code in pixels, 0 for none
+     */
+    @Param({"240", "41", "0"})
+    public int codeSize;
+
+    private QrFrameDecoder mDecoder;
+    private byte[] mFrame;
+
+    @Setup
+    public void setUp() throws WriterException {
+        mDecoder = new QrFrameDecoder();
+        mFrame = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(mFrame, (byte) 200);
+        if (codeSize > 0) {
+            BitMatrix matrix = new QRCodeWriter().encode("WIFI_ON https://example.com/care/planning/room/12/wifi",
+                    BarcodeFormat.QR_CODE, codeSize, codeSize);
+            final int left = (WIDTH - codeSize) / 2;
+            final int top = (HEIGHT - codeSize) / 2;
+            for (int y = 0; y < codeSize; y++) {
+                for (int x = 0; x < codeSize; x++) {
+                    if (matrix.get(x, y)) {
+                        mFrame[(top + y) * WIDTH + left + x] = 10;
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Result decode() {
+        return mDecoder.decode(mFrame, WIDTH, HEIGHT);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.access.careplanning.benchmark;
+
+import com.access.careplanning.database.Rule;
+import com.access.careplanning.rules.DecisionTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Policy rule evaluation per event, which should be constant time whatever the number of rules
+ * and allocate nothing, and compiling, which only happens when the rules change.
+ */
+@State(Scope.Thread)
+public class RuleBenchmark {
+
+    @Param({"3", "16", "64"})
+    public int rules;
+
+    private List<Rule> mRules;
+    private DecisionTable mTable;
+    private int mState;
+
+    @Setup
+    public void setUp() {
+        mRules = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            final int mask = (i * 7 + 1) & 31;
+            mRules.add(new Rule(i, mask, i & mask, 1 + i % 3, i % 3, i % 3));
+        }
+        mTable = DecisionTable.compile(mRules);
+    }
+
+    @Benchmark
+    public int evaluate() {
+        mState = (mState + 1) & 31;
+        return mTable.evaluate(mState);
+    }
+
+    @Benchmark
+    public DecisionTable compile() {
+        return DecisionTable.compile(mRules);
+    }
+
+}
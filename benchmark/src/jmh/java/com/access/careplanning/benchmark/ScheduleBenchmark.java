@@ -0,0 +1,99 @@
+package com.access.careplanning.benchmark;
+
+import com.access.careplanning.database.TimeRange;
+import com.access.careplanning.schedule.QuietSchedule;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Ringer decision and schedule maintenance, over a week of quiet periods.
+ * The ringer decision of the view model and policy engine is QuietSchedule.isQuiet.
+ */
+@State(Scope.Thread)
+public class ScheduleBenchmark {
+
+    /**
+     * Number of time ranges of the user
+     */
+    @Param({"1", "8", "32"})
+    public int ranges;
+
+    private QuietSchedule mSchedule;
+    private List<TimeRange> mTimeRanges;
+    private List<TimeRange> mChangedRanges;
+    private int mMinute;
+
+    @Setup
+    public void setUp() {
+        mTimeRanges = createRanges(ranges, 0);
+        mChangedRanges = createRanges(ranges, 1);
+        mSchedule = new QuietSchedule();
+        mSchedule.setAll(mTimeRanges);
+    }
+
+    /**
+     * Ranges spread over the week, shift moves the first range to test a one range change
+     */
+    private static List<TimeRange> createRanges(int count, int shift) {
+        List<TimeRange> timeRanges = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int start = (i * 97 + (i == 0 ? shift : 0)) % QuietSchedule.MINUTES_PER_DAY;
+            final int end = (start + 45 + i * 13) % QuietSchedule.MINUTES_PER_DAY;
+            TimeRange timeRange = new TimeRange(start / 60, start % 60, end / 60, end % 60);
+            timeRange.setId(i + 1);
+            timeRange.setDays(i % 2 == 0 ? TimeRange.ALL_DAYS
+                    : TimeRange.dayBit(Calendar.MONDAY) | TimeRange.dayBit(Calendar.FRIDAY));
+            timeRanges.add(timeRange);
+        }
+        return timeRanges;
+    }
+
+    /**
+     * Next minute of the week, so each call checks a different minute
+     */
+    private int nextMinute() {
+        mMinute = (mMinute + 1) % QuietSchedule.MINUTES_PER_WEEK;
+        return mMinute;
+    }
+
+    @Benchmark
+    public boolean isQuiet() {
+        final int minute = nextMinute();
+        return mSchedule.isQuiet(Calendar.SUNDAY + minute / QuietSchedule.MINUTES_PER_DAY,
+                (minute % QuietSchedule.MINUTES_PER_DAY) / 60, minute % 60);
+    }
+
+    @Benchmark
+    public int minutesUntilTransition() {
+        return mSchedule.minutesUntilTransition(nextMinute());
+    }
+
+    /**
+     * One range changed, as when the user edits a time
+     */
+    @Benchmark
+    public QuietSchedule setAllOneChanged() {
+        mSchedule.setAll(mChangedRanges);
+        mSchedule.setAll(mTimeRanges);
+        return mSchedule;
+    }
+
+    /**
+     * Full build, as on first load
+     */
+    @Benchmark
+    public QuietSchedule build() {
+        QuietSchedule schedule = new QuietSchedule();
+        schedule.setAll(mTimeRanges);
+        return schedule;
+    }
+
+}
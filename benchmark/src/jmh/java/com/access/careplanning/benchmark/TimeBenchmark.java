@@ -0,0 +1,29 @@
+package com.access.careplanning.benchmark;
+
+import com.access.careplanning.util.TimeUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Time conversion and formatting, as run each time a time is shown
+ */
+@State(Scope.Thread)
+public class TimeBenchmark {
+
+    // Not final, so the calls aren't constant folded
+    public int hour = 8;
+    public int minute = 5;
+
+    @Benchmark
+    public String formatTime() {
+        return TimeUtil.formatTime(hour, minute);
+    }
+
+    @Benchmark
+    public int timeToMins() {
+        return TimeUtil.timeToMins(hour, minute);
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.access.careplanning.benchmark;
+
+import com.access.careplanning.util.QrUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * QR validation, as run for each scan
+ */
+@State(Scope.Thread)
+public class ValidationBenchmark {
+
+    @Param({"WIFI_ON", "wifi_on", "https://example.com/care/room/12?action=wifi_on", "INVALID"})
+    public String code;
+
+    @Benchmark
+    public boolean isValidQR() {
+        return QrUtil.isValidQR(code);
+    }
+
+}
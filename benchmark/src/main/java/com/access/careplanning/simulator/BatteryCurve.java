@@ -0,0 +1,112 @@
+package com.access.careplanning.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic battery level over time, made of segments that each charge or discharge at a
+ * constant rate from the level the previous one ended at
+ */
+public class BatteryCurve {
+
+    private static final long HOUR_MS = 1000 * 60 * 60;
+
+    private static class Segment {
+        final long start;
+        final double percentPerHour;
+        final boolean charging;
+
+        Segment(long start, double percentPerHour, boolean charging) {
+            this.start = start;
+            this.percentPerHour = percentPerHour;
+            this.charging = charging;
+        }
+    }
+
+    private final double mStartLevel;
+    private final List<Segment> mSegments = new ArrayList<>();
+
+    /**
+     * @param startLevel battery percent at elapsed time 0, on battery until the first segment
+     */
+    public BatteryCurve(double startLevel) {
+        mStartLevel = startLevel;
+        mSegments.add(new Segment(0, 0, false));
+    }
+
+    /**
+     * Discharge from an elapsed time
+     *
+     * @param startMinute    minutes from the start of the simulation
+     * @param percentPerHour rate of drop
+     */
+    public BatteryCurve discharge(long startMinute, double percentPerHour) {
+        return add(startMinute, -percentPerHour, false);
+    }
+
+    /**
+     * Plug in the charger at an elapsed time
+     */
+    public BatteryCurve charge(long startMinute, double percentPerHour) {
+        return add(startMinute, percentPerHour, true);
+    }
+
+    private BatteryCurve add(long startMinute, double percentPerHour, boolean charging) {
+        final long start = startMinute * 60 * 1000;
+        if (start <= mSegments.get(mSegments.size() - 1).start && mSegments.size() > 1) {
+            throw new IllegalArgumentException("Segments must be added in time order");
+        }
+        if (start == 0) {
+            mSegments.set(0, new Segment(0, percentPerHour, charging));
+        } else {
+            mSegments.add(new Segment(start, percentPerHour, charging));
+        }
+        return this;
+    }
+
+    /**
+     * @param elapsed ms from the start
+     * @return whole battery percent, as the battery broadcasts give it
+     */
+    public int getLevel(long elapsed) {
+        double level = mStartLevel;
+        for (int i = 0; i < mSegments.size(); i++) {
+            Segment segment = mSegments.get(i);
+            if (segment.start >= elapsed) {
+                break;
+            }
+            final long end = i + 1 < mSegments.size() ? Math.min(elapsed, mSegments.get(i + 1).start) : elapsed;
+            level += segment.percentPerHour * (end - segment.start) / HOUR_MS;
+            level = Math.max(0, Math.min(100, level));
+        }
+        return (int) level;
+    }
+
+    public boolean isCharging(long elapsed) {
+        return getSegment(elapsed).charging;
+    }
+
+    /**
+     * @return elapsed time of the next plug in or unplug after elapsed, or Long.MAX_VALUE if none
+     */
+    public long nextChargerChange(long elapsed) {
+        boolean charging = isCharging(elapsed);
+        for (Segment segment : mSegments) {
+            if (segment.start > elapsed && segment.charging != charging) {
+                return segment.start;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private Segment getSegment(long elapsed) {
+        Segment current = mSegments.get(0);
+        for (Segment segment : mSegments) {
+            if (segment.start <= elapsed) {
+                current = segment;
+            }
+        }
+        return current;
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.access.careplanning.simulator;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Runs the standard scenarios and prints the results:
+ *   ./gradlew :benchmark:simulate
+ * With a file argument the results are also written there as a JSON array.
+ */
+public class Main {
+
+    public static void main(String[] args) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (Scenario scenario : Scenarios.standard()) {
+            SimulationResult result = PolicySimulator.run(scenario);
+            System.out.println(result);
+            json.append(json.length() > 1 ? ",\n" : "").append(result.toJson());
+        }
+        json.append("]\n");
+
+        if (args.length > 0) {
+            File file = new File(args[0]);
+            File dir = file.getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Can't create " + dir);
+            }
+            try (Writer writer = new FileWriter(file)) {
+                writer.write(json.toString());
+            }
+            System.out.println("Results written to " + file);
+        }
+    }
+
+}
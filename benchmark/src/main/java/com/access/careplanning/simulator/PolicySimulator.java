@@ -0,0 +1,292 @@
+package com.access.careplanning.simulator;
+
+import com.access.careplanning.battery.BatteryCheckScheduler;
+import com.access.careplanning.battery.BatterySaver;
+import com.access.careplanning.database.Battery;
+import com.access.careplanning.database.Rule;
+import com.access.careplanning.database.TimeRange;
+import com.access.careplanning.policy.PolicyEnforcer;
+import com.access.careplanning.rules.DecisionTable;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays a scenario through the app's policy logic in simulated time, in milliseconds on the JVM.
+ * The PolicyEnforcer and BatteryCheckScheduler are the ones the PolicyEngine and BatteryMonitor
+ * run, with the settings, system state and alarms simulated around them, counting the wakeups,
+ * system calls and settings reads and writes. This drives them as the receivers and broadcasts do.
+ */
+public class PolicySimulator {
+
+    /**
+     * Stop a scenario that schedules alarms without moving time on
+     */
+    private static final int MAX_EVENTS = 1000000;
+
+    /**
+     * Time budget of one enforcement pass, as the engine's
+     */
+    private static final long TIME_BUDGET_MS = 1000 * 5;
+
+    private static final int USER_ID = 1;
+
+    private final Scenario mScenario;
+    private final SimulatedClock mClock;
+    private final SimulationResult mResult;
+    private final PolicyEnforcer mEnforcer;
+    private final BatteryCheckScheduler mChecks;
+    private final SimpleDateFormat mFormat = new SimpleDateFormat("EEE yyyy-MM-dd HH:mm z", Locale.US);
+
+    // System state, as the state mirror holds it
+    private int mRinger = DecisionTable.RINGER_NORMAL;
+    private boolean mWifiEnabled;
+
+    // Ringer scheduler, wall clock time of the alarm
+    private long mRingerAlarm = -1;
+
+    public PolicySimulator(Scenario scenario) {
+        mScenario = scenario;
+        mClock = new SimulatedClock(scenario.getStartTime(), scenario.getTimeZone());
+        mResult = new SimulationResult(scenario.getName());
+        mEnforcer = new PolicyEnforcer(mClock, new Host(), scenario.getThreshold());
+        mChecks = new BatteryCheckScheduler(mClock, new BatteryCheckScheduler.ICheckAlarm() {
+            @Override
+            public void set(long checkTime) {
+                countAlarm();
+            }
+
+            @Override
+            public void cancel() {
+                countAlarm();
+            }
+        });
+        // A saver level before a restart has already switched wifi off, unless the user switched it on
+        mWifiEnabled = scenario.getSavedSaverLevel() == BatterySaver.OFF || scenario.isUserWifiOn();
+    }
+
+    public static SimulationResult run(Scenario scenario) {
+        return new PolicySimulator(scenario).run();
+    }
+
+    public SimulationResult run() {
+        // Process start, the battery monitor delivers the current status, then the user's settings are enforced
+        mChecks.start();
+        onStatus();
+        enforce();
+
+        final BatteryCurve battery = mScenario.getBattery();
+        final long end = mScenario.getDuration();
+        for (int events = 0; events < MAX_EVENTS; events++) {
+            final long now = mClock.elapsedRealtime();
+            final long ringerAlarm = mRingerAlarm >= 0 ? mRingerAlarm - mScenario.getStartTime() : Long.MAX_VALUE;
+            final long checkAlarm = mChecks.getCheckTime() >= 0 ? mChecks.getCheckTime() : Long.MAX_VALUE;
+            final long chargerChange = battery.nextChargerChange(now);
+            final long move = mScenario.getMoveTime() > now ? mScenario.getMoveTime() : Long.MAX_VALUE;
+            final long next = Math.min(Math.min(ringerAlarm, checkAlarm), Math.min(chargerChange, move));
+            if (next > end) {
+                break;
+            }
+            mClock.setTime(mClock.toTime(next));
+
+            if (next == move) {
+                mClock.setTimeZone(mScenario.getMoveTimeZone());
+                log("timezone " + mScenario.getMoveTimeZone().getID());
+                mResult.count(SimulationResult.BROADCASTS);
+                enforce();
+            } else if (next == chargerChange) {
+                log(battery.isCharging(next) ? "charger connected" : "charger disconnected");
+                mResult.count(SimulationResult.BROADCASTS);
+                onStatus();
+            } else if (next == checkAlarm) {
+                mChecks.onCheckAlarm();
+                wakeup(SimulationResult.BATTERY_CHECKS);
+                // The receiver reads the status, then refreshes the engine
+                onStatus();
+                enforce();
+            } else {
+                mRingerAlarm = -1;
+                wakeup(SimulationResult.RINGER_ALARMS);
+                batteryChanged();
+                enforce();
+            }
+        }
+        mResult.count(SimulationResult.EVALUATIONS, mEnforcer.getEvaluationCount());
+        return mResult;
+    }
+
+    private void wakeup(String key) {
+        mResult.count(SimulationResult.WAKEUPS);
+        mResult.count(key);
+    }
+
+    private void countAlarm() {
+        mResult.count(SimulationResult.IPC);
+        mResult.count(SimulationResult.IPC_ALARM);
+    }
+
+    /**
+     * Awake, so the battery service broadcasts the level if it has changed
+     */
+    private void batteryChanged() {
+        final long now = mClock.elapsedRealtime();
+        final BatteryCurve battery = mScenario.getBattery();
+        if (battery.getLevel(now) != getLevel() || battery.isCharging(now) != isCharging()) {
+            mResult.count(SimulationResult.BROADCASTS);
+            onStatus();
+        }
+    }
+
+    /**
+     * BatteryMonitor.onStatus, then the engine's battery listener
+     */
+    private void onStatus() {
+        final long now = mClock.elapsedRealtime();
+        final BatteryCurve battery = mScenario.getBattery();
+        mChecks.onStatus(battery.getLevel(now), battery.isCharging(now));
+        mEnforcer.evaluate(getLevel(), isCharging());
+    }
+
+    /**
+     * PolicyEngine.refresh, from a receiver
+     */
+    private void enforce() {
+        mEnforcer.enforce(USER_ID, mClock.elapsedRealtime() + TIME_BUDGET_MS);
+    }
+
+    private int getLevel() {
+        return mChecks.getEstimator().getLevel();
+    }
+
+    private boolean isCharging() {
+        return mChecks.getEstimator().isCharging();
+    }
+
+    private void log(String decision) {
+        mResult.log(format(mClock.currentTimeMillis()), decision);
+    }
+
+    private String format(long time) {
+        mFormat.setTimeZone(mClock.getTimeZone());
+        return mFormat.format(new Date(time));
+    }
+
+    private void notifyUser() {
+        mResult.count(SimulationResult.NOTIFICATIONS);
+    }
+
+    /**
+     * The engine's settings reads, alarms and actions through the state mirror, with policy
+     * access granted
+     */
+    private class Host implements PolicyEnforcer.IPolicyHost {
+
+        @Override
+        public List<TimeRange> getTimeRanges(int userId) {
+            mResult.count(SimulationResult.DB_READS);
+            return mScenario.getTimeRanges();
+        }
+
+        @Override
+        public Battery getBattery(int userId) {
+            mResult.count(SimulationResult.DB_READS);
+            Battery battery = new Battery();
+            battery.setUserId(userId);
+            battery.setThreshold(mScenario.getThreshold());
+            battery.setSaverLevel(mScenario.getSavedSaverLevel());
+            return battery;
+        }
+
+        @Override
+        public List<Rule> getRules(int userId) {
+            mResult.count(SimulationResult.DB_READS);
+            return mScenario.getRules();
+        }
+
+        @Override
+        public void setRingerAlarm(long time) {
+            countAlarm();
+            if (time != mRingerAlarm) {
+                log(time < 0 ? "ringer alarm cancelled" : "ringer alarm for " + format(time));
+            }
+            mRingerAlarm = time;
+        }
+
+        @Override
+        public void watchBattery(int threshold, boolean fewerChecks) {
+            mChecks.setFewerChecks(fewerChecks);
+            mChecks.setThreshold(threshold);
+        }
+
+        @Override
+        public int getBatteryLevel() {
+            return getLevel();
+        }
+
+        @Override
+        public boolean isCharging() {
+            return PolicySimulator.this.isCharging();
+        }
+
+        @Override
+        public boolean isWifiConnected() {
+            return mScenario.isWifiConnected();
+        }
+
+        @Override
+        public void setRinger(int ringer, boolean notify) {
+            if (ringer == mRinger) {
+                return;
+            }
+            mRinger = ringer;
+            mResult.count(SimulationResult.IPC);
+            mResult.count(SimulationResult.IPC_RINGER);
+            // Event recorded
+            mResult.count(SimulationResult.DB_WRITES);
+            log("ringer " + (ringer == DecisionTable.RINGER_VIBRATE ? "vibrate"
+                    : ringer == DecisionTable.RINGER_SILENT ? "silent" : "normal"));
+            if (notify) {
+                notifyUser();
+            }
+        }
+
+        @Override
+        public void setWifi(boolean enable, boolean notify) {
+            if (enable == mWifiEnabled) {
+                return;
+            }
+            mWifiEnabled = enable;
+            mResult.count(SimulationResult.IPC);
+            mResult.count(SimulationResult.IPC_WIFI);
+            mResult.count(SimulationResult.DB_WRITES);
+            log("wifi " + (enable ? "on" : "off"));
+            if (notify) {
+                notifyUser();
+            }
+        }
+
+        @Override
+        public void onSaverLevel(int level, boolean notify) {
+            mResult.count(SimulationResult.SAVER_CHANGES);
+            // Event recorded, and the level saved
+            mResult.count(SimulationResult.DB_WRITES);
+            mResult.count(SimulationResult.DB_WRITES);
+            log("battery saver " + level + " at " + getLevel() + "%");
+            if (notify) {
+                notifyUser();
+            }
+        }
+
+        @Override
+        public boolean isRingerOverridden() {
+            return false;
+        }
+
+        @Override
+        public void clearRingerOverride() {
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.access.careplanning.simulator;
+
+import com.access.careplanning.database.Rule;
+import com.access.careplanning.database.TimeRange;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * One simulated run: when it starts and for how long, the user's settings, the battery curve,
+ * and an optional timezone move
+ */
+public class Scenario {
+
+    private final String mName;
+    private final TimeZone mTimeZone;
+    private final long mStartTime;
+    private final int mDays;
+    private final List<TimeRange> mTimeRanges = new ArrayList<>();
+    private List<Rule> mRules = Collections.emptyList();
+    private int mThreshold = 20;
+    private int mSavedSaverLevel;
+    private boolean mUserWifiOn;
+    private BatteryCurve mBattery = new BatteryCurve(100);
+    private boolean mWifiConnected = true;
+    private long mMoveMinute = -1;
+    private TimeZone mMoveTimeZone;
+
+    /**
+     * @param name     name in the results
+     * @param timeZone zone of the start time and schedule
+     * @param year     start date, at midnight
+     * @param month    Calendar month eg Calendar.MARCH
+     * @param day      day of month
+     * @param days     days to run for
+     */
+    public Scenario(String name, TimeZone timeZone, int year, int month, int day, int days) {
+        mName = name;
+        mTimeZone = timeZone;
+        Calendar start = Calendar.getInstance(timeZone);
+        start.clear();
+        start.set(year, month, day, 0, 0, 0);
+        mStartTime = start.getTimeInMillis();
+        mDays = days;
+    }
+
+    public Scenario addTimeRange(int startHour, int startMinute, int endHour, int endMinute, int days) {
+        TimeRange timeRange = new TimeRange(startHour, startMinute, endHour, endMinute);
+        timeRange.setId(mTimeRanges.size() + 1);
+        timeRange.setDays(days);
+        mTimeRanges.add(timeRange);
+        return this;
+    }
+
+    public Scenario setRules(List<Rule> rules) {
+        mRules = rules;
+        return this;
+    }
+
+    public Scenario setThreshold(int threshold) {
+        mThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Start from a battery saver level saved before a restart
+     */
+    public Scenario setSavedSaverLevel(int level) {
+        mSavedSaverLevel = level;
+        return this;
+    }
+
+    /**
+     * Start with wifi on, switched back on by the user after the saved saver level switched it off
+     */
+    public Scenario setUserWifiOn(boolean userWifiOn) {
+        mUserWifiOn = userWifiOn;
+        return this;
+    }
+
+    public Scenario setBattery(BatteryCurve battery) {
+        mBattery = battery;
+        return this;
+    }
+
+    public Scenario setWifiConnected(boolean wifiConnected) {
+        mWifiConnected = wifiConnected;
+        return this;
+    }
+
+    /**
+     * Move to another timezone part way through, eg travelling between sites
+     *
+     * @param minute   minutes from the start
+     * @param timeZone new zone
+     */
+    public Scenario moveTimeZone(long minute, TimeZone timeZone) {
+        mMoveMinute = minute;
+        mMoveTimeZone = timeZone;
+        return this;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public TimeZone getTimeZone() {
+        return mTimeZone;
+    }
+
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * @return run length in ms
+     */
+    public long getDuration() {
+        return mDays * 24L * 60 * 60 * 1000;
+    }
+
+    public List<TimeRange> getTimeRanges() {
+        return mTimeRanges;
+    }
+
+    public List<Rule> getRules() {
+        return mRules;
+    }
+
+    public int getThreshold() {
+        return mThreshold;
+    }
+
+    public int getSavedSaverLevel() {
+        return mSavedSaverLevel;
+    }
+
+    public boolean isUserWifiOn() {
+        return mUserWifiOn;
+    }
+
+    public BatteryCurve getBattery() {
+        return mBattery;
+    }
+
+    public boolean isWifiConnected() {
+        return mWifiConnected;
+    }
+
+    /**
+     * @return elapsed ms of the timezone move, or -1 if none
+     */
+    public long getMoveTime() {
+        return mMoveMinute < 0 ? -1 : mMoveMinute * 60 * 1000;
+    }
+
+    public TimeZone getMoveTimeZone() {
+        return mMoveTimeZone;
+    }
+
+}
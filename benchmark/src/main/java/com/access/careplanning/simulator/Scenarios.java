@@ -0,0 +1,98 @@
+package com.access.careplanning.simulator;
+
+import com.access.careplanning.database.TimeRange;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * The standard scenarios, a carer's day and week including the daylight saving changes and a
+ * timezone move
+ */
+public class Scenarios {
+
+    private static final TimeZone LONDON = TimeZone.getTimeZone("Europe/London");
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+    /**
+     * Monday to Friday
+     */
+    private static final int WEEKDAYS = 0b0111110;
+
+    /**
+     * Charged overnight, off the charger at 7:00 and down past both saver levels by the evening
+     */
+    private static BatteryCurve workingDay(long dayStartMinute) {
+        return new BatteryCurve(60)
+                .charge(dayStartMinute, 20)
+                .discharge(dayStartMinute + 7 * 60, 8)
+                .charge(dayStartMinute + 19 * 60, 30);
+    }
+
+    /**
+     * Night quiet period, and a lunch break on weekdays
+     */
+    private static Scenario withCarerSchedule(Scenario scenario) {
+        return scenario
+                .addTimeRange(22, 0, 6, 30, TimeRange.ALL_DAYS)
+                .addTimeRange(12, 30, 13, 15, WEEKDAYS);
+    }
+
+    public static Scenario weekday() {
+        return withCarerSchedule(new Scenario("weekday", LONDON, 2026, Calendar.MARCH, 10, 1))
+                .setBattery(workingDay(0));
+    }
+
+    /**
+     * Clocks go forward at 1:00, inside a quiet period that starts in the skipped hour
+     */
+    public static Scenario springForward() {
+        return new Scenario("spring-forward", LONDON, 2026, Calendar.MARCH, 29, 1)
+                .addTimeRange(1, 30, 7, 0, TimeRange.ALL_DAYS)
+                .setBattery(workingDay(0));
+    }
+
+    /**
+     * Clocks go back at 2:00, so 1:00 to 2:00 happens twice
+     */
+    public static Scenario fallBack() {
+        return new Scenario("fall-back", LONDON, 2026, Calendar.OCTOBER, 25, 1)
+                .addTimeRange(1, 30, 7, 0, TimeRange.ALL_DAYS)
+                .setBattery(workingDay(0));
+    }
+
+    /**
+     * Moving from London to New York at midday, the schedule follows local time
+     */
+    public static Scenario timeZoneMove() {
+        return withCarerSchedule(new Scenario("timezone-move", LONDON, 2026, Calendar.MARCH, 10, 1))
+                .setBattery(workingDay(0))
+                .moveTimeZone(12 * 60, NEW_YORK);
+    }
+
+    /**
+     * Restarted while at the first saver level, in the hysteresis band, so it carries on
+     */
+    public static Scenario restartInSaver() {
+        return withCarerSchedule(new Scenario("restart-in-saver", LONDON, 2026, Calendar.MARCH, 10, 1))
+                .setSavedSaverLevel(1)
+                .setBattery(new BatteryCurve(22).discharge(0, 1).charge(6 * 60, 30));
+    }
+
+    public static Scenario week() {
+        BatteryCurve battery = new BatteryCurve(60);
+        for (int day = 0; day < 7; day++) {
+            final long start = day * 24 * 60L;
+            battery.charge(start, 20).discharge(start + 7 * 60, 8).charge(start + 19 * 60, 30);
+        }
+        return withCarerSchedule(new Scenario("week", LONDON, 2026, Calendar.MARCH, 9, 7))
+                .setBattery(battery);
+    }
+
+    public static List<Scenario> standard() {
+        return Arrays.asList(weekday(), springForward(), fallBack(), timeZoneMove(), restartInSaver(), week());
+    }
+
+}
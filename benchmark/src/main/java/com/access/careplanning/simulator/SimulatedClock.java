@@ -0,0 +1,56 @@
+package com.access.careplanning.simulator;
+
+import com.access.careplanning.util.Clock;
+
+import java.util.TimeZone;
+
+/**
+ * Clock moved on by the simulator, elapsed time starts at 0 at the start time
+ */
+public class SimulatedClock implements Clock {
+
+    private final long mStartTime;
+    private long mTime;
+    private TimeZone mTimeZone;
+
+    public SimulatedClock(long startTime, TimeZone timeZone) {
+        mStartTime = startTime;
+        mTime = startTime;
+        mTimeZone = timeZone;
+    }
+
+    /**
+     * Move to a wall clock time, never backwards
+     */
+    public void setTime(long time) {
+        mTime = Math.max(mTime, time);
+    }
+
+    public void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+    }
+
+    /**
+     * @param elapsed ms since the start
+     * @return wall clock time in ms
+     */
+    public long toTime(long elapsed) {
+        return mStartTime + elapsed;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return mTime;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return mTime - mStartTime;
+    }
+
+    @Override
+    public TimeZone getTimeZone() {
+        return mTimeZone;
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.access.careplanning.simulator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts and decision timeline of one simulated run
+ */
+public class SimulationResult {
+
+    // Device wakeups by the app's alarms
+    public static final String WAKEUPS = "wakeups";
+    public static final String RINGER_ALARMS = "wakeups.ringer";
+    public static final String BATTERY_CHECKS = "wakeups.battery";
+    // System broadcasts handled, eg the charger and timezone changes
+    public static final String BROADCASTS = "broadcasts";
+    public static final String EVALUATIONS = "evaluations";
+    // Calls to the system services
+    public static final String IPC = "ipc";
+    public static final String IPC_RINGER = "ipc.ringer";
+    public static final String IPC_WIFI = "ipc.wifi";
+    public static final String IPC_ALARM = "ipc.alarm";
+    public static final String NOTIFICATIONS = "notifications";
+    // Settings loads and writes
+    public static final String DB_READS = "db.reads";
+    public static final String DB_WRITES = "db.writes";
+    public static final String SAVER_CHANGES = "saver.changes";
+
+    private final String mName;
+    private final Map<String, Long> mCounts = new LinkedHashMap<>();
+    private final List<String> mTimeline = new ArrayList<>();
+
+    SimulationResult(String name) {
+        mName = name;
+        for (String key : new String[]{WAKEUPS, RINGER_ALARMS, BATTERY_CHECKS, BROADCASTS, EVALUATIONS,
+                IPC, IPC_RINGER, IPC_WIFI, IPC_ALARM, NOTIFICATIONS, DB_READS, DB_WRITES, SAVER_CHANGES}) {
+            mCounts.put(key, 0L);
+        }
+    }
+
+    void count(String key) {
+        count(key, 1);
+    }
+
+    void count(String key, long count) {
+        mCounts.put(key, get(key) + count);
+    }
+
+    void log(String time, String decision) {
+        mTimeline.add(time + " " + decision);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public long get(String key) {
+        Long count = mCounts.get(key);
+        return count != null ? count : 0;
+    }
+
+    public Map<String, Long> getCounts() {
+        return mCounts;
+    }
+
+    /**
+     * @return the decisions in time order, each the local time then what happened
+     */
+    public List<String> getTimeline() {
+        return mTimeline;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(mName).append('\n');
+        for (Map.Entry<String, Long> count : mCounts.entrySet()) {
+            builder.append("  ").append(count.getKey()).append(": ").append(count.getValue()).append('\n');
+        }
+        for (String entry : mTimeline) {
+            builder.append("    ").append(entry).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return JSON object of the counts and timeline, to compare across commits
+     */
+    public String toJson() {
+        StringBuilder builder = new StringBuilder("{\"name\":\"").append(mName).append("\",\"counts\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> count : mCounts.entrySet()) {
+            builder.append(first ? "" : ",").append('"').append(count.getKey()).append("\":").append(count.getValue());
+            first = false;
+        }
+        builder.append("},\"timeline\":[");
+        for (int i = 0; i < mTimeline.size(); i++) {
+            builder.append(i > 0 ? "," : "").append('"').append(mTimeline.get(i)).append('"');
+        }
+        return builder.append("]}").toString();
+    }
+
+}
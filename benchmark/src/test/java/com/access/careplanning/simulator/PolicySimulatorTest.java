@@ -0,0 +1,72 @@
+package com.access.careplanning.simulator;
+
+import org.junit.Test;
+
+import static com.access.careplanning.simulator.SimulationResult.*;
+import static org.junit.Assert.*;
+
+/**
+ * Regression gates on the standard scenarios, raise a budget only for a change that needs it
+ */
+public class PolicySimulatorTest {
+
+    private static void assertAtMost(String key, long budget, SimulationResult result) {
+        assertTrue(result.getName() + " " + key + " " + result.get(key) + " over " + budget,
+                result.get(key) <= budget);
+    }
+
+    @Test
+    public void weekdayBudget() {
+        SimulationResult result = PolicySimulator.run(Scenarios.weekday());
+        // One ringer alarm per quiet period start and end
+        assertEquals(4, result.get(RINGER_ALARMS));
+        assertAtMost(WAKEUPS, 17, result);
+        assertAtMost(IPC, 41, result);
+        assertAtMost(DB_WRITES, 14, result);
+        // Into saver, deeper, then out on the charger
+        assertEquals(3, result.get(SAVER_CHANGES));
+    }
+
+    @Test
+    public void weekBudget() {
+        SimulationResult result = PolicySimulator.run(Scenarios.week());
+        assertAtMost(WAKEUPS, 117, result);
+        assertAtMost(IPC, 261, result);
+        assertAtMost(DB_READS, 237, result);
+        assertAtMost(DB_WRITES, 82, result);
+        assertAtMost(NOTIFICATIONS, 46, result);
+    }
+
+    @Test
+    public void daylightSaving() {
+        // The quiet period starting in the skipped hour starts as the clocks go forward
+        assertTrue(PolicySimulator.run(Scenarios.springForward()).getTimeline()
+                .contains("Sun 2026-03-29 02:00 BST ringer vibrate"));
+        // and the first time round in the repeated hour
+        assertTrue(PolicySimulator.run(Scenarios.fallBack()).getTimeline()
+                .contains("Sun 2026-10-25 01:30 BST ringer vibrate"));
+    }
+
+    @Test
+    public void timeZoneMove() {
+        SimulationResult result = PolicySimulator.run(Scenarios.timeZoneMove());
+        // The lunch break follows the new local time
+        assertTrue(result.getTimeline().contains("Tue 2026-03-10 12:30 EDT ringer vibrate"));
+    }
+
+    @Test
+    public void restartCarriesOnTheSaverLevel() {
+        SimulationResult result = PolicySimulator.run(Scenarios.restartInSaver());
+        // Wifi was already off, and only the charger ends the saver
+        assertEquals(0, result.get(IPC_WIFI));
+        assertEquals(1, result.get(SAVER_CHANGES));
+    }
+
+    @Test
+    public void restartKeepsTheUsersWifi() {
+        SimulationResult result = PolicySimulator.run(Scenarios.restartInSaver().setUserWifiOn(true));
+        // The saver level's wifi off was taken before the restart, so isn't taken again
+        assertEquals(0, result.get(IPC_WIFI));
+    }
+
+}